@@ -15,16 +15,21 @@
 package co.vaughnvernon.algotrader.domain.model.order;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 import co.vaughnvernon.tradercommon.event.DomainEventGemFirePublisher;
+import co.vaughnvernon.tradercommon.event.DomainEventOutbox;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.quote.Quote;
 
-public class AlgoOrder {
+public class AlgoOrder implements DomainEventOutbox {
 
 	private Fill fill;
 	private String orderId;
+	private List<StoredEvent> outboxEvents;
     private Quote quote;
     private BigDecimal sharesRemaining;
 	private OrderType type;
@@ -61,6 +66,15 @@ public class AlgoOrder {
 		return this.orderId;
 	}
 
+	@Override
+	public List<StoredEvent> outboxEvents() {
+		if (this.outboxEvents == null) {
+			return Collections.emptyList();
+		}
+
+		return this.outboxEvents;
+	}
+
 	public Quote quote() {
 		return this.quote;
 	}
@@ -95,6 +109,11 @@ public class AlgoOrder {
 		return this.sharesRemaining().compareTo(BigDecimal.ZERO) != 0;
 	}
 
+	@Override
+	public void setOutboxEvents(List<StoredEvent> aStoredEvents) {
+		this.outboxEvents = aStoredEvents;
+	}
+
 	public BigDecimal sharesRemaining() {
 		return this.sharesRemaining;
 	}
@@ -15,13 +15,18 @@
 package co.vaughnvernon.algotrader.domain.model.order;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Date;
 
 import co.vaughnvernon.tradercommon.event.DomainEvent;
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.quote.TickerSymbol;
 
-public class AlgoSliceOrderSharesRequested implements DomainEvent {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public class AlgoSliceOrderSharesRequested implements DomainEvent, PdxSerializable {
 
 	private int eventVersion;
 	private Date occurredOn;
@@ -55,6 +60,18 @@ public class AlgoSliceOrderSharesRequested implements DomainEvent {
 		return this.eventVersion;
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		BigInteger unscaledQuantity = new BigInteger(aReader.readByteArray("unscaledQuantity"));
+
+		this.eventVersion = aReader.readInt("eventVersion");
+		this.occurredOn = aReader.readDate("occurredOn");
+		this.orderId = aReader.readString("orderId");
+		this.price = (Money) aReader.readObject("price");
+		this.quantity = new BigDecimal(unscaledQuantity, aReader.readInt("quantityScale"));
+		this.tickerSymbol = (TickerSymbol) aReader.readObject("tickerSymbol");
+	}
+
 	@Override
 	public Date occurredOn() {
 		return this.occurredOn;
@@ -75,4 +92,16 @@ public class AlgoSliceOrderSharesRequested implements DomainEvent {
 	public TickerSymbol tickerSymbol() {
 		return this.tickerSymbol;
 	}
+
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeInt("eventVersion", this.eventVersion())
+			.writeDate("occurredOn", this.occurredOn())
+			.writeString("orderId", this.orderId())
+			.writeObject("price", this.price())
+			.writeByteArray("unscaledQuantity", this.quantity().unscaledValue().toByteArray())
+			.writeInt("quantityScale", this.quantity().scale())
+			.writeObject("tickerSymbol", this.tickerSymbol());
+	}
 }
@@ -18,6 +18,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.pricevolume.PriceVolume;
 
@@ -25,6 +26,12 @@ public class VWAPAnalytic {
 
 	protected static final int TRADABLE_QUOTE_BARS = 20;
 
+	private static final long MAXIMUM_FIXED_POINT_PRICE_VOLUME =
+			Long.MAX_VALUE / (TRADABLE_QUOTE_BARS + 1);
+
+	private long cumulativePriceVolumeUnits;
+	private BigDecimal cumulativeVolume;
+	private int nonFixedPointPriceVolumes;
 	private List<PriceVolume> priceVolumes;
 	private String symbol;
 	private Money vwap;
@@ -32,6 +39,7 @@ public class VWAPAnalytic {
 	public VWAPAnalytic(String aSymbol, PriceVolume aPriceVolume) {
 		super();
 
+		this.setCumulativeVolume(BigDecimal.ZERO);
 		this.setPriceVolumes(new ArrayList<PriceVolume>());
 		this.setSymbol(aSymbol);
 		this.setVwap(new Money());
@@ -44,6 +52,8 @@ public class VWAPAnalytic {
 
 		this.priceVolumes().add(aPriceVolume);
 
+		this.foldIn(aPriceVolume);
+
 		this.calculateVwap();
 	}
 
@@ -96,6 +106,10 @@ public class VWAPAnalytic {
 	}
 
 	private Money cumulativePriceVolume() {
+		if (this.nonFixedPointPriceVolumes == 0) {
+			return FixedPointMoney.toMoney(this.cumulativePriceVolumeUnits);
+		}
+
 		Money cumulativePriceVolume = new Money();
 
 		for (PriceVolume priceVolume : this.priceVolumes()) {
@@ -106,21 +120,65 @@ public class VWAPAnalytic {
 	}
 
 	private BigDecimal cumulativeVolume() {
-		BigDecimal cumulativeVolume = BigDecimal.ZERO;
-
-		for (PriceVolume priceVolume : this.priceVolumes()) {
-			cumulativeVolume = cumulativeVolume.add(priceVolume.volume());
-		}
+		return this.cumulativeVolume;
+	}
 
-		return cumulativeVolume;
+	private void setCumulativeVolume(BigDecimal aCumulativeVolume) {
+		this.cumulativeVolume = aCumulativeVolume;
 	}
 
 	private void dropObsoletePriceVolume() {
 		if (this.isReadyToTrade()) {
-			this.priceVolumes().remove(0);
+			this.foldOut(this.priceVolumes().remove(0));
 		}
 	}
 
+	private long fixedPointPriceVolumeOf(PriceVolume aPriceVolume) {
+		if (FixedPointMoney.isRepresentable(aPriceVolume.price()) &&
+			FixedPointMoney.isWholeQuantity(aPriceVolume.volume())) {
+
+			try {
+				long priceVolumeUnits =
+						FixedPointMoney.multipliedBy(
+								FixedPointMoney.unitsOf(aPriceVolume.price()),
+								aPriceVolume.volume().longValueExact());
+
+				if (Math.abs(priceVolumeUnits) <= MAXIMUM_FIXED_POINT_PRICE_VOLUME) {
+					return priceVolumeUnits;
+				}
+
+			} catch (ArithmeticException e) {
+				// overflowed; not fixed-point
+			}
+		}
+
+		return Long.MIN_VALUE;
+	}
+
+	private void foldIn(PriceVolume aPriceVolume) {
+		long priceVolumeUnits = this.fixedPointPriceVolumeOf(aPriceVolume);
+
+		if (priceVolumeUnits == Long.MIN_VALUE) {
+			++this.nonFixedPointPriceVolumes;
+		} else {
+			this.cumulativePriceVolumeUnits += priceVolumeUnits;
+		}
+
+		this.setCumulativeVolume(this.cumulativeVolume().add(aPriceVolume.volume()));
+	}
+
+	private void foldOut(PriceVolume aPriceVolume) {
+		long priceVolumeUnits = this.fixedPointPriceVolumeOf(aPriceVolume);
+
+		if (priceVolumeUnits == Long.MIN_VALUE) {
+			--this.nonFixedPointPriceVolumes;
+		} else {
+			this.cumulativePriceVolumeUnits -= priceVolumeUnits;
+		}
+
+		this.setCumulativeVolume(this.cumulativeVolume().subtract(aPriceVolume.volume()));
+	}
+
 	private void setPriceVolumes(List<PriceVolume> aPriceVolumes) {
 		this.priceVolumes = aPriceVolumes;
 	}
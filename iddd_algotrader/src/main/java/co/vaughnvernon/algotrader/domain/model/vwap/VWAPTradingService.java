@@ -20,8 +20,9 @@ import java.util.Iterator;
 
 import co.vaughnvernon.algotrader.domain.model.order.AlgoOrder;
 import co.vaughnvernon.algotrader.domain.model.order.AlgoOrderRepository;
+import co.vaughnvernon.tradercommon.event.DomainEventGemFirePublisher;
 import co.vaughnvernon.tradercommon.pricevolume.PriceVolume;
-import co.vaughnvernon.tradercommon.quote.TickerSymbol;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
 import co.vaughnvernon.tradercommon.quotebar.QuoteBar;
 
 public class VWAPTradingService {
@@ -52,20 +53,38 @@ public class VWAPTradingService {
 
 	private BigDecimal attemptTradeFor(AlgoOrder anAlgoOrder, VWAPAnalytic aVWAPAnalytic) {
 
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
 		BigDecimal sharesRequested = new BigDecimal(0);
 		boolean done = false;
 		for (int tries = 0; !done && tries < 3; ++tries) {
+			publisher.beginUnitOfWork();
+
 			try {
 				sharesRequested = anAlgoOrder.requestSlice(aVWAPAnalytic.vwap(), 100);
 
+				// the events are saved in the order's outbox by the same put
+				publisher.stageUnitOfWork(anAlgoOrder);
+
 				this.algoOrderRepository().save(anAlgoOrder);
 
 				done = true;
 
 			} catch (Exception e) {
+				sharesRequested = new BigDecimal(0);
+
 				anAlgoOrder = this.algoOrderRepository().algoOrderOfId(anAlgoOrder.orderId());
+
+			} finally {
+				if (!done) {
+					publisher.discardUnitOfWork();
+				}
 			}
 		}
+
+		if (done) {
+			publisher.commitUnitOfWork();
+		}
 		return sharesRequested;
 	}
 
@@ -86,7 +105,8 @@ public class VWAPTradingService {
 
 	private void tradeUnfilledBuyOrdersUsing(QuoteBar aQuoteBar, VWAPAnalytic aVWAPAnalytic) {
 		Collection<AlgoOrder> algoOrders = this.algoOrderRepository()
-				.unfilledBuyAlgoOrdersOfSymbol(new TickerSymbol(aQuoteBar.symbol()));
+				.unfilledBuyAlgoOrdersOfSymbol(
+						SymbolRegistry.instance().tickerSymbolOf(aQuoteBar.symbolId()));
 
 //		AlgoSliceOrderSharesRequestedSubscriber subscriber = new AlgoSliceOrderSharesRequestedSubscriber();
 
@@ -14,17 +14,15 @@
 
 package co.vaughnvernon.algotrader.infrastructure.persistence;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import co.vaughnvernon.algotrader.domain.model.vwap.VWAPAnalytic;
 import co.vaughnvernon.algotrader.domain.model.vwap.VWAPAnalyticRepository;
+import co.vaughnvernon.tradercommon.quote.SymbolTable;
 
 public class InMemoryVWAPAnalyticRepository implements VWAPAnalyticRepository {
 
 	private static VWAPAnalyticRepository instance;
 
-	private Map<String,VWAPAnalytic> vwapAnalytics;
+	private SymbolTable<VWAPAnalytic> vwapAnalytics;
 
 	public static void clear() {
 		((InMemoryVWAPAnalyticRepository) instance).vwapAnalytics.clear();
@@ -51,10 +49,10 @@ public class InMemoryVWAPAnalyticRepository implements VWAPAnalyticRepository {
 	private InMemoryVWAPAnalyticRepository() {
 		super();
 
-		this.vwapAnalytics = new HashMap<String,VWAPAnalytic>();
+		this.vwapAnalytics = new SymbolTable<VWAPAnalytic>();
 	}
 
-	private Map<String,VWAPAnalytic> vwapAnalytics() {
+	private SymbolTable<VWAPAnalytic> vwapAnalytics() {
 		return this.vwapAnalytics;
 	}
 }
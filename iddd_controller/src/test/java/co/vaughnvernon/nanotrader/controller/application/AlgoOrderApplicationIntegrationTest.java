@@ -65,7 +65,7 @@ public class AlgoOrderApplicationIntegrationTest extends TestCase {
 	}
 
 	public void testCreateBuyOrderAndExecuteAlgorithmically() throws Exception {
-		DomainEventListener aListener1 = new DomainEventListener("buyOrderPlacedCq") {
+		DomainEventListener aListener1 = new DomainEventListener(BuyOrderPlaced.class) {
 			@Override
 			public void onEvent(CqEvent cqEvent) {
 				Operation baseOperation = cqEvent.getBaseOperation();
@@ -86,7 +86,7 @@ public class AlgoOrderApplicationIntegrationTest extends TestCase {
 			}
 		};
 
-		DomainEventListener aListener2 = new DomainEventListener("algoOrderFilledCQ") {
+		DomainEventListener aListener2 = new DomainEventListener(AlgoOrderFilled.class, AlgoSliceOrderSharesRequested.class) {
 			@Override
 			public void onEvent(CqEvent cqEvent) {
 				Operation baseOperation = cqEvent.getBaseOperation();
@@ -166,7 +166,8 @@ public class AlgoOrderApplicationIntegrationTest extends TestCase {
 				break;
 			}
 		}
-		DomainEventGemFirePublisher.instance().unsubscribe();
+		DomainEventGemFirePublisher.instance().unsubscribe(aListener1);
+		DomainEventGemFirePublisher.instance().unsubscribe(aListener2);
 
 		assertTrue(wasAlgoOrderFilled);
 //		assertFalse(this.algoOrder.hasSharesRemaining());
@@ -19,6 +19,7 @@ import java.util.Collection;
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrder;
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrderRepository;
 import co.vaughnvernon.nanotrader.domain.model.order.FillService;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
 import co.vaughnvernon.tradercommon.quote.TickerSymbol;
 import co.vaughnvernon.tradercommon.quotebar.QuoteBar;
 
@@ -39,7 +40,8 @@ public class BuyOrderApplicationService {
 
 	public void fillOrdersUsing(QuoteBar aQuoteBar) {
 
-		TickerSymbol tickerSymbol = new TickerSymbol(aQuoteBar.symbol());
+		TickerSymbol tickerSymbol =
+				SymbolRegistry.instance().tickerSymbolOf(aQuoteBar.symbolId());
 
 		int totalQuantityAvailable =
 				aQuoteBar
@@ -14,8 +14,13 @@
 
 package co.vaughnvernon.nanotrader.domain.model.order;
 
+import java.util.Collections;
+import java.util.List;
+
 import co.vaughnvernon.nanotrader.domain.model.account.Holding;
 import co.vaughnvernon.tradercommon.event.DomainEventGemFirePublisher;
+import co.vaughnvernon.tradercommon.event.DomainEventOutbox;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.order.AccountId;
 import co.vaughnvernon.tradercommon.order.BuyOrderPlaced;
@@ -23,12 +28,13 @@ import co.vaughnvernon.tradercommon.order.OrderId;
 import co.vaughnvernon.tradercommon.quote.Quote;
 import co.vaughnvernon.tradercommon.quote.TickerSymbol;
 
-public class BuyOrder {
+public class BuyOrder implements DomainEventOutbox {
 
 	private AccountId accountId;
 	private PurchaseExecution execution;
 	private Holding holding;
 	private OrderId orderId;
+	private List<StoredEvent> outboxEvents;
 	private Quote quote;
 
 	public BuyOrder(
@@ -114,6 +120,15 @@ public class BuyOrder {
 		return this.orderId;
 	}
 
+	@Override
+	public List<StoredEvent> outboxEvents() {
+		if (this.outboxEvents == null) {
+			return Collections.emptyList();
+		}
+
+		return this.outboxEvents;
+	}
+
 	public int quantityOfOutstandingShares() {
 		return this.execution().quantityOfSharesOutstanding();
 	}
@@ -126,6 +141,11 @@ public class BuyOrder {
 		return this.quote;
 	}
 
+	@Override
+	public void setOutboxEvents(List<StoredEvent> aStoredEvents) {
+		this.outboxEvents = aStoredEvents;
+	}
+
 	public void sharesToPurchase(int aQuantityOfSharesAvailable) {
 		if (this.execution().quantityOfSharesOutstanding() > 0) {
 			if (aQuantityOfSharesAvailable > 0) {
@@ -21,7 +21,11 @@ import co.vaughnvernon.tradercommon.order.AccountId;
 import co.vaughnvernon.tradercommon.order.OrderId;
 import co.vaughnvernon.tradercommon.quote.Quote;
 
-public class BuyOrderSharePurchaseRequested implements DomainEvent {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public class BuyOrderSharePurchaseRequested implements DomainEvent, PdxSerializable {
 
 	private AccountId accountId;
 	private int eventVersion;
@@ -60,6 +64,16 @@ public class BuyOrderSharePurchaseRequested implements DomainEvent {
 		return this.eventVersion;
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setAccountId((AccountId) aReader.readObject("accountId"));
+		this.setEventVersion(aReader.readInt("eventVersion"));
+		this.setOccurredOn(aReader.readDate("occurredOn"));
+		this.setOrderId((OrderId) aReader.readObject("orderId"));
+		this.setQuantityOfShares(aReader.readInt("quantityOfShares"));
+		this.setQuote((Quote) aReader.readObject("quote"));
+	}
+
 	@Override
 	public Date occurredOn() {
 		return this.occurredOn;
@@ -77,6 +91,17 @@ public class BuyOrderSharePurchaseRequested implements DomainEvent {
 		return this.quote;
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeObject("accountId", this.accountId())
+			.writeInt("eventVersion", this.eventVersion())
+			.writeDate("occurredOn", this.occurredOn())
+			.writeObject("orderId", this.orderId())
+			.writeInt("quantityOfShares", this.quantityOfShares())
+			.writeObject("quote", this.quote());
+	}
+
 	private void setAccountId(AccountId accountId) {
 		this.accountId = accountId;
 	}
@@ -18,6 +18,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import co.vaughnvernon.tradercommon.event.DomainEventGemFirePublisher;
 import co.vaughnvernon.tradercommon.event.DomainEventPublisher;
 import co.vaughnvernon.tradercommon.event.DomainEventSubscriber;
 
@@ -40,23 +41,28 @@ public class MarketFillService implements FillService{
 
 		DomainEventPublisher.instance().subscribe(subscriber);
 
-		Iterator<BuyOrder> iterator = anOpenBuyOrders.iterator();
+		try {
+			Iterator<BuyOrder> iterator = anOpenBuyOrders.iterator();
 
-		while (iterator.hasNext() && aTotalQuantityAvailable > 0) {
+			while (iterator.hasNext() && aTotalQuantityAvailable > 0) {
 
-			BuyOrder buyOrder = iterator.next();
+				BuyOrder buyOrder = iterator.next();
 
-			boolean done = false;
-			for (int tries = 0; !done && tries < 3; ++tries) {
-				subscriber.clear();
+				boolean done = false;
+				for (int tries = 0; !done && tries < 3; ++tries) {
+					subscriber.clear();
 
-				if (this.trySharesToPurchase(buyOrder, aTotalQuantityAvailable)) {
-					aTotalQuantityAvailable -= subscriber.orderSharesRequested();
-					done = true;
-				} else {
-					buyOrder = this.buyOrderRepository().orderOf(buyOrder.orderId());
+					if (this.trySharesToPurchase(buyOrder, aTotalQuantityAvailable)) {
+						aTotalQuantityAvailable -= subscriber.orderSharesRequested();
+						done = true;
+					} else {
+						buyOrder = this.buyOrderRepository().orderOf(buyOrder.orderId());
+					}
 				}
 			}
+
+		} finally {
+			DomainEventPublisher.instance().unsubscribe(subscriber);
 		}
 	}
 
@@ -68,16 +74,34 @@ public class MarketFillService implements FillService{
 			BuyOrder aBuyOrder,
 			int aTotalQuantityAvailable) {
 
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		publisher.beginUnitOfWork();
+
+		boolean saved = false;
+
 		try {
 			aBuyOrder.sharesToPurchase(aTotalQuantityAvailable);
 
+			// the events are saved in the order's outbox by the same put
+			publisher.stageUnitOfWork(aBuyOrder);
+
 			this.buyOrderRepository().save(aBuyOrder);
 
-			return true;
+			saved = true;
 
 		} catch (Exception e) {
 			return false;
+
+		} finally {
+			if (!saved) {
+				publisher.discardUnitOfWork();
+			}
 		}
+
+		publisher.commitUnitOfWork();
+
+		return true;
 	}
 
 	private class BuyOrderSharePurchaseRequestedSubscriber
@@ -17,13 +17,15 @@ package co.vaughnvernon.nanotrader.infrastructure.persistence;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.gemstone.gemfire.cache.Region;
 import com.gemstone.gemfire.cache.client.ClientCache;
 import com.gemstone.gemfire.cache.client.ClientCacheFactory;
+import com.gemstone.gemfire.cache.query.Query;
+import com.gemstone.gemfire.cache.query.QueryException;
+import com.gemstone.gemfire.cache.query.SelectResults;
 
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrder;
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrderRepository;
@@ -35,7 +37,16 @@ public class GemFireBuyOrderRepository implements BuyOrderRepository {
 	private static BuyOrderRepository instance;
 
 	private static final String BUY_ORDERS_REGION = "BuyOrders";
+
+	// served by the BuyOrdersBySymbol index declared in the cluster configuration
+	private static final String OPEN_ORDERS_OF_SYMBOL_OQL =
+			"SELECT DISTINCT * FROM /" + BUY_ORDERS_REGION + " o"
+			+ " WHERE o.quote.tickerSymbol.symbol = $1"
+			+ " AND o.execution.filledDate = NULL"
+			+ " ORDER BY o.execution.openDate";
+
 	private Region<OrderId, BuyOrder> buyOrdersRegion;
+	private Query openOrdersOfSymbolQuery;
 	ClientCache clientCache;
 
 	public static synchronized BuyOrderRepository instance() {
@@ -54,19 +65,25 @@ public class GemFireBuyOrderRepository implements BuyOrderRepository {
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public Collection<BuyOrder> openOrdersOf(TickerSymbol aTickerSymbol) {
-		List<BuyOrder> openOrders = new ArrayList<BuyOrder>();
-
-		for (OrderId oid : orders().keySetOnServer()) {
-			BuyOrder order = orders().get(oid);
-			if (order.hasTickerSymbol(aTickerSymbol)) {
-				if (order.isOpen()) {
-					openOrders.add(order);
-				}
-			}
+		SelectResults<BuyOrder> openOrders = null;
+
+		try {
+			openOrders =
+					(SelectResults<BuyOrder>)
+						this.openOrdersOfSymbolQuery().execute(aTickerSymbol.symbol());
+
+		} catch (QueryException e) {
+			throw new IllegalStateException(
+					"Cannot query open orders of: "
+					+ aTickerSymbol.symbol()
+					+ " because: "
+					+ e.getMessage(),
+					e);
 		}
 
-		return openOrders;
+		return new ArrayList<BuyOrder>(openOrders);
 	}
 
 	@Override
@@ -84,6 +101,10 @@ public class GemFireBuyOrderRepository implements BuyOrderRepository {
 		orders().put(aOrder.orderId(), aOrder);
 	}
 
+	private Query openOrdersOfSymbolQuery() {
+		return this.openOrdersOfSymbolQuery;
+	}
+
 	private Region<OrderId, BuyOrder> orders() {
 		return buyOrdersRegion;
 	}
@@ -103,6 +124,7 @@ public class GemFireBuyOrderRepository implements BuyOrderRepository {
 			clientCache = ccf.create();
 		}
 		buyOrdersRegion = clientCache.getRegion(BUY_ORDERS_REGION);
+		openOrdersOfSymbolQuery = clientCache.getQueryService().newQuery(OPEN_ORDERS_OF_SYMBOL_OQL);
 	}
 
 }
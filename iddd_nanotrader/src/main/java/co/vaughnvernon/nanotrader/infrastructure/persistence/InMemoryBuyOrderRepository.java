@@ -16,19 +16,30 @@ package co.vaughnvernon.nanotrader.infrastructure.persistence;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrder;
 import co.vaughnvernon.nanotrader.domain.model.order.BuyOrderRepository;
 import co.vaughnvernon.tradercommon.order.OrderId;
+import co.vaughnvernon.tradercommon.quote.SymbolTable;
 import co.vaughnvernon.tradercommon.quote.TickerSymbol;
 
+/**
+ * I keep every saved BuyOrder by id, and index the open ones by
+ * ticker symbol in arrival order, so finding the open orders of a
+ * symbol does not scan filled orders or those of other symbols. An
+ * order leaves the index when it is saved filled or is removed.
+ * Each symbol's open orders are guarded by their own lock, so quote
+ * bars of different symbols never contend.
+ */
 public class InMemoryBuyOrderRepository implements BuyOrderRepository {
 
 	private static BuyOrderRepository instance;
 
+	private SymbolTable<Map<String,BuyOrder>> openOrders;
 	private Map<String,BuyOrder> orders;
 
 	public static synchronized BuyOrderRepository instance() {
@@ -42,17 +53,24 @@ public class InMemoryBuyOrderRepository implements BuyOrderRepository {
 	public InMemoryBuyOrderRepository() {
 		super();
 
-		this.setOrders(new HashMap<String,BuyOrder>());
+		this.setOpenOrders(new SymbolTable<Map<String,BuyOrder>>());
+		this.setOrders(new ConcurrentHashMap<String,BuyOrder>());
 	}
 
 	@Override
 	public Collection<BuyOrder> openOrdersOf(TickerSymbol aTickerSymbol) {
 		List<BuyOrder> openOrders = new ArrayList<BuyOrder>();
 
-		for (BuyOrder order : this.orders().values()) {
-			if (order.hasTickerSymbol(aTickerSymbol)) {
-				if (order.isOpen()) {
-					openOrders.add(order);
+		Map<String,BuyOrder> openOrdersOfSymbol =
+				this.openOrders().get(aTickerSymbol.symbol());
+
+		if (openOrdersOfSymbol != null) {
+			synchronized (openOrdersOfSymbol) {
+				for (BuyOrder order : openOrdersOfSymbol.values()) {
+					// may have been filled but not yet saved
+					if (order.isOpen()) {
+						openOrders.add(order);
+					}
 				}
 			}
 		}
@@ -68,11 +86,59 @@ public class InMemoryBuyOrderRepository implements BuyOrderRepository {
 	@Override
 	public void remove(BuyOrder aOrder) {
 		this.orders().remove(aOrder.orderId().id());
+
+		this.unindex(aOrder);
 	}
 
 	@Override
 	public void save(BuyOrder aOrder) {
 		this.orders().put(aOrder.orderId().id(), aOrder);
+
+		if (aOrder.isOpen()) {
+			this.index(aOrder);
+		} else {
+			this.unindex(aOrder);
+		}
+	}
+
+	private void index(BuyOrder aOrder) {
+		String symbol = aOrder.quote().tickerSymbol().symbol();
+
+		Map<String,BuyOrder> openOrdersOfSymbol = this.openOrders().get(symbol);
+
+		if (openOrdersOfSymbol == null) {
+			Map<String,BuyOrder> newOpenOrdersOfSymbol = new LinkedHashMap<String,BuyOrder>();
+
+			openOrdersOfSymbol = this.openOrders().putIfAbsent(symbol, newOpenOrdersOfSymbol);
+
+			if (openOrdersOfSymbol == null) {
+				openOrdersOfSymbol = newOpenOrdersOfSymbol;
+			}
+		}
+
+		synchronized (openOrdersOfSymbol) {
+			// replacing an indexed order keeps its place in arrival order
+			openOrdersOfSymbol.put(aOrder.orderId().id(), aOrder);
+		}
+	}
+
+	private void unindex(BuyOrder aOrder) {
+		Map<String,BuyOrder> openOrdersOfSymbol =
+				this.openOrders().get(aOrder.quote().tickerSymbol().symbol());
+
+		if (openOrdersOfSymbol != null) {
+			synchronized (openOrdersOfSymbol) {
+				openOrdersOfSymbol.remove(aOrder.orderId().id());
+			}
+		}
+	}
+
+	private SymbolTable<Map<String,BuyOrder>> openOrders() {
+		return this.openOrders;
+	}
+
+	private void setOpenOrders(SymbolTable<Map<String,BuyOrder>> aSymbolTable) {
+		this.openOrders = aSymbolTable;
 	}
 
 	private Map<String,BuyOrder> orders() {
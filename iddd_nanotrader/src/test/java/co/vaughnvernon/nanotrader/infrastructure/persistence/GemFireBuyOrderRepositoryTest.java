@@ -39,6 +39,30 @@ public class GemFireBuyOrderRepositoryTest extends TestCase {
 		assertEquals(2, foundOrders.size());
 	}
 
+	public void testOpenOrdersOfExcludesFilledOrders() throws Exception {
+		TickerSymbol tickerSymbol = new TickerSymbol("VMW");
+
+		BuyOrder filledOrder =
+				new BuyOrder(AccountId.unique(), new Quote(tickerSymbol, new Money("78.35")),
+				10, new Money("12.99"));
+
+		filledOrder.sharesToPurchase(filledOrder.quantityOfSharesOrdered());
+
+		this.repository.save(filledOrder);
+
+		BuyOrder openOrder =
+				new BuyOrder(AccountId.unique(), new Quote(tickerSymbol, new Money("78.40")),
+				10, new Money("12.99"));
+
+		this.repository.save(openOrder);
+
+		Collection<BuyOrder> foundOrders = this.repository.openOrdersOf(tickerSymbol);
+
+		assertEquals(1, foundOrders.size());
+
+		assertEquals(openOrder.orderId(), foundOrders.iterator().next().orderId());
+	}
+
 	public void testOrderOf() throws Exception {
 		BuyOrder buyOrder = this.buyOrderFixture1();
 
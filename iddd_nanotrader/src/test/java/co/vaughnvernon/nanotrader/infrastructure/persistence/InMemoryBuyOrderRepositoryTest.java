@@ -54,6 +54,87 @@ public class InMemoryBuyOrderRepositoryTest extends TestCase {
 		assertEquals(2, foundOrders.size());
 	}
 
+	public void testOpenOrdersOfInArrivalOrder() throws Exception {
+		List<BuyOrder> orders = new ArrayList<BuyOrder>();
+
+		for (int idx = 0; idx < 5; ++idx) {
+			BuyOrder order = this.buyOrderFixture2();
+
+			this.repository.save(order);
+
+			orders.add(order);
+		}
+
+		// saving again keeps an order's place
+		this.repository.save(orders.get(0));
+
+		assertEquals(orders, new ArrayList<BuyOrder>(this.repository.openOrdersOf(this.googTickerFixture())));
+	}
+
+	public void testFilledAndRemovedOrdersLeaveOpenOrders() throws Exception {
+		BuyOrder filledOrder = this.buyOrderFixture1();
+		BuyOrder removedOrder = this.buyOrderFixture2();
+		BuyOrder openOrder = this.buyOrderFixture2();
+
+		this.repository.save(filledOrder);
+		this.repository.save(removedOrder);
+		this.repository.save(openOrder);
+
+		assertEquals(3, this.repository.openOrdersOf(this.googTickerFixture()).size());
+
+		filledOrder.sharesToPurchase(filledOrder.quantityOfSharesOrdered());
+
+		this.repository.save(filledOrder);
+
+		this.repository.remove(removedOrder);
+
+		Collection<BuyOrder> foundOrders =
+				this.repository.openOrdersOf(this.googTickerFixture());
+
+		assertEquals(1, foundOrders.size());
+		assertEquals(openOrder, foundOrders.iterator().next());
+
+		assertEquals(filledOrder, this.repository.orderOf(filledOrder.orderId()));
+		assertTrue(this.repository.openOrdersOf(new TickerSymbol("ORCL")).isEmpty());
+	}
+
+	public void testConcurrentSaves() throws Exception {
+		final int ordersPerThread = 500;
+
+		Thread[] threads = new Thread[4];
+
+		for (int idx = 0; idx < threads.length; ++idx) {
+			threads[idx] = new Thread() {
+				@Override
+				public void run() {
+					for (int count = 0; count < ordersPerThread; ++count) {
+						BuyOrder order = buyOrderFixture1();
+
+						repository.save(order);
+
+						if (count % 2 == 0) {
+							order.sharesToPurchase(order.quantityOfSharesOrdered());
+
+							repository.save(order);
+						}
+
+						repository.openOrdersOf(googTickerFixture());
+					}
+				}
+			};
+
+			threads[idx].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(
+				threads.length * ordersPerThread / 2,
+				this.repository.openOrdersOf(this.googTickerFixture()).size());
+	}
+
 	public void testOrderOf() throws Exception {
 		BuyOrder buyOrder = this.buyOrderFixture1();
 
@@ -14,6 +14,14 @@
 
 package co.vaughnvernon.tradercommon.event;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import com.gemstone.gemfire.cache.CacheClosedException;
 import com.gemstone.gemfire.cache.client.ClientCache;
 import com.gemstone.gemfire.cache.client.ClientCacheFactory;
@@ -30,8 +38,57 @@ import com.gemstone.gemfire.cache.query.RegionNotFoundException;
 
 import co.vaughnvernon.tradercommon.infrastructure.persistence.GemFireEventStore;
 
+/**
+ * I publish domain events by appending them to the GemFireEventStore,
+ * one instance per thread. By default each publish() appends before it
+ * returns. In asynchronous mode publish() only puts the event on my
+ * bounded queue, blocking while the queue is full, and my writer thread
+ * appends whatever has queued up as one batch with a single putAll().
+ * Callers that must read their own events call flush(), which waits
+ * until everything published before it has been appended. A batch that
+ * fails is retried up to MAXIMUM_WRITE_ATTEMPTS times under the event
+ * ids reserved for its first attempt, so a batch that was stored
+ * although its putAll() failed is not stored twice; after that my
+ * writer stops, and flush(), disableAsynchronousMode(), and publish()
+ * throw IllegalStateException rather than wait on it. My metrics
+ * give the queue depth, the number of batches appended, and the last
+ * and maximum batch append latency in nanoseconds.
+ *
+ * Between beginUnitOfWork() and commitUnitOfWork() I only collect the
+ * events published on my thread. The caller commits once the aggregate
+ * raising them has been saved, and I publish them together as one
+ * batch; if the save fails the caller discards them, so an attempt that
+ * is retried never leaves its events behind.
+ *
+ * Saving the aggregate and appending its events are separate writes,
+ * so a unit of work on a DomainEventOutbox aggregate should be staged
+ * with stageUnitOfWork() before the aggregate is saved. I then reserve
+ * event ids for the collected events and put them in the aggregate's
+ * outbox, to be stored by the same put as the aggregate, and when the
+ * unit of work is committed I relay() them to the DomainEvents region
+ * directly, even in asynchronous mode. Should the relay fail, the
+ * events stay in the outbox and are relayed with the aggregate's next
+ * staged unit of work, or by any caller of relay(); storing them again
+ * under the same ids never duplicates them.
+ *
+ * A listener that declares event types is added to one continuous query
+ * per type, selecting StoredEvents by their typeName. The query for a
+ * type is shared by every such listener in the client and closed with
+ * its last listener, so the grid sends each event once, and only to
+ * clients listening for its type. Any other listener is added to the
+ * continuous query named by its queryName(), which is created for the
+ * first listener with that name.
+ */
 public class DomainEventGemFirePublisher {
 
+	public static final int DEFAULT_BATCH_SIZE = 500;
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	public static final int MAXIMUM_WRITE_ATTEMPTS = 10;
+
+	private static final long RETRY_INTERVAL = 100L;
+
+	private static final String EVENT_TYPE_CQ_PREFIX = "DomainEventsOfType:";
+
 	private static final ThreadLocal<DomainEventGemFirePublisher> instance = new ThreadLocal<DomainEventGemFirePublisher>() {
 		protected DomainEventGemFirePublisher initialValue() {
 			return new DomainEventGemFirePublisher();
@@ -40,7 +97,12 @@ public class DomainEventGemFirePublisher {
 
 	CqQuery cqQuery = null;
 
-	private EventStore eventStore = new GemFireEventStore();
+	EventStore eventStore = new GemFireEventStore();
+
+	private AsynchronousWriter asynchronousWriter;
+	private long publishedCount;
+	private List<DomainEvent> unitOfWorkEvents;
+	private DomainEventOutbox unitOfWorkOutbox;
 
 	ClientCache clientCache;
 
@@ -48,8 +110,151 @@ public class DomainEventGemFirePublisher {
 		return instance.get();
 	}
 
+	public void beginUnitOfWork() {
+		if (this.isInUnitOfWork()) {
+			throw new IllegalStateException("Unit of work has already begun.");
+		}
+
+		this.unitOfWorkEvents = new ArrayList<DomainEvent>();
+	}
+
+	public void commitUnitOfWork() {
+		if (!this.isInUnitOfWork()) {
+			throw new IllegalStateException("Unit of work has not begun.");
+		}
+
+		List<DomainEvent> domainEvents = this.unitOfWorkEvents;
+		DomainEventOutbox outbox = this.unitOfWorkOutbox;
+
+		this.unitOfWorkEvents = null;
+		this.unitOfWorkOutbox = null;
+
+		if (outbox != null) {
+			try {
+				this.relay(outbox);
+			} catch (Exception e) {
+				// saved with the aggregate; relayed again by a later unit of work
+				System.out.println(
+						"Error: OUTBOX RELAY: because: "
+						+ e.getMessage());
+			}
+		}
+
+		if (domainEvents.isEmpty()) {
+			return;
+		}
+
+		if (this.isAsynchronous()) {
+			for (DomainEvent domainEvent : domainEvents) {
+				this.asynchronousWriter.enqueue(domainEvent);
+
+				++this.publishedCount;
+			}
+		} else {
+			eventStore.append(domainEvents);
+		}
+	}
+
+	public void disableAsynchronousMode() {
+		if (this.isAsynchronous()) {
+			try {
+				this.flush();
+			} finally {
+				this.asynchronousWriter.close();
+				this.asynchronousWriter = null;
+			}
+		}
+	}
+
+	public void discardUnitOfWork() {
+		this.unitOfWorkEvents = null;
+		this.unitOfWorkOutbox = null;
+	}
+
+	public void enableAsynchronousMode() {
+		this.enableAsynchronousMode(DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	public void enableAsynchronousMode(int aQueueCapacity, int aBatchSize) {
+		if (aQueueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be greater than zero.");
+		}
+
+		if (aBatchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be greater than zero.");
+		}
+
+		this.disableAsynchronousMode();
+
+		// a new writer counts from zero
+		this.publishedCount = 0L;
+
+		this.asynchronousWriter = new AsynchronousWriter(aQueueCapacity, aBatchSize);
+		this.asynchronousWriter.start();
+	}
+
+	public void flush() {
+		if (this.isAsynchronous()) {
+			this.asynchronousWriter.awaitWritten(this.publishedCount);
+		}
+	}
+
+	public long flushCount() {
+		return this.isAsynchronous() ? this.asynchronousWriter.flushCount : 0L;
+	}
+
+	public boolean isAsynchronous() {
+		return this.asynchronousWriter != null;
+	}
+
+	public boolean isInUnitOfWork() {
+		return this.unitOfWorkEvents != null;
+	}
+
+	public long lastFlushLatency() {
+		return this.isAsynchronous() ? this.asynchronousWriter.lastFlushLatency : 0L;
+	}
+
+	public long maximumFlushLatency() {
+		return this.isAsynchronous() ? this.asynchronousWriter.maximumFlushLatency : 0L;
+	}
+
 	public <T> void publish(final T aDomainEvent) {
-		eventStore.append((DomainEvent) aDomainEvent);
+		if (this.isInUnitOfWork()) {
+			this.unitOfWorkEvents.add((DomainEvent) aDomainEvent);
+		} else if (this.isAsynchronous()) {
+			this.asynchronousWriter.enqueue((DomainEvent) aDomainEvent);
+
+			++this.publishedCount;
+		} else {
+			eventStore.append((DomainEvent) aDomainEvent);
+		}
+	}
+
+	public void relay(DomainEventOutbox anOutbox) {
+		List<StoredEvent> storedEvents = anOutbox.outboxEvents();
+
+		if (storedEvents.isEmpty()) {
+			return;
+		}
+
+		if (eventStore instanceof GemFireEventStore) {
+			((GemFireEventStore) eventStore).store(storedEvents);
+		} else {
+			List<DomainEvent> domainEvents = new ArrayList<DomainEvent>(storedEvents.size());
+
+			for (StoredEvent storedEvent : storedEvents) {
+				domainEvents.add(storedEvent.toDomainEvent());
+			}
+
+			eventStore.append(domainEvents);
+		}
+
+		anOutbox.setOutboxEvents(new ArrayList<StoredEvent>());
+	}
+
+	public int queueDepth() {
+		return this.isAsynchronous() ? this.asynchronousWriter.queueDepth() : 0;
 	}
 
 	public void reset() {
@@ -61,10 +266,42 @@ public class DomainEventGemFirePublisher {
 		}
 	}
 
+	public void stageUnitOfWork(DomainEventOutbox anOutbox) {
+		if (!this.isInUnitOfWork()) {
+			throw new IllegalStateException("Unit of work has not begun.");
+		}
+
+		if (this.unitOfWorkOutbox != null) {
+			throw new IllegalStateException("Unit of work has already been staged.");
+		}
+
+		// keep any events a failed relay left behind
+		List<StoredEvent> storedEvents = new ArrayList<StoredEvent>(anOutbox.outboxEvents());
+
+		if (eventStore instanceof GemFireEventStore) {
+			storedEvents.addAll(((GemFireEventStore) eventStore).newStoredEvents(this.unitOfWorkEvents));
+		} else {
+			for (DomainEvent domainEvent : this.unitOfWorkEvents) {
+				storedEvents.add(new StoredEvent(domainEvent));
+			}
+		}
+
+		anOutbox.setOutboxEvents(storedEvents);
+
+		this.unitOfWorkEvents = new ArrayList<DomainEvent>();
+		this.unitOfWorkOutbox = anOutbox;
+	}
+
 	public <T> void subscribe(DomainEventListener aListener) {
 
 		// Get the query service
 		QueryService queryService = clientCache.getQueryService();
+
+		if (aListener.isTypeScoped()) {
+			this.subscribeToEventTypes(queryService, aListener);
+			return;
+		}
+
 		cqQuery = createNewCq(queryService, aListener);
 	}
 
@@ -73,11 +310,41 @@ public class DomainEventGemFirePublisher {
 		// Get the query service
 		QueryService queryService = clientCache.getQueryService();
 
-		CqQuery[] cqQueriesOnRegion = queryService.getCqs();
-		if (cqQueriesOnRegion == null || cqQueriesOnRegion.length == 0) {
-			createNewCq(queryService, someListeners);
-		} else {
-			addListenerToExistingCq(queryService, cqQueriesOnRegion[0], someListeners);
+		Map<String, List<DomainEventListener>> allEventListeners =
+				new LinkedHashMap<String, List<DomainEventListener>>();
+
+		for (DomainEventListener listener : someListeners) {
+			if (listener.isTypeScoped()) {
+				this.subscribeToEventTypes(queryService, listener);
+			} else {
+				List<DomainEventListener> listeners = allEventListeners.get(listener.queryName());
+
+				if (listeners == null) {
+					listeners = new ArrayList<DomainEventListener>();
+					allEventListeners.put(listener.queryName(), listeners);
+				}
+
+				listeners.add(listener);
+			}
+		}
+
+		synchronized (DomainEventGemFirePublisher.class) {
+			for (Map.Entry<String, List<DomainEventListener>> entry : allEventListeners.entrySet()) {
+				List<DomainEventListener> listeners = entry.getValue();
+
+				// the CQ answering every event has the listeners' query name
+				CqQuery allEventsCq = queryService.getCq(entry.getKey());
+
+				if (allEventsCq == null || allEventsCq.isClosed()) {
+					createNewCq(queryService, listeners.toArray(new DomainEventListener[listeners.size()]));
+				} else {
+					for (DomainEventListener listener : listeners) {
+						allEventsCq.getCqAttributesMutator().addCqListener(listener);
+					}
+
+					cqQuery = allEventsCq;
+				}
+			}
 		}
 	}
 
@@ -93,7 +360,8 @@ public class DomainEventGemFirePublisher {
 		String cqName = aListener.queryName();
 		String query = aListener.oql();
 		CqQuery testExistCqQuery = queryService.getCq(cqName);
-		if (testExistCqQuery != null) {
+		if (testExistCqQuery != null && !testExistCqQuery.isClosed()) {
+			testExistCqQuery.getCqAttributesMutator().addCqListener(aListener);
 			cqQuery = testExistCqQuery;
 		}
 		else {
@@ -128,22 +396,26 @@ public class DomainEventGemFirePublisher {
 		return cqQuery;
 	}
 
-	private CqQuery addListenerToExistingCq(QueryService queryService, CqQuery cqQuery,
-			DomainEventListener[] someListeners) {
+	public void unsubscribe(DomainEventListener aListener) throws CqException {
+		if (!aListener.isTypeScoped()) {
+			throw new IllegalArgumentException("Listener must be subscribed to event types.");
+		}
 
-		CqAttributes cqa = cqQuery.getCqAttributes();
+		QueryService queryService = clientCache.getQueryService();
 
-		// Add new listener to existing query
-		CqAttributesFactory cqAf = new CqAttributesFactory(cqa);
-		for (DomainEventListener aListener : someListeners) {
-			cqAf.addCqListener(aListener);
-		}
-		cqa = cqAf.create();
+		synchronized (DomainEventGemFirePublisher.class) {
+			for (Class<?> eventType : aListener.eventTypes()) {
+				CqQuery eventTypeCq = queryService.getCq(this.eventTypeCqName(eventType));
 
-		String cqName = cqQuery.getName();
-		String query = cqQuery.getQueryString();
-		cqQuery = buildCq(queryService, cqName, query, cqa);
-		return cqQuery;
+				if (eventTypeCq != null && !eventTypeCq.isClosed()) {
+					eventTypeCq.getCqAttributesMutator().removeCqListener(aListener);
+
+					if (eventTypeCq.getCqAttributes().getCqListeners().length == 0) {
+						eventTypeCq.close();
+					}
+				}
+			}
+		}
 	}
 
 	public void unsubscribe() throws CqException {
@@ -152,6 +424,41 @@ public class DomainEventGemFirePublisher {
 		cqQuery.close();
 	}
 
+	private String eventTypeCqName(Class<?> anEventType) {
+		return EVENT_TYPE_CQ_PREFIX + anEventType.getName();
+	}
+
+	private void subscribeToEventTypes(QueryService aQueryService, DomainEventListener aListener) {
+		synchronized (DomainEventGemFirePublisher.class) {
+			for (Class<?> eventType : aListener.eventTypes()) {
+				String cqName = this.eventTypeCqName(eventType);
+
+				CqQuery eventTypeCq = aQueryService.getCq(cqName);
+
+				if (eventTypeCq != null && !eventTypeCq.isClosed()) {
+					eventTypeCq.getCqAttributesMutator().addCqListener(aListener);
+					continue;
+				}
+
+				CqAttributesFactory cqAf = new CqAttributesFactory();
+
+				cqAf.addCqListener(aListener);
+
+				String query =
+						"SELECT * FROM /DomainEvents e"
+						+ " WHERE e.typeName = '" + eventType.getName() + "'";
+
+				try {
+					aQueryService.newCq(cqName, query, cqAf.create()).execute();
+
+				} catch (Exception e) {
+					throw new IllegalStateException(
+							"Cannot subscribe to: " + eventType.getName() + " because: " + e.getMessage(), e);
+				}
+			}
+		}
+	}
+
 	private DomainEventGemFirePublisher() {
 		super();
 
@@ -170,4 +477,168 @@ public class DomainEventGemFirePublisher {
 			clientCache = ccf.create();
 		}
 	}
+
+	private class AsynchronousWriter extends Thread {
+
+		private int batchSize;
+		private volatile boolean closed;
+		private volatile Exception failure;
+		private volatile long flushCount;
+		private volatile long lastFlushLatency;
+		private volatile long maximumFlushLatency;
+		private BlockingQueue<DomainEvent> queue;
+		private long writtenCount;
+
+		AsynchronousWriter(int aQueueCapacity, int aBatchSize) {
+			super("DomainEventGemFirePublisherAsynchronousWriter");
+
+			this.batchSize = aBatchSize;
+			this.queue = new ArrayBlockingQueue<DomainEvent>(aQueueCapacity);
+
+			this.setDaemon(true);
+		}
+
+		synchronized void awaitWritten(long aPublishedCount) {
+			boolean interrupted = false;
+
+			while (this.writtenCount < aPublishedCount) {
+				if (this.failure != null) {
+					throw new IllegalStateException(
+							"Cannot flush: "
+							+ (aPublishedCount - this.writtenCount)
+							+ " events because: "
+							+ this.failure.getMessage(),
+							this.failure);
+				}
+
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		void close() {
+			this.closed = true;
+
+			this.interrupt();
+		}
+
+		void enqueue(DomainEvent aDomainEvent) {
+			try {
+				do {
+					if (this.failure != null) {
+						throw new IllegalStateException(
+								"Cannot publish: "
+								+ aDomainEvent
+								+ " because: "
+								+ this.failure.getMessage(),
+								this.failure);
+					}
+				} while (!this.queue.offer(aDomainEvent, RETRY_INTERVAL, TimeUnit.MILLISECONDS));
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new IllegalStateException(
+						"Cannot publish: " + aDomainEvent + " because: interrupted", e);
+			}
+		}
+
+		int queueDepth() {
+			return this.queue.size();
+		}
+
+		@Override
+		public void run() {
+			List<DomainEvent> batch = new ArrayList<DomainEvent>(this.batchSize);
+
+			List<StoredEvent> storedBatch = null;
+
+			int attempts = 0;
+
+			while (!this.closed) {
+				try {
+					if (batch.isEmpty()) {
+						DomainEvent domainEvent = this.queue.poll(RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+
+						if (domainEvent == null) {
+							continue;
+						}
+
+						batch.add(domainEvent);
+
+						this.queue.drainTo(batch, this.batchSize - 1);
+					}
+
+					long start = System.nanoTime();
+
+					if (eventStore instanceof GemFireEventStore) {
+						GemFireEventStore gemFireEventStore = (GemFireEventStore) eventStore;
+
+						// ids are reserved once, so a retried putAll() that had
+						// already been applied overwrites rather than duplicates
+						if (storedBatch == null) {
+							storedBatch = gemFireEventStore.newStoredEvents(batch);
+						}
+
+						gemFireEventStore.store(storedBatch);
+
+					} else {
+						eventStore.append(batch);
+					}
+
+					this.flushed(batch.size(), System.nanoTime() - start);
+
+					batch.clear();
+
+					storedBatch = null;
+
+					attempts = 0;
+
+				} catch (InterruptedException e) {
+					// closed; the queue was flushed first
+
+				} catch (Exception e) {
+					System.out.println(
+							"Error: ASYNCHRONOUS PUBLISH: because: "
+							+ e.getMessage());
+
+					if (++attempts >= MAXIMUM_WRITE_ATTEMPTS) {
+						this.failed(e);
+						return;
+					}
+
+					// keep the batch and retry it ahead of anything queued meanwhile
+
+					try {
+						Thread.sleep(RETRY_INTERVAL);
+					} catch (InterruptedException ie) {
+						// closed
+					}
+				}
+			}
+		}
+
+		private synchronized void failed(Exception anException) {
+			this.failure = anException;
+
+			this.notifyAll();
+		}
+
+		private synchronized void flushed(int aCount, long aLatency) {
+			this.writtenCount += aCount;
+
+			this.lastFlushLatency = aLatency;
+			this.maximumFlushLatency = Math.max(this.maximumFlushLatency, aLatency);
+			++this.flushCount;
+
+			this.notifyAll();
+		}
+	}
 }
@@ -5,7 +5,11 @@ import com.gemstone.gemfire.cache.query.CqEvent;
 import com.gemstone.gemfire.cache.query.CqListener;
 
 /**
- * A simple CqListener implementation.
+ * A simple CqListener implementation. A listener constructed with
+ * event types receives only StoredEvents of those types, through the
+ * per-type continuous queries that DomainEventGemFirePublisher shares
+ * among all such listeners; otherwise it receives every StoredEvent
+ * through its own query.
  * 
  * @author GemStone Systems, Inc.
  */
@@ -13,6 +17,10 @@ public class DomainEventListener implements CqListener {
 
 	StringBuffer eventLog = new StringBuffer();
 
+	private static final Class<?>[] ALL_EVENT_TYPES = new Class<?>[0];
+
+	private Class<?>[] eventTypes = ALL_EVENT_TYPES;
+
 	private String queryName = "buyOrderCQ";
 
 	public DomainEventListener() {
@@ -24,6 +32,28 @@ public class DomainEventListener implements CqListener {
 		}
 	}
 
+	public DomainEventListener(Class<?>... someEventTypes) {
+		if (someEventTypes == null || someEventTypes.length == 0) {
+			throw new IllegalArgumentException("Event types must be provided.");
+		}
+
+		for (Class<?> eventType : someEventTypes) {
+			if (eventType == null || !DomainEvent.class.isAssignableFrom(eventType)) {
+				throw new IllegalArgumentException("Event types must be DomainEvent types.");
+			}
+		}
+
+		this.eventTypes = someEventTypes.clone();
+	}
+
+	public Class<?>[] eventTypes() {
+		return this.eventTypes.clone();
+	}
+
+	public boolean isTypeScoped() {
+		return this.eventTypes.length > 0;
+	}
+
 	public String oql() {
 		return "select * from /DomainEvents";
 	}
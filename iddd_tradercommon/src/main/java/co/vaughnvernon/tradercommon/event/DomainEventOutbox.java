@@ -0,0 +1,35 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import java.util.List;
+
+/**
+ * I am an aggregate that carries the events of its latest unit of
+ * work as StoredEvents, so saving me stores them in the same put. I
+ * answer an empty list when I carry none.
+ *
+ * DomainEventGemFirePublisher stages events into me before I am saved
+ * and relays them to the DomainEvents region once I am. Their event
+ * ids are reserved when they are staged, so relaying them again, as
+ * after a failure between my save and the relay, overwrites rather
+ * than duplicates them.
+ */
+public interface DomainEventOutbox {
+
+	public List<StoredEvent> outboxEvents();
+
+	public void setOutboxEvents(List<StoredEvent> aStoredEvents);
+}
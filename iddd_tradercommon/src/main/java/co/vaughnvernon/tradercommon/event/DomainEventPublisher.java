@@ -15,10 +15,22 @@
 package co.vaughnvernon.tradercommon.event;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+
+/**
+ * I publish domain events to the subscribers of the current thread.
+ * Each event class maps to an array of the subscribers interested in
+ * it, including those subscribed to DomainEvent itself, in the order
+ * they subscribed. The arrays are rebuilt on subscribe, unsubscribe,
+ * and reset, so publishing is one map lookup and an array walk.
+ */
 public class DomainEventPublisher {
 
+    private static final DomainEventSubscriber<?>[] NO_SUBSCRIBERS =
+                new DomainEventSubscriber<?>[0];
+
     private static final ThreadLocal<DomainEventPublisher> instance
                 = new ThreadLocal<DomainEventPublisher>() {
         protected DomainEventPublisher initialValue() {
@@ -26,10 +38,10 @@ public class DomainEventPublisher {
         }
     };
 
+    private DomainEventSubscriber<?>[] allEventSubscribers;
+    private Map<Class<?>, DomainEventSubscriber<?>[]> eventSubscribers;
     private boolean publishing;
-
-    @SuppressWarnings("rawtypes")
-	private List subscribers;
+    private List<DomainEventSubscriber<?>> subscribers;
 
     public static DomainEventPublisher instance() {
         return instance.get();
@@ -41,19 +53,19 @@ public class DomainEventPublisher {
             try {
                 this.setPublishing(true);
 
-                Class<?> eventType = aDomainEvent.getClass();
+                DomainEventSubscriber<?>[] subscribers =
+                        this.eventSubscribers.get(aDomainEvent.getClass());
 
-                @SuppressWarnings("unchecked")
-				List<DomainEventSubscriber<T>> allSubscribers =
-                        this.subscribers();
+                if (subscribers == null) {
+                    subscribers = this.allEventSubscribers;
+                }
 
-                for (DomainEventSubscriber<T> subscriber : allSubscribers) {
-                    Class<?> subscribedToType =
-                            subscriber.subscribedToEventType();
+                for (int idx = 0; idx < subscribers.length; ++idx) {
+                    @SuppressWarnings("unchecked")
+                    DomainEventSubscriber<T> subscriber =
+                            (DomainEventSubscriber<T>) subscribers[idx];
 
-                    if (subscribedToType == eventType || subscribedToType == DomainEvent.class) {
-                        subscriber.handleEvent(aDomainEvent);
-                    }
+                    subscriber.handleEvent(aDomainEvent);
                 }
 
             } finally {
@@ -65,15 +77,25 @@ public class DomainEventPublisher {
     public void reset() {
         if (!this.isPublishing()) {
             this.setSubscribers(null);
+            this.rebuildEventSubscribers();
         }
     }
 
-    @SuppressWarnings("unchecked")
 	public <T> void subscribe(DomainEventSubscriber<T> aSubscriber) {
         if (!this.isPublishing()) {
             this.ensureSubscribersList();
 
             this.subscribers().add(aSubscriber);
+
+            this.rebuildEventSubscribers();
+        }
+    }
+
+    public <T> void unsubscribe(DomainEventSubscriber<T> aSubscriber) {
+        if (!this.isPublishing() && this.hasSubscribers()) {
+            if (this.subscribers().remove(aSubscriber)) {
+                this.rebuildEventSubscribers();
+            }
         }
     }
 
@@ -82,12 +104,12 @@ public class DomainEventPublisher {
 
         this.setPublishing(false);
         this.ensureSubscribersList();
+        this.rebuildEventSubscribers();
     }
 
-	@SuppressWarnings("rawtypes")
 	private void ensureSubscribersList() {
         if (!this.hasSubscribers()) {
-            this.setSubscribers(new ArrayList());
+            this.setSubscribers(new ArrayList<DomainEventSubscriber<?>>());
         }
     }
 
@@ -103,13 +125,55 @@ public class DomainEventPublisher {
         return this.subscribers() != null;
     }
 
-    @SuppressWarnings("rawtypes")
-	private List subscribers() {
+    private void rebuildEventSubscribers() {
+        List<DomainEventSubscriber<?>> allEventSubscribers =
+                new ArrayList<DomainEventSubscriber<?>>();
+
+        Map<Class<?>, List<DomainEventSubscriber<?>>> eventSubscribers =
+                new HashMap<Class<?>, List<DomainEventSubscriber<?>>>();
+
+        if (this.hasSubscribers()) {
+            for (DomainEventSubscriber<?> subscriber : this.subscribers()) {
+                Class<?> subscribedToType = subscriber.subscribedToEventType();
+
+                if (subscribedToType == DomainEvent.class) {
+                    allEventSubscribers.add(subscriber);
+
+                    for (List<DomainEventSubscriber<?>> typeSubscribers : eventSubscribers.values()) {
+                        typeSubscribers.add(subscriber);
+                    }
+
+                } else {
+                    List<DomainEventSubscriber<?>> typeSubscribers =
+                            eventSubscribers.get(subscribedToType);
+
+                    if (typeSubscribers == null) {
+                        typeSubscribers = new ArrayList<DomainEventSubscriber<?>>(allEventSubscribers);
+
+                        eventSubscribers.put(subscribedToType, typeSubscribers);
+                    }
+
+                    typeSubscribers.add(subscriber);
+                }
+            }
+        }
+
+        Map<Class<?>, DomainEventSubscriber<?>[]> eventSubscriberArrays =
+                new HashMap<Class<?>, DomainEventSubscriber<?>[]>();
+
+        for (Map.Entry<Class<?>, List<DomainEventSubscriber<?>>> entry : eventSubscribers.entrySet()) {
+            eventSubscriberArrays.put(entry.getKey(), entry.getValue().toArray(NO_SUBSCRIBERS));
+        }
+
+        this.allEventSubscribers = allEventSubscribers.toArray(NO_SUBSCRIBERS);
+        this.eventSubscribers = eventSubscriberArrays;
+    }
+
+	private List<DomainEventSubscriber<?>> subscribers() {
         return this.subscribers;
     }
 
-    @SuppressWarnings("rawtypes")
-    private void setSubscribers(List aSubscriberList) {
+    private void setSubscribers(List<DomainEventSubscriber<?>> aSubscriberList) {
         this.subscribers = aSubscriberList;
     }
 }
@@ -0,0 +1,54 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import co.vaughnvernon.tradercommon.serializer.AbstractSerializer;
+
+public class EventSerializer extends AbstractSerializer {
+
+    private static EventSerializer eventSerializer;
+
+    public static synchronized EventSerializer instance() {
+        if (EventSerializer.eventSerializer == null) {
+            EventSerializer.eventSerializer = new EventSerializer();
+        }
+
+        return EventSerializer.eventSerializer;
+    }
+
+    public EventSerializer(boolean isCompact) {
+        this(false, isCompact);
+    }
+
+    public EventSerializer(boolean isPretty, boolean isCompact) {
+        super(isPretty, isCompact);
+    }
+
+    public String serialize(DomainEvent aDomainEvent) {
+        String serialization = this.gson().toJson(aDomainEvent);
+
+        return serialization;
+    }
+
+    public <T extends DomainEvent> T deserialize(String aSerialization, final Class<T> aType) {
+        T domainEvent = this.gson().fromJson(aSerialization, aType);
+
+        return domainEvent;
+    }
+
+    private EventSerializer() {
+        this(false, true);
+    }
+}
@@ -24,5 +24,11 @@ public interface EventStore {
 
     public StoredEvent append(DomainEvent aDomainEvent);
 
+    public List<StoredEvent> append(List<? extends DomainEvent> aDomainEvents);
+
     public long countStoredEvents();
+
+    public StoredEventCursor storedEventCursorSince(long aStoredEventId, int aPageSize);
+
+    public List<StoredEvent> storedEventsSince(long aStoredEventId, int aPageSize);
 }
@@ -16,10 +16,15 @@ package co.vaughnvernon.tradercommon.event;
 
 import java.util.Date;
 
-public class StoredEvent {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public class StoredEvent implements PdxSerializable {
 
 	private DomainEvent event;
     private long eventId;
+    private String typeName;
 
     public StoredEvent(DomainEvent aDomainEvent) {
         super();
@@ -40,13 +45,28 @@ public class StoredEvent {
         return this.event().occurredOn();
     }
 
+    @Override
+    public void fromData(PdxReader aReader) {
+        this.setEvent((DomainEvent) aReader.readObject("event"));
+        this.setEventId(aReader.readLong("eventId"));
+    }
+
+    @Override
+    public void toData(PdxWriter aWriter) {
+        aWriter
+            .writeObject("event", this.event())
+            .writeLong("eventId", this.eventId())
+            .writeString("typeName", this.typeName())
+            .markIdentityField("eventId");
+    }
+
     @SuppressWarnings("unchecked")
     public <T extends DomainEvent> T toDomainEvent() {
         return (T) this.event();
     }
 
     public String typeName() {
-        return this.event().getClass().getName();
+        return this.typeName;
     }
 
     @Override
@@ -80,6 +100,7 @@ public class StoredEvent {
 
 	private void setEvent(DomainEvent anEvent) {
 		this.event = anEvent;
+		this.typeName = anEvent == null ? null : anEvent.getClass().getName();
 	}
 
 	// WRNING: FOR INTERNAL USE ONLY
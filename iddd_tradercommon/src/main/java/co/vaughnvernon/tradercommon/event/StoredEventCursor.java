@@ -0,0 +1,163 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * I iterate the events of an EventStore in id order, reading one page
+ * at a time, so replaying any length of history holds no more than a
+ * page of events. I start after a checkpointed event id; my
+ * checkpoint() is the id of the last event I answered, from which a
+ * later cursor may resume.
+ *
+ * When I answer false from hasNext() I have caught up with the store.
+ * Asking again later answers events appended since, provided the
+ * store assigns ids in append order, as InMemoryEventStore and
+ * MappedFileEventStore do.
+ *
+ * GemFireEventStore ids need not follow append order, but they are
+ * dense, so a missing id is usually an event still being written.
+ * Given a gap timeout I answer only events that follow my checkpoint
+ * without a gap, holding at the first missing id until it is stored
+ * or the gap has been open for the timeout, after which I give it up
+ * for good. An event stored later than that under a skipped id is
+ * not answered by me nor by a cursor resumed from my checkpoint.
+ */
+public class StoredEventCursor implements Iterator<StoredEvent> {
+
+	private long checkpoint;
+	private EventStore eventStore;
+	private long gapEventId;
+	private long gapOpenedAt;
+	private long gapTimeout;
+	private List<StoredEvent> page;
+	private int pageIndex;
+	private int pageSize;
+
+	public StoredEventCursor(
+			EventStore anEventStore,
+			long aCheckpoint,
+			int aPageSize) {
+
+		this(anEventStore, aCheckpoint, aPageSize, 0L);
+	}
+
+	public StoredEventCursor(
+			EventStore anEventStore,
+			long aCheckpoint,
+			int aPageSize,
+			long aGapTimeout) {
+
+		super();
+
+		if (anEventStore == null) {
+			throw new IllegalArgumentException("Event store must be provided.");
+		}
+
+		if (aPageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be greater than zero.");
+		}
+
+		if (aGapTimeout < 0L) {
+			throw new IllegalArgumentException("Gap timeout must not be negative.");
+		}
+
+		this.checkpoint = aCheckpoint;
+		this.eventStore = anEventStore;
+		this.gapEventId = aCheckpoint;
+		this.gapTimeout = aGapTimeout;
+		this.page = Collections.emptyList();
+		this.pageIndex = 0;
+		this.pageSize = aPageSize;
+	}
+
+	public long checkpoint() {
+		return this.checkpoint;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.pageIndex < this.page.size()) {
+			return true;
+		}
+
+		this.page = this.eventStore.storedEventsSince(this.checkpoint, this.pageSize);
+		this.pageIndex = 0;
+
+		if (this.gapTimeout > 0L) {
+			this.page = this.withoutGaps(this.page);
+		}
+
+		return !this.page.isEmpty();
+	}
+
+	@Override
+	public StoredEvent next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException("No stored events after: " + this.checkpoint);
+		}
+
+		StoredEvent storedEvent = this.page.get(this.pageIndex++);
+
+		this.checkpoint = storedEvent.eventId();
+
+		return storedEvent;
+	}
+
+	public long gapTimeout() {
+		return this.gapTimeout;
+	}
+
+	public int pageSize() {
+		return this.pageSize;
+	}
+
+	private List<StoredEvent> withoutGaps(List<StoredEvent> aPage) {
+		if (aPage.isEmpty()) {
+			return aPage;
+		}
+
+		long expectedEventId = this.checkpoint + 1;
+
+		if (aPage.get(0).eventId() != expectedEventId) {
+			long now = System.currentTimeMillis();
+
+			if (this.gapEventId != expectedEventId) {
+				this.gapEventId = expectedEventId;
+				this.gapOpenedAt = now;
+			}
+
+			if (now - this.gapOpenedAt < this.gapTimeout) {
+				return Collections.emptyList();
+			}
+
+			// given up; the missing ids are taken to be unused
+			expectedEventId = aPage.get(0).eventId();
+		}
+
+		int length = 0;
+
+		while (length < aPage.size() && aPage.get(length).eventId() == expectedEventId) {
+			++length;
+			++expectedEventId;
+		}
+
+		return aPage.subList(0, length);
+	}
+}
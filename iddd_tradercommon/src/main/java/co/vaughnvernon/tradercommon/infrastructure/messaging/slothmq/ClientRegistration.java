@@ -15,25 +15,47 @@
 package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class ClientRegistration {
 
+	private Set<Integer> exchangeIds;
 	private Set<String> exchanges;
 	private InetAddress ipAddress;
+	private ByteBuffer pendingFrames;
 	private int port;
+	private SocketAddress socketAddress;
+	private int sourceId;
+	private Map<Integer,Long> subscribedAfter;
 
 	ClientRegistration(InetAddress anIPAddress, int aPort) {
+		this(new InetSocketAddress(anIPAddress, aPort));
+	}
+
+	ClientRegistration(InetSocketAddress aSocketAddress) {
+		this(aSocketAddress, 0);
+	}
+
+	ClientRegistration(InetSocketAddress aSocketAddress, int aSourceId) {
 		super();
 
+		this.exchangeIds = new HashSet<Integer>();
 		this.exchanges = new HashSet<String>();
-		this.ipAddress = anIPAddress;
-		this.port = aPort;
+		this.ipAddress = aSocketAddress.getAddress();
+		this.port = aSocketAddress.getPort();
+		this.socketAddress = aSocketAddress;
+		this.sourceId = aSourceId;
+		this.subscribedAfter = new HashMap<Integer,Long>();
 	}
 
 	public void addSubscription(String anExchangeName) {
-		System.out.println("ADDING EXCHANGE: " + anExchangeName);
+		this.exchangeIds.add(SlothFrame.idOf(anExchangeName));
 		this.exchanges.add(anExchangeName);
 	}
 
@@ -41,6 +63,10 @@ public class ClientRegistration {
 		return this.ipAddress.toString().equals(anIPAddress.toString()) && this.port == aPort;
 	}
 
+	public boolean isSubscribedTo(int anExchangeId) {
+		return this.exchangeIds.contains(anExchangeId);
+	}
+
 	public boolean isSubscribedTo(String anExchangeName) {
 		return this.exchanges.contains(anExchangeName);
 	}
@@ -49,12 +75,51 @@ public class ClientRegistration {
 		return this.ipAddress;
 	}
 
+	ByteBuffer pendingFrames(int aCapacity) {
+		if (this.pendingFrames == null) {
+			this.pendingFrames = ByteBuffer.allocateDirect(aCapacity);
+		}
+
+		return this.pendingFrames;
+	}
+
 	public int port() {
 		return this.port;
 	}
 
 	public void removeSubscription(String anExchangeName) {
 		this.exchanges.remove(anExchangeName);
+
+		int exchangeId = SlothFrame.idOf(anExchangeName);
+
+		// another exchange may share the id
+		for (String exchange : this.exchanges) {
+			if (SlothFrame.idOf(exchange) == exchangeId) {
+				return;
+			}
+		}
+
+		this.exchangeIds.remove(exchangeId);
+		this.subscribedAfter.remove(exchangeId);
+	}
+
+	public SocketAddress socketAddress() {
+		return this.socketAddress;
+	}
+
+	public int sourceId() {
+		return this.sourceId;
+	}
+
+	long subscribedAfter(int anExchangeId, long aLastSequence) {
+		Long subscribedAfter = this.subscribedAfter.get(anExchangeId);
+
+		if (subscribedAfter == null) {
+			subscribedAfter = aLastSequence;
+			this.subscribedAfter.put(anExchangeId, subscribedAfter);
+		}
+
+		return subscribedAfter;
 	}
 
 	@Override
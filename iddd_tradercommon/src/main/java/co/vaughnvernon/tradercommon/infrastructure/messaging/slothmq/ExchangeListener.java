@@ -58,7 +58,7 @@ public abstract class ExchangeListener {
         this.setMessageTypes(new HashSet<String>(Arrays.asList(filterOutAllBut)));
     }
 
-    private Set<String> listensToMessageTypes() {
+    Set<String> listensToMessageTypes() {
     	return this.messageTypes;
     }
 
@@ -0,0 +1,92 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * I index the ClientRegistrations subscribed to each exchange by the
+ * exchange's SlothFrame id. I copy an exchange's subscriber array only
+ * on SUBSCRIBE and UNSUBSCRIBE, so a PUBLISH costs one map lookup and
+ * touches only that exchange's subscribers, however many clients are
+ * attached. I am confined to the SlothServer's thread.
+ */
+final class ExchangeSubscriptions {
+
+	private static final ClientRegistration[] NO_SUBSCRIBERS = new ClientRegistration[0];
+
+	private Map<Integer,ClientRegistration[]> subscribers;
+
+	ExchangeSubscriptions() {
+		super();
+
+		this.subscribers = new HashMap<Integer,ClientRegistration[]>();
+	}
+
+	int exchangeCount() {
+		return this.subscribers.size();
+	}
+
+	void subscribe(int anExchangeId, ClientRegistration aClientRegistration) {
+		ClientRegistration[] subscribers = this.subscribersOf(anExchangeId);
+
+		if (this.indexOf(subscribers, aClientRegistration) == -1) {
+			ClientRegistration[] grown = Arrays.copyOf(subscribers, subscribers.length + 1);
+
+			grown[subscribers.length] = aClientRegistration;
+
+			this.subscribers.put(anExchangeId, grown);
+		}
+	}
+
+	ClientRegistration[] subscribersOf(int anExchangeId) {
+		ClientRegistration[] subscribers = this.subscribers.get(anExchangeId);
+
+		return subscribers == null ? NO_SUBSCRIBERS : subscribers;
+	}
+
+	void unsubscribe(int anExchangeId, ClientRegistration aClientRegistration) {
+		ClientRegistration[] subscribers = this.subscribersOf(anExchangeId);
+
+		int index = this.indexOf(subscribers, aClientRegistration);
+
+		if (index == -1) {
+			return;
+		}
+
+		if (subscribers.length == 1) {
+			this.subscribers.remove(anExchangeId);
+		} else {
+			ClientRegistration[] shrunk = new ClientRegistration[subscribers.length - 1];
+
+			System.arraycopy(subscribers, 0, shrunk, 0, index);
+			System.arraycopy(subscribers, index + 1, shrunk, index, shrunk.length - index);
+
+			this.subscribers.put(anExchangeId, shrunk);
+		}
+	}
+
+	private int indexOf(ClientRegistration[] aSubscribers, ClientRegistration aClientRegistration) {
+		for (int idx = 0; idx < aSubscribers.length; ++idx) {
+			if (aSubscribers[idx] == aClientRegistration) {
+				return idx;
+			}
+		}
+
+		return -1;
+	}
+}
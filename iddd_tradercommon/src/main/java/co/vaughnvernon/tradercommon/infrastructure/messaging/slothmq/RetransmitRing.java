@@ -0,0 +1,83 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.nio.ByteBuffer;
+
+/**
+ * I assign one exchange's sequence numbers and retain copies of its
+ * most recently published frames so that a client reporting a gap can
+ * be sent them again. I hold at most my capacity of frames, reusing
+ * each slot's buffer when it is large enough, so retaining a frame
+ * allocates only while my slots grow to the exchange's frame sizes.
+ * I am confined to the SlothServer's thread.
+ */
+final class RetransmitRing {
+
+	private long nextSequence;
+	private ByteBuffer[] slots;
+
+	RetransmitRing(int aCapacity) {
+		super();
+
+		if (aCapacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+
+		this.nextSequence = 1L;
+		this.slots = new ByteBuffer[aCapacity];
+	}
+
+	long append(ByteBuffer aFrame, int aSourceId) {
+		long sequence = this.nextSequence++;
+
+		SlothFrame.stamp(aFrame, sequence, aSourceId);
+
+		int index = this.indexOf(sequence);
+
+		ByteBuffer slot = this.slots[index];
+
+		if (slot == null || slot.capacity() < aFrame.remaining()) {
+			slot = ByteBuffer.allocate(Math.max(aFrame.remaining(), 256));
+			this.slots[index] = slot;
+		}
+
+		slot.clear();
+		slot.put(aFrame.duplicate());
+		slot.flip();
+
+		return sequence;
+	}
+
+	ByteBuffer frameOf(long aSequence) {
+		if (aSequence < this.oldestSequence() || aSequence > this.lastSequence()) {
+			return null;
+		}
+
+		return this.slots[this.indexOf(aSequence)].duplicate();
+	}
+
+	long lastSequence() {
+		return this.nextSequence - 1;
+	}
+
+	long oldestSequence() {
+		return Math.max(1L, this.nextSequence - this.slots.length);
+	}
+
+	private int indexOf(long aSequence) {
+		return (int) (aSequence % this.slots.length);
+	}
+}
@@ -15,24 +15,88 @@
 package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * I am the client of a SlothServer. Sending and receiving share one
+ * DatagramChannel but never a lock: senders serialize only on my
+ * reused send buffer, while my Receiver blocks in the channel until a
+ * frame arrives, decoding it in a reused receive buffer. Listeners are
+ * indexed by exchange id and then type id, and the index is rebuilt
+ * only when a listener is registered or unregistered, so dispatch
+ * takes no registration lock and decodes only frames that some
+ * listener wants. As different names may share an id, a frame is
+ * dispatched only to the listeners of the exchange named in it, and
+ * of the type named in it.
+ *
+ * Messages too large for one datagram are published as fragments that
+ * my Receiver reassembles. The Receiver delivers each exchange's frames
+ * in the order of the sequence the server stamps on them, starting
+ * after the sequence named by the server's SUBSCRIBED answer. Until
+ * that answer arrives frames are only held, and the SUBSCRIBE is sent
+ * again every repair interval. After it, the Receiver holds any frames
+ * that arrive early and sends the server a NACK for the missing
+ * range, which the server answers with the frames or a LOST for those
+ * no longer retained. A HEARTBEAT naming a sequence not yet received
+ * also causes a NACK, so a dropped final frame is recovered. Because a
+ * NACK or its answer may be lost as well, my Repairer repeats the NACKs
+ * every repair interval until every sequence seen named has been
+ * received. The Repairer takes the same lock on the exchange streams
+ * that the Receiver holds while dispatching a datagram, so the
+ * Receiver never wakes just to repair.
+ *
+ * When coalescing, which is off unless requested or the slothmq.coalesce
+ * system property is set, a PUBLISH is appended to my pending datagram
+ * instead of being sent by itself. The datagram is sent when the next
+ * frame would not fit within the coalescing length, when my Flusher
+ * finds that its first frame has lingered for the linger interval, or
+ * before any other command is sent. My Receiver unpacks every datagram
+ * into its frames in order, whether or not the server coalesces.
+ */
 public class SlothClient extends SlothWorker {
 
+	private static final int MAXIMUM_HELD_FRAMES = 4096;
+	private static final int MAXIMUM_REASSEMBLIES = 256;
+	private static final long NACK_INTERVAL = 10000000L;
+	private static final long REPAIR_INTERVAL = 20L;
+	private static final ExchangeListener[] NO_LISTENERS = new ExchangeListener[0];
+
 	private static SlothClient instance;
 
-	private boolean closed;
-	private DatagramSocket clientSocket;
+	private DatagramChannel channel;
+	private volatile boolean closed;
+	private boolean coalescing;
+	private int coalescingLength;
+	private long coalescedSince;
+	private volatile Map<Integer,ExchangeRoute> exchangeRoutes;
 	private Map<String,ExchangeListener> exchangeListeners;
-	private InetAddress serverIPAddress;
-	private Object lock;
+	private Map<Integer,ExchangeStream> exchangeStreams;
+	private Flusher flusher;
+	private volatile double inboundLossRate;
+	private long lingerNanos;
+	private volatile long lostCount;
+	private volatile long nackCount;
+	private int nextMessageId;
+	private Receiver receiver;
+	private Repairer repairer;
+	private volatile long receivedDatagramCount;
+	private Object registrationLock;
+	private ByteBuffer sendBuffer;
+	private Object sendLock;
+	private volatile long sentDatagramCount;
+	private InetSocketAddress serverAddress;
 
 	public static synchronized SlothClient instance() {
 		if (instance == null) {
@@ -45,14 +109,9 @@ public class SlothClient extends SlothWorker {
 	public void close() {
 		System.out.println("SLOTH CLIENT: Closing...");
 
-		this.closed = true;
+		this.unregisterAll();
 
-		List<ExchangeListener> listeners =
-				new ArrayList<ExchangeListener>(this.exchangeListeners.values());
-
-		for (ExchangeListener listener : listeners) {
-			this.unregister(listener);
-		}
+		this.closeChannel();
 
 		System.out.println("SLOTH CLIENT: Closed.");
 	}
@@ -60,29 +119,123 @@ public class SlothClient extends SlothWorker {
 	public void closeAll() {
 		instance = null;
 
-		this.close();
+		System.out.println("SLOTH CLIENT: Closing...");
+
+		this.unregisterAll();
+
+		this.send(SlothFrame.CLOSE, null);
+
+		this.closeChannel();
 
-		this.send("CLOSE:");
+		System.out.println("SLOTH CLIENT: Closed.");
+	}
+
+	public void disableCoalescing() {
+		synchronized (this.sendLock) {
+			this.flush();
+
+			this.coalescing = false;
+		}
+	}
 
-		this.clientSocket.close();
+	public void enableCoalescing() {
+		this.enableCoalescing(DEFAULT_COALESCING_LENGTH, DEFAULT_LINGER_MICROS);
+	}
+
+	public void enableCoalescing(int aCoalescingLength, long aLingerMicros) {
+		if (aCoalescingLength < SlothFrame.HEADER_LENGTH || aCoalescingLength > BUFFER_LENGTH) {
+			throw new IllegalArgumentException(
+					"Coalescing length must be between " + SlothFrame.HEADER_LENGTH + " and " + BUFFER_LENGTH + ".");
+		}
+
+		if (aLingerMicros < 0) {
+			throw new IllegalArgumentException("Linger must not be negative.");
+		}
+
+		synchronized (this.sendLock) {
+			this.flush();
+
+			this.coalescing = true;
+			this.coalescingLength = aCoalescingLength;
+			this.lingerNanos = aLingerMicros * 1000L;
+
+			if (this.flusher == null) {
+				this.flusher = new Flusher();
+				this.flusher.start();
+			}
+		}
+	}
+
+	public void flush() {
+		try {
+			synchronized (this.sendLock) {
+				this.sendPending();
+			}
+		} catch (IOException e) {
+			System.out.println("SLOTH CLIENT: Cannot flush because: " + e.getMessage());
+			e.printStackTrace();
+		}
 	}
 
 	public void publish(String anExchangeName, String aType, String aMessage) {
+		byte[] exchangeName = SlothFrame.utf8(anExchangeName);
+		byte[] typeName = SlothFrame.utf8(aType);
+		byte[] message = SlothFrame.utf8(aMessage);
+
+		int fragmentLength = SlothFrame.fragmentLength(BUFFER_LENGTH, exchangeName, typeName);
 
-		String encodedMessage = "PUBLISH:" + anExchangeName + "TYPE:" + aType + "MSG:" + aMessage;
+		if (fragmentLength <= 0) {
+			throw new IllegalArgumentException(
+					"Exchange name and type must not exceed "
+					+ (BUFFER_LENGTH - SlothFrame.HEADER_LENGTH - 1)
+					+ " bytes.");
+		}
 
-		byte[] publishMessage = encodedMessage.getBytes();
+		int fragmentCount = Math.max(1, (message.length + fragmentLength - 1) / fragmentLength);
+
+		if (fragmentCount > SlothFrame.MAXIMUM_FRAGMENTS) {
+			throw new IllegalArgumentException(
+					"Message must not exceed " + ((long) fragmentLength * SlothFrame.MAXIMUM_FRAGMENTS) + " bytes.");
+		}
 
-		DatagramPacket sendPacket =
-				new DatagramPacket(
-						publishMessage,
-						publishMessage.length,
-						this.serverIPAddress,
-						PORT);
+		int exchangeId = SlothFrame.idOf(anExchangeName);
+		int typeId = SlothFrame.idOf(aType);
 
 		try {
-			synchronized (lock) {
-				this.clientSocket.send(sendPacket);
+			synchronized (this.sendLock) {
+				int messageId = ++this.nextMessageId;
+
+				for (int fragmentIndex = 0; fragmentIndex < fragmentCount; ++fragmentIndex) {
+					int frameLength =
+							SlothFrame.HEADER_LENGTH
+							+ exchangeName.length
+							+ typeName.length
+							+ Math.min(fragmentLength, message.length - fragmentIndex * fragmentLength);
+
+					if (!this.coalescing || this.sendBuffer.position() + frameLength > this.coalescingLength) {
+						this.sendPending();
+					}
+
+					SlothFrame.encodeFragment(
+							this.sendBuffer,
+							exchangeId,
+							typeId,
+							exchangeName,
+							typeName,
+							message,
+							messageId,
+							fragmentIndex,
+							fragmentCount,
+							fragmentLength);
+
+					if (!this.coalescing || this.sendBuffer.position() >= this.coalescingLength) {
+						this.sendPending();
+					} else if (this.coalescedSince == 0) {
+						this.coalescedSince = System.nanoTime();
+
+						this.sendLock.notifyAll();
+					}
+				}
 			}
 		} catch (IOException e) {
 			System.out.println("SLOTH CLIENT: Cannot publish because: " + e.getMessage());
@@ -91,26 +244,54 @@ public class SlothClient extends SlothWorker {
 	}
 
 	public void register(ExchangeListener anExchangeListener) {
-		synchronized (lock) {
+		synchronized (this.registrationLock) {
 			this.exchangeListeners.put(anExchangeListener.name(), anExchangeListener);
+
+			this.rebuildExchangeRoutes();
 		}
 
-		this.send("SUBSCRIBE:" + anExchangeListener.exchangeName());
+		this.send(SlothFrame.SUBSCRIBE, anExchangeListener.exchangeName());
 	}
 
 	public void unregister(ExchangeListener anExchangeListener) {
-		synchronized (lock) {
+		synchronized (this.registrationLock) {
 			this.exchangeListeners.remove(anExchangeListener.name());
+
+			this.rebuildExchangeRoutes();
 		}
 
-		this.send("UNSUBSCRIBE:" + anExchangeListener.exchangeName());
+		this.send(SlothFrame.UNSUBSCRIBE, anExchangeListener.exchangeName());
+	}
+
+	long lostCount() {
+		return this.lostCount;
+	}
+
+	long nackCount() {
+		return this.nackCount;
+	}
+
+	long receivedDatagramCount() {
+		return this.receivedDatagramCount;
+	}
+
+	long sentDatagramCount() {
+		return this.sentDatagramCount;
+	}
+
+	void simulateInboundLoss(double aLossRate) {
+		this.inboundLossRate = aLossRate;
 	}
 
 	private SlothClient() {
 		super();
 
 		this.exchangeListeners = new HashMap<String,ExchangeListener>();
-		this.lock = new Object();
+		this.exchangeRoutes = new HashMap<Integer,ExchangeRoute>();
+		this.exchangeStreams = new HashMap<Integer,ExchangeStream>();
+		this.registrationLock = new Object();
+		this.sendBuffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+		this.sendLock = new Object();
 
 		this.attach();
 		this.receiveAll();
@@ -118,11 +299,16 @@ public class SlothClient extends SlothWorker {
 
 	private void attach() {
 		try {
-			this.clientSocket = new DatagramSocket();
-			this.clientSocket.setSoTimeout(100);
-			this.serverIPAddress = InetAddress.getByName("localhost");
+			this.channel = DatagramChannel.open();
+			this.channel.socket().setReceiveBufferSize(SOCKET_BUFFER_LENGTH);
+			this.channel.socket().bind(null);
+			this.serverAddress = new InetSocketAddress("localhost", PORT);
 
-			this.send("ATTACH:");
+			this.send(SlothFrame.ATTACH, null);
+
+			if (COALESCE) {
+				this.enableCoalescing();
+			}
 
 		} catch (Exception e) {
 			System.out.println("SLOTH CLIENT: Cannot attach because: " + e.getMessage());
@@ -130,109 +316,681 @@ public class SlothClient extends SlothWorker {
 		}
 	}
 
-	private void send(String anEncodedMessage) {
-		byte[] message = anEncodedMessage.getBytes();
+	private void closeChannel() {
+		this.closed = true;
+
+		synchronized (this.sendLock) {
+			this.sendLock.notifyAll();
+		}
+
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			System.out.println("SLOTH CLIENT: Cannot close because: " + e.getMessage());
+		}
+	}
+
+	private void deliver(int anExchangeId, ExchangeStream anExchangeStream, ByteBuffer aFrame) {
+		anExchangeStream.advance();
+
+		ExchangeRoute exchangeRoute = this.exchangeRoutes.get(anExchangeId);
+
+		while (exchangeRoute != null && !exchangeRoute.isRouteOf(aFrame)) {
+			exchangeRoute = exchangeRoute.sharingId();
+		}
+
+		if (exchangeRoute == null) {
+			return;
+		}
+
+		ExchangeListener[] typeListeners = exchangeRoute.listenersOf(SlothFrame.typeId(aFrame));
+		ExchangeListener[] allTypesListeners = exchangeRoute.allTypesListeners();
+
+		if (typeListeners.length == 0 && allTypesListeners.length == 0) {
+			return;
+		}
+
+		String message = null;
+
+		if (SlothFrame.fragmentCount(aFrame) == 1) {
+			message = SlothFrame.message(aFrame);
+		} else {
+			byte[] reassembled = anExchangeStream.reassemble(aFrame);
+
+			if (reassembled == null) {
+				return;
+			}
+
+			message = SlothFrame.string(reassembled);
+		}
+
+		String type = SlothFrame.type(aFrame);
+
+		this.dispatchTo(typeListeners, type, message);
+		this.dispatchTo(allTypesListeners, type, message);
+	}
+
+	private void deliverHeld(int anExchangeId, ExchangeStream anExchangeStream) {
+		ByteBuffer frame = anExchangeStream.releaseExpected();
+
+		while (frame != null) {
+			this.deliver(anExchangeId, anExchangeStream, frame);
+
+			frame = anExchangeStream.releaseExpected();
+		}
+
+		if (anExchangeStream.hasHeld()) {
+			this.requestMissing(anExchangeId, anExchangeStream, anExchangeStream.firstHeldSequence() - 1);
+		}
+	}
+
+	private void dispatchMessage(ByteBuffer aFrame) {
+		if (!SlothFrame.isComplete(aFrame)) {
+			System.out.println("SLOTH CLIENT: Ignoring malformed frame of " + aFrame.remaining() + " bytes.");
+			return;
+		}
+
+		switch (SlothFrame.command(aFrame)) {
+		case SlothFrame.PUBLISH:
+			this.receiveSequenced(aFrame);
+			break;
+		case SlothFrame.HEARTBEAT:
+			this.receiveHeartbeat(aFrame);
+			break;
+		case SlothFrame.LOST:
+			this.receiveLost(aFrame);
+			break;
+		case SlothFrame.SUBSCRIBED:
+			this.receiveSubscribed(aFrame);
+			break;
+		default:
+			System.out.println("SLOTH CLIENT: Ignoring command: " + SlothFrame.command(aFrame));
+			break;
+		}
+	}
+
+	private void dispatchTo(ExchangeListener[] aListeners, String aType, String aMessage) {
+		for (ExchangeListener listener : aListeners) {
+			try {
+				if (TRACE) {
+					System.out.println("SLOTH CLIENT: Dispatching: Exchange: " + listener.exchangeName() + " Type: " + aType + " Msg: " + aMessage);
+				}
+
+				// a type sharing the id of a listened to type is not dispatched
+				if (listener.listensTo(aType)) {
+					listener.filteredDispatch(aType, aMessage);
+				}
+			} catch (Exception e) {
+				System.out.println("SLOTH CLIENT: Exception while dispatching message: "
+						+ e.getMessage() + ": " + aType + ": " + aMessage);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void rebuildExchangeRoutes() {
+		Map<Integer,ExchangeRoute> exchangeRoutes = new HashMap<Integer,ExchangeRoute>();
+
+		for (ExchangeListener listener : this.exchangeListeners.values()) {
+			Integer exchangeId = SlothFrame.idOf(listener.exchangeName());
+
+			ExchangeRoute exchangeRoute = exchangeRoutes.get(exchangeId);
+
+			while (exchangeRoute != null && !exchangeRoute.exchangeName().equals(listener.exchangeName())) {
+				exchangeRoute = exchangeRoute.sharingId();
+			}
+
+			if (exchangeRoute == null) {
+				exchangeRoute = new ExchangeRoute(listener.exchangeName(), exchangeRoutes.get(exchangeId));
+				exchangeRoutes.put(exchangeId, exchangeRoute);
+			}
+
+			exchangeRoute.add(listener);
+		}
+
+		this.exchangeRoutes = exchangeRoutes;
+	}
+
+	private void receiveAll() {
+		this.receiver = new Receiver();
+		this.repairer = new Repairer();
+
+		this.receiver.start();
+		this.repairer.start();
+	}
+
+	private void receiveHeartbeat(ByteBuffer aFrame) {
+		int exchangeId = SlothFrame.exchangeId(aFrame);
+
+		ExchangeStream exchangeStream = this.exchangeStreams.get(exchangeId);
+
+		if (exchangeStream != null) {
+			exchangeStream.observe(SlothFrame.toSequence(aFrame));
+
+			if (exchangeStream.isStarted() && exchangeStream.isBehind()) {
+				this.requestMissing(exchangeId, exchangeStream, exchangeStream.lastMissingSequence());
+			}
+		}
+	}
+
+	private void receiveLost(ByteBuffer aFrame) {
+		int exchangeId = SlothFrame.exchangeId(aFrame);
+
+		ExchangeStream exchangeStream = this.exchangeStreams.get(exchangeId);
+
+		long toSequence = SlothFrame.toSequence(aFrame);
+
+		if (exchangeStream != null
+				&& exchangeStream.isStarted()
+				&& toSequence >= exchangeStream.expectedSequence()) {
+			long lost = toSequence - exchangeStream.expectedSequence() + 1;
+
+			this.lostCount += lost;
+
+			System.out.println("SLOTH CLIENT: Lost: " + lost + " messages no longer retained by the server.");
+
+			exchangeStream.skipTo(toSequence + 1);
+
+			this.deliverHeld(exchangeId, exchangeStream);
+		}
+	}
+
+	private void receiveSequenced(ByteBuffer aFrame) {
+		int exchangeId = SlothFrame.exchangeId(aFrame);
+
+		if (this.exchangeRoutes.get(exchangeId) == null) {
+			return;
+		}
+
+		ExchangeStream exchangeStream = this.exchangeStreamOf(exchangeId);
+
+		long sequence = SlothFrame.sequence(aFrame);
+
+		exchangeStream.observe(sequence);
+
+		if (!exchangeStream.isStarted()) {
+			// where the stream starts is known only from the SUBSCRIBED answer
+			exchangeStream.hold(sequence, aFrame);
+
+		} else if (sequence == exchangeStream.expectedSequence()) {
+			this.deliver(exchangeId, exchangeStream, aFrame);
+
+			this.deliverHeld(exchangeId, exchangeStream);
+
+		} else if (sequence > exchangeStream.expectedSequence()) {
+			exchangeStream.hold(sequence, aFrame);
+
+			this.requestMissing(exchangeId, exchangeStream, sequence - 1);
+		}
+	}
+
+	private void receiveSubscribed(ByteBuffer aFrame) {
+		int exchangeId = SlothFrame.exchangeId(aFrame);
+
+		if (this.exchangeRoutes.get(exchangeId) == null) {
+			return;
+		}
+
+		ExchangeStream exchangeStream = this.exchangeStreamOf(exchangeId);
+
+		long firstSequence = SlothFrame.toSequence(aFrame) + 1;
+
+		// a repeated answer names a sequence already passed
+		if (firstSequence > exchangeStream.expectedSequence()) {
+			exchangeStream.skipTo(firstSequence);
+
+			this.deliverHeld(exchangeId, exchangeStream);
+
+			if (exchangeStream.isBehind()) {
+				this.requestMissing(exchangeId, exchangeStream, exchangeStream.lastMissingSequence());
+			}
+		}
+	}
+
+	private ExchangeStream exchangeStreamOf(int anExchangeId) {
+		ExchangeStream exchangeStream = this.exchangeStreams.get(anExchangeId);
+
+		if (exchangeStream == null) {
+			exchangeStream = new ExchangeStream();
+			this.exchangeStreams.put(anExchangeId, exchangeStream);
+		}
+
+		return exchangeStream;
+	}
+
+	private void repairGaps() {
+		Map<Integer,ExchangeRoute> exchangeRoutes = this.exchangeRoutes;
+
+		Iterator<Map.Entry<Integer,ExchangeStream>> iterator = this.exchangeStreams.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<Integer,ExchangeStream> entry = iterator.next();
+
+			ExchangeStream exchangeStream = entry.getValue();
+
+			if (!exchangeRoutes.containsKey(entry.getKey())) {
+				// unsubscribed; a new subscription starts a new stream
+				iterator.remove();
+
+			} else if (exchangeStream.isStarted() && exchangeStream.isBehind()) {
+				this.requestMissing(entry.getKey(), exchangeStream, exchangeStream.lastMissingSequence());
+			}
+		}
+
+		for (Map.Entry<Integer,ExchangeRoute> entry : exchangeRoutes.entrySet()) {
+			ExchangeStream exchangeStream = this.exchangeStreams.get(entry.getKey());
+
+			if (exchangeStream == null || !exchangeStream.isStarted()) {
+				for (ExchangeRoute route = entry.getValue(); route != null; route = route.sharingId()) {
+					this.send(SlothFrame.SUBSCRIBE, route.exchangeName());
+				}
+			}
+		}
+	}
+
+	private void requestMissing(int anExchangeId, ExchangeStream anExchangeStream, long aToSequence) {
+		long fromSequence = anExchangeStream.expectedSequence();
+
+		long now = System.nanoTime();
+
+		if (!anExchangeStream.shouldRequest(fromSequence, now)) {
+			return;
+		}
+
+		anExchangeStream.requested(fromSequence, now);
 
-		DatagramPacket sendPacket =
-				new DatagramPacket(
-						message,
-						message.length,
-						this.serverIPAddress,
-						PORT);
+		++this.nackCount;
+
+		if (TRACE) {
+			System.out.println("SLOTH CLIENT: NACK: " + fromSequence + ".." + aToSequence);
+		}
 
 		try {
-			this.clientSocket.send(sendPacket);
+			synchronized (this.sendLock) {
+				this.sendPending();
+
+				SlothFrame.encode(this.sendBuffer, SlothFrame.NACK, anExchangeId, fromSequence, aToSequence);
+
+				this.sendPending();
+			}
+		} catch (IOException e) {
+			System.out.println("SLOTH CLIENT: Cannot request missing messages because: " + e.getMessage());
+		}
+	}
+
+	private void send(byte aCommand, String anExchangeName) {
+		try {
+			synchronized (this.sendLock) {
+				this.sendPending();
+
+				SlothFrame.encode(this.sendBuffer, aCommand, anExchangeName);
+
+				this.sendPending();
+			}
 		} catch (Exception e) {
 			System.out.println("SLOTH CLIENT: Exception while sending to server: "
-					+ e.getMessage() + ": " + anEncodedMessage);
+					+ e.getMessage() + ": command " + aCommand + " " + anExchangeName);
 		}
 	}
 
-	private void dispatchMessage(String anEncodedMessage) {
-		int exchangeDivider = anEncodedMessage.indexOf("PUBLISH:");
-		int typeDivider = anEncodedMessage.indexOf("TYPE:", exchangeDivider + 8);
-		int msgDivider = anEncodedMessage.indexOf("MSG:", typeDivider + 5);
+	private void sendPending() throws IOException {
+		if (this.sendBuffer.position() == 0) {
+			return;
+		}
+
+		this.sendBuffer.flip();
+
+		try {
+			this.channel.send(this.sendBuffer, this.serverAddress);
 
-		String exchangeName = anEncodedMessage.substring(exchangeDivider + 8, typeDivider);
-		String type = anEncodedMessage.substring(typeDivider + 5, msgDivider);
-		String message = anEncodedMessage.substring(msgDivider + 4);
+			++this.sentDatagramCount;
 
+		} finally {
+			this.sendBuffer.clear();
+
+			this.coalescedSince = 0;
+		}
+	}
+
+	private void unregisterAll() {
 		List<ExchangeListener> listeners = null;
 
-		synchronized (lock) {
+		synchronized (this.registrationLock) {
 			listeners = new ArrayList<ExchangeListener>(this.exchangeListeners.values());
 		}
 
 		for (ExchangeListener listener : listeners) {
-			if (listener.exchangeName().equals(exchangeName) && listener.listensTo(type)) {
-				try {
-					System.out.println("SLOTH CLIENT: Dispatching: Exchange: " + exchangeName + " Type: " + type + " Msg: " + message);
+			this.unregister(listener);
+		}
+	}
 
-					listener.filteredDispatch(type, message);
-				} catch (Exception e) {
-					System.out.println("SLOTH CLIENT: Exception while dispatching message: "
-							+ e.getMessage() + ": " + anEncodedMessage);
-					e.printStackTrace();
+	private static class ExchangeStream {
+
+		private long expectedSequence;
+		private TreeMap<Long,ByteBuffer> heldFrames;
+		private long knownSequence;
+		private long lastRequestedSequence;
+		private long lastRequestTime;
+		private Map<Long,Reassembly> reassemblies;
+
+		ExchangeStream() {
+			super();
+
+			this.heldFrames = new TreeMap<Long,ByteBuffer>();
+			this.reassemblies = new HashMap<Long,Reassembly>();
+		}
+
+		void advance() {
+			++this.expectedSequence;
+		}
+
+		long expectedSequence() {
+			return this.expectedSequence;
+		}
+
+		long firstHeldSequence() {
+			return this.heldFrames.firstKey();
+		}
+
+		boolean hasHeld() {
+			return !this.heldFrames.isEmpty();
+		}
+
+		void hold(long aSequence, ByteBuffer aFrame) {
+			if (this.heldFrames.size() < MAXIMUM_HELD_FRAMES) {
+				this.heldFrames.put(aSequence, SlothFrame.copyOf(aFrame));
+			}
+		}
+
+		boolean isBehind() {
+			return this.knownSequence >= this.expectedSequence;
+		}
+
+		boolean isStarted() {
+			return this.expectedSequence > 0;
+		}
+
+		long lastMissingSequence() {
+			return this.hasHeld() ? this.firstHeldSequence() - 1 : this.knownSequence;
+		}
+
+		void observe(long aSequence) {
+			this.knownSequence = Math.max(this.knownSequence, aSequence);
+		}
+
+		byte[] reassemble(ByteBuffer aFrame) {
+			Long key = ((long) SlothFrame.sourceId(aFrame) << 32) | (SlothFrame.messageId(aFrame) & 0xFFFFFFFFL);
+
+			Reassembly reassembly = this.reassemblies.get(key);
+
+			if (reassembly == null) {
+				if (this.reassemblies.size() >= MAXIMUM_REASSEMBLIES) {
+					System.out.println("SLOTH CLIENT: Discarding " + this.reassemblies.size() + " incomplete messages.");
+
+					this.reassemblies.clear();
 				}
+
+				reassembly = new Reassembly(SlothFrame.fragmentCount(aFrame));
+				this.reassemblies.put(key, reassembly);
+			}
+
+			byte[] message = reassembly.add(SlothFrame.fragmentIndex(aFrame), SlothFrame.messageBytes(aFrame));
+
+			if (message != null) {
+				this.reassemblies.remove(key);
 			}
+
+			return message;
+		}
+
+		ByteBuffer releaseExpected() {
+			while (this.hasHeld() && this.firstHeldSequence() < this.expectedSequence) {
+				this.heldFrames.pollFirstEntry();
+			}
+
+			return this.heldFrames.remove(this.expectedSequence);
+		}
+
+		void requested(long aSequence, long aTime) {
+			this.lastRequestedSequence = aSequence;
+			this.lastRequestTime = aTime;
+		}
+
+		boolean shouldRequest(long aSequence, long aTime) {
+			return aSequence != this.lastRequestedSequence || aTime - this.lastRequestTime >= NACK_INTERVAL;
+		}
+
+		void skipTo(long aSequence) {
+			this.expectedSequence = aSequence;
 		}
 	}
 
-	private void receiveAll() {
-		Thread receiverThread = new Thread() {
-			@Override
-			public void run() {
-				byte[] receiveBuffer = new byte[BUFFER_LENGTH];
+	private static class Reassembly {
 
-				DatagramPacket receivePacket =
-						new DatagramPacket(receiveBuffer, BUFFER_LENGTH);
+		private byte[][] fragments;
+		private int length;
+		private int received;
 
-				while (!closed) {
+		Reassembly(int aFragmentCount) {
+			super();
 
-					boolean reallocate = false;
-					boolean received = false;
+			this.fragments = new byte[aFragmentCount][];
+		}
 
-					try {
-						synchronized (lock) {
-							clientSocket.receive(receivePacket);
-						}
+		byte[] add(int aFragmentIndex, byte[] aFragment) {
+			if (aFragmentIndex >= this.fragments.length || this.fragments[aFragmentIndex] != null) {
+				return null;
+			}
 
-						received = true;
+			this.fragments[aFragmentIndex] = aFragment;
+			this.length += aFragment.length;
 
-					} catch (SocketTimeoutException e) {
-						// ignore
-					} catch (IOException e) {
-						reallocate = true;
+			if (++this.received < this.fragments.length) {
+				return null;
+			}
 
-						System.out.println("SLOTH CLIENT: problem receiving because: " + e.getMessage() + ": continuing...");
-						e.printStackTrace();
-					}
+			byte[] message = new byte[this.length];
 
-					if (received) {
-						dispatchMessage(new String(receivePacket.getData()).trim());
+			int offset = 0;
 
-						reallocate = true;
-					}
+			for (byte[] fragment : this.fragments) {
+				System.arraycopy(fragment, 0, message, offset, fragment.length);
+
+				offset += fragment.length;
+			}
+
+			return message;
+		}
+	}
+
+	private static class ExchangeRoute {
+
+		private ExchangeListener[] allTypesListeners;
+		private String exchangeName;
+		private byte[] exchangeNameBytes;
+		private ExchangeRoute sharingId;
+		private Map<Integer,ExchangeListener[]> typeListeners;
+
+		ExchangeRoute(String anExchangeName, ExchangeRoute aSharingId) {
+			super();
+
+			this.allTypesListeners = NO_LISTENERS;
+			this.exchangeName = anExchangeName;
+			this.exchangeNameBytes = SlothFrame.utf8(anExchangeName);
+			this.sharingId = aSharingId;
+			this.typeListeners = new HashMap<Integer,ExchangeListener[]>();
+		}
+
+		void add(ExchangeListener aListener) {
+			Set<String> types = aListener.listensToMessageTypes();
+
+			if (types.isEmpty()) {
+				this.allTypesListeners = this.append(this.allTypesListeners, aListener);
+			} else {
+				for (String type : types) {
+					Integer typeId = SlothFrame.idOf(type);
+
+					this.typeListeners.put(typeId, this.append(this.listenersOf(typeId), aListener));
+				}
+			}
+		}
+
+		ExchangeListener[] allTypesListeners() {
+			return this.allTypesListeners;
+		}
+
+		String exchangeName() {
+			return this.exchangeName;
+		}
+
+		boolean isRouteOf(ByteBuffer aFrame) {
+			return SlothFrame.hasExchangeName(aFrame, this.exchangeNameBytes);
+		}
+
+		ExchangeListener[] listenersOf(int aTypeId) {
+			ExchangeListener[] listeners = this.typeListeners.get(aTypeId);
+
+			return listeners == null ? NO_LISTENERS : listeners;
+		}
+
+		ExchangeRoute sharingId() {
+			return this.sharingId;
+		}
+
+		private ExchangeListener[] append(ExchangeListener[] aListeners, ExchangeListener aListener) {
+			ExchangeListener[] listeners = Arrays.copyOf(aListeners, aListeners.length + 1);
+
+			listeners[aListeners.length] = aListener;
+
+			return listeners;
+		}
+	}
+
+	private class Receiver extends Thread {
+
+		private Random random;
+		private ByteBuffer receiveBuffer;
+
+		Receiver() {
+			super("SlothClientReceiver");
+
+			this.random = new Random();
+			this.receiveBuffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!closed) {
+				try {
+					this.receiveBuffer.clear();
+
+					channel.receive(this.receiveBuffer);
+
+					++receivedDatagramCount;
 
-					if (reallocate) {
-						receiveBuffer = new byte[BUFFER_LENGTH];
+					if (inboundLossRate == 0.0 || this.random.nextDouble() >= inboundLossRate) {
+						this.receiveBuffer.flip();
 
-						receivePacket = new DatagramPacket(receiveBuffer, BUFFER_LENGTH);
-					} else {
-						sleepFor(10L);
+						synchronized (exchangeStreams) {
+							this.dispatchFrames(this.receiveBuffer);
+						}
+					}
+
+				} catch (IOException e) {
+					if (closed) {
+						break;
 					}
+
+					System.out.println("SLOTH CLIENT: problem receiving because: " + e.getMessage() + ": continuing...");
+					e.printStackTrace();
 				}
 			}
-		};
+		}
+
+		private void dispatchFrames(ByteBuffer aDatagram) {
+			int datagramLimit = aDatagram.limit();
+
+			while (aDatagram.hasRemaining()) {
+				int frameLength = SlothFrame.frameLength(aDatagram);
+
+				if (frameLength < 0 || frameLength > aDatagram.remaining()) {
+					System.out.println("SLOTH CLIENT: Ignoring malformed frame of " + aDatagram.remaining() + " bytes.");
+					return;
+				}
+
+				int frameEnd = aDatagram.position() + frameLength;
 
-		receiverThread.start();
+				aDatagram.limit(frameEnd);
+
+				dispatchMessage(aDatagram);
+
+				aDatagram.limit(datagramLimit);
+				aDatagram.position(frameEnd);
+			}
+		}
 	}
 
-	private void sleepFor(long aMillis) {
-		try {
-			Thread.sleep(aMillis);
-		} catch (InterruptedException e) {
-			// ignore
+	private class Repairer extends Thread {
+
+		Repairer() {
+			super("SlothClientRepairer");
+
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!closed) {
+				try {
+					Thread.sleep(REPAIR_INTERVAL);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				synchronized (exchangeStreams) {
+					if (!closed) {
+						repairGaps();
+					}
+				}
+			}
+		}
+	}
+
+	private class Flusher extends Thread {
+
+		Flusher() {
+			super("SlothClientFlusher");
+
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!closed) {
+				long linger = 0;
+
+				synchronized (sendLock) {
+					while (!closed && coalescedSince == 0) {
+						try {
+							sendLock.wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+
+					linger = lingerNanos - (System.nanoTime() - coalescedSince);
+
+					if (linger <= 0) {
+						flush();
+					}
+				}
+
+				if (linger > 0) {
+					LockSupport.parkNanos(linger);
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,343 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * I encode and decode the SlothMQ datagram frame. Every frame begins
+ * with a fixed header of the command, a flags byte, the length of the
+ * type name, the exchange id, the type id, the payload length, the
+ * sequence, the source id, the message id, the fragment index and
+ * count, and the length of the exchange name, all big-endian. A PUBLISH
+ * payload is the exchange name and the type name followed by one
+ * fragment of the message text; a SUBSCRIBE or UNSUBSCRIBE payload is
+ * the exchange name; a NACK, LOST, HEARTBEAT or SUBSCRIBED payload is
+ * the last sequence of the range that begins at the header's sequence.
+ * The server answers each SUBSCRIBE with a SUBSCRIBED naming the last
+ * sequence published before the subscription began. Exchange
+ * and type ids are the hash codes of their names, so every client and
+ * the server agree on them without a handshake, and a server can route
+ * a PUBLISH by its header alone. Since different names may share a
+ * hash code, a receiver compares the names a PUBLISH carries before
+ * taking it as meant for an exchange or type.
+ *
+ * The publishing client sets the message id and fragments; the server
+ * stamps the per-exchange sequence and the publisher's source id in
+ * place before fanning the frame out. When coalescing, a datagram holds
+ * several frames back to back, each found by its header's length.
+ */
+final class SlothFrame {
+
+	static final byte ATTACH = 1;
+	static final byte CLOSE = 2;
+	static final byte PUBLISH = 3;
+	static final byte SUBSCRIBE = 4;
+	static final byte UNSUBSCRIBE = 5;
+	static final byte NACK = 6;
+	static final byte LOST = 7;
+	static final byte HEARTBEAT = 8;
+	static final byte SUBSCRIBED = 9;
+
+	static final int HEADER_LENGTH = 38;
+	static final int TO_SEQUENCE_LENGTH = 8;
+	static final int MAXIMUM_FRAGMENTS = 0xFFFF;
+
+	private static final int COMMAND_OFFSET = 0;
+	private static final int FLAGS_OFFSET = 1;
+	private static final int TYPE_NAME_LENGTH_OFFSET = 2;
+	private static final int EXCHANGE_ID_OFFSET = 4;
+	private static final int TYPE_ID_OFFSET = 8;
+	private static final int LENGTH_OFFSET = 12;
+	private static final int SEQUENCE_OFFSET = 16;
+	private static final int SOURCE_ID_OFFSET = 24;
+	private static final int MESSAGE_ID_OFFSET = 28;
+	private static final int FRAGMENT_INDEX_OFFSET = 32;
+	private static final int FRAGMENT_COUNT_OFFSET = 34;
+	private static final int EXCHANGE_NAME_LENGTH_OFFSET = 36;
+
+	private static final byte[] NO_BYTES = new byte[0];
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static byte command(ByteBuffer aFrame) {
+		return aFrame.get(aFrame.position() + COMMAND_OFFSET);
+	}
+
+	static ByteBuffer copyOf(ByteBuffer aFrame) {
+		ByteBuffer copy = ByteBuffer.allocate(aFrame.remaining());
+
+		copy.put(aFrame.duplicate());
+		copy.flip();
+
+		return copy;
+	}
+
+	static void encode(ByteBuffer aBuffer, byte aCommand, String anExchangeName) {
+		byte[] exchangeName = anExchangeName == null ? NO_BYTES : anExchangeName.getBytes(UTF_8);
+
+		encode(aBuffer, aCommand, idOf(anExchangeName), 0, exchangeName, NO_BYTES, NO_BYTES, 0, 0, 0, 0, 1);
+	}
+
+	static void encode(ByteBuffer aBuffer, byte aCommand, int anExchangeId, long aSequence, long aToSequence) {
+		int start = aBuffer.position();
+
+		encode(aBuffer, aCommand, anExchangeId, 0, NO_BYTES, NO_BYTES, new byte[TO_SEQUENCE_LENGTH], 0, TO_SEQUENCE_LENGTH, 0, 0, 1);
+
+		aBuffer.putLong(start + SEQUENCE_OFFSET, aSequence);
+		aBuffer.putLong(start + HEADER_LENGTH, aToSequence);
+	}
+
+	static void encode(ByteBuffer aBuffer, String anExchangeName, String aType, String aMessage) {
+		byte[] message = aMessage.getBytes(UTF_8);
+
+		encode(
+				aBuffer,
+				PUBLISH,
+				idOf(anExchangeName),
+				idOf(aType),
+				anExchangeName.getBytes(UTF_8),
+				aType.getBytes(UTF_8),
+				message,
+				0,
+				message.length,
+				0,
+				0,
+				1);
+	}
+
+	static void encodeFragment(
+			ByteBuffer aBuffer,
+			int anExchangeId,
+			int aTypeId,
+			byte[] anExchangeName,
+			byte[] aTypeName,
+			byte[] aMessage,
+			int aMessageId,
+			int aFragmentIndex,
+			int aFragmentCount,
+			int aFragmentLength) {
+
+		encode(
+				aBuffer,
+				PUBLISH,
+				anExchangeId,
+				aTypeId,
+				anExchangeName,
+				aTypeName,
+				aMessage,
+				aFragmentIndex * aFragmentLength,
+				Math.min(aFragmentLength, aMessage.length - aFragmentIndex * aFragmentLength),
+				aMessageId,
+				aFragmentIndex,
+				aFragmentCount);
+	}
+
+	static int exchangeId(ByteBuffer aFrame) {
+		return aFrame.getInt(aFrame.position() + EXCHANGE_ID_OFFSET);
+	}
+
+	static String exchangeName(ByteBuffer aFrame) {
+		return string(aFrame, HEADER_LENGTH, exchangeNameLength(aFrame));
+	}
+
+	static int exchangeNameLength(ByteBuffer aFrame) {
+		return aFrame.getShort(aFrame.position() + EXCHANGE_NAME_LENGTH_OFFSET) & 0xFFFF;
+	}
+
+	static int fragmentCount(ByteBuffer aFrame) {
+		return aFrame.getShort(aFrame.position() + FRAGMENT_COUNT_OFFSET) & 0xFFFF;
+	}
+
+	static int fragmentIndex(ByteBuffer aFrame) {
+		return aFrame.getShort(aFrame.position() + FRAGMENT_INDEX_OFFSET) & 0xFFFF;
+	}
+
+	static int frameLength(ByteBuffer aDatagram) {
+		if (aDatagram.remaining() < HEADER_LENGTH || length(aDatagram) < 0) {
+			return -1;
+		}
+
+		return HEADER_LENGTH + length(aDatagram);
+	}
+
+	static int fragmentLength(int aBufferLength, byte[] anExchangeName, byte[] aTypeName) {
+		return aBufferLength - HEADER_LENGTH - anExchangeName.length - aTypeName.length;
+	}
+
+	static boolean hasExchangeName(ByteBuffer aFrame, byte[] anExchangeName) {
+		return exchangeNameLength(aFrame) == anExchangeName.length
+				&& hasBytes(aFrame, HEADER_LENGTH, anExchangeName);
+	}
+
+	static int idOf(String aName) {
+		return aName == null ? 0 : aName.hashCode();
+	}
+
+	static boolean isComplete(ByteBuffer aFrame) {
+		return aFrame.remaining() >= HEADER_LENGTH
+				&& aFrame.remaining() == HEADER_LENGTH + length(aFrame)
+				&& exchangeNameLength(aFrame) + typeNameLength(aFrame) <= length(aFrame)
+				&& fragmentIndex(aFrame) < fragmentCount(aFrame)
+				&& (!hasToSequence(aFrame) || length(aFrame) >= TO_SEQUENCE_LENGTH);
+	}
+
+	static int length(ByteBuffer aFrame) {
+		return aFrame.getInt(aFrame.position() + LENGTH_OFFSET);
+	}
+
+	static String message(ByteBuffer aFrame) {
+		int namesLength = exchangeNameLength(aFrame) + typeNameLength(aFrame);
+
+		return string(aFrame, HEADER_LENGTH + namesLength, length(aFrame) - namesLength);
+	}
+
+	static byte[] messageBytes(ByteBuffer aFrame) {
+		int namesLength = exchangeNameLength(aFrame) + typeNameLength(aFrame);
+
+		return bytes(aFrame, HEADER_LENGTH + namesLength, length(aFrame) - namesLength);
+	}
+
+	static int messageId(ByteBuffer aFrame) {
+		return aFrame.getInt(aFrame.position() + MESSAGE_ID_OFFSET);
+	}
+
+	static long sequence(ByteBuffer aFrame) {
+		return aFrame.getLong(aFrame.position() + SEQUENCE_OFFSET);
+	}
+
+	static int sourceId(ByteBuffer aFrame) {
+		return aFrame.getInt(aFrame.position() + SOURCE_ID_OFFSET);
+	}
+
+	static void stamp(ByteBuffer aFrame, long aSequence, int aSourceId) {
+		aFrame.putLong(aFrame.position() + SEQUENCE_OFFSET, aSequence);
+		aFrame.putInt(aFrame.position() + SOURCE_ID_OFFSET, aSourceId);
+	}
+
+	static String string(byte[] aBytes) {
+		return new String(aBytes, UTF_8);
+	}
+
+	static long toSequence(ByteBuffer aFrame) {
+		return aFrame.getLong(aFrame.position() + HEADER_LENGTH);
+	}
+
+	static String type(ByteBuffer aFrame) {
+		return string(aFrame, HEADER_LENGTH + exchangeNameLength(aFrame), typeNameLength(aFrame));
+	}
+
+	static int typeId(ByteBuffer aFrame) {
+		return aFrame.getInt(aFrame.position() + TYPE_ID_OFFSET);
+	}
+
+	static int typeNameLength(ByteBuffer aFrame) {
+		return aFrame.getShort(aFrame.position() + TYPE_NAME_LENGTH_OFFSET) & 0xFFFF;
+	}
+
+	static byte[] utf8(String aText) {
+		return aText.getBytes(UTF_8);
+	}
+
+	private static byte[] bytes(ByteBuffer aFrame, int anOffset, int aLength) {
+		byte[] bytes = new byte[aLength];
+
+		ByteBuffer source = aFrame.duplicate();
+
+		source.position(aFrame.position() + anOffset);
+		source.get(bytes);
+
+		return bytes;
+	}
+
+	private static void encode(
+			ByteBuffer aBuffer,
+			byte aCommand,
+			int anExchangeId,
+			int aTypeId,
+			byte[] anExchangeName,
+			byte[] aTypeName,
+			byte[] aBody,
+			int aBodyOffset,
+			int aBodyLength,
+			int aMessageId,
+			int aFragmentIndex,
+			int aFragmentCount) {
+
+		int length = anExchangeName.length + aTypeName.length + aBodyLength;
+
+		if (anExchangeName.length > 0xFFFF) {
+			throw new IllegalArgumentException("Exchange name must not exceed 65535 bytes.");
+		}
+
+		if (aTypeName.length > 0xFFFF) {
+			throw new IllegalArgumentException("Type must not exceed 65535 bytes.");
+		}
+
+		if (HEADER_LENGTH + length > aBuffer.remaining()) {
+			throw new IllegalArgumentException(
+					"Message must not exceed " + (aBuffer.remaining() - HEADER_LENGTH) + " bytes.");
+		}
+
+		aBuffer
+			.put(aCommand)
+			.put((byte) 0)
+			.putShort((short) aTypeName.length)
+			.putInt(anExchangeId)
+			.putInt(aTypeId)
+			.putInt(length)
+			.putLong(0L)
+			.putInt(0)
+			.putInt(aMessageId)
+			.putShort((short) aFragmentIndex)
+			.putShort((short) aFragmentCount)
+			.putShort((short) anExchangeName.length)
+			.put(anExchangeName)
+			.put(aTypeName)
+			.put(aBody, aBodyOffset, aBodyLength);
+	}
+
+	private static boolean hasToSequence(ByteBuffer aFrame) {
+		switch (command(aFrame)) {
+		case NACK:
+		case LOST:
+		case HEARTBEAT:
+		case SUBSCRIBED:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean hasBytes(ByteBuffer aFrame, int anOffset, byte[] aBytes) {
+		int start = aFrame.position() + anOffset;
+
+		for (int idx = 0; idx < aBytes.length; ++idx) {
+			if (aFrame.get(start + idx) != aBytes[idx]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static String string(ByteBuffer aFrame, int anOffset, int aLength) {
+		return new String(bytes(aFrame, anOffset, aLength), UTF_8);
+	}
+
+	private SlothFrame() {
+		super();
+	}
+}
@@ -15,29 +15,90 @@
 package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * I am a simple messaging server.
+ * I am a simple messaging server. I receive every datagram into one
+ * reused direct buffer from a non-blocking channel, route it by its
+ * SlothFrame header alone, and fan out a PUBLISH by sending that same
+ * buffer to each subscribed client without decoding or re-encoding it.
+ * Subscribers are found through ExchangeSubscriptions, so fan-out cost
+ * follows an exchange's subscribers rather than all attached clients.
+ * Exchanges whose names share an id share its subscribers and its
+ * sequence; each client keeps only the frames naming its exchanges.
+ * Per-message logging happens only when the slothmq.trace system
+ * property is set.
+ *
+ * Each PUBLISH is stamped with its exchange's next sequence and its
+ * publisher's source id, and retained in the exchange's RetransmitRing.
+ * A client that finds a gap sends a NACK for the missing range and I
+ * send it those frames again, or a LOST for any that have left the
+ * ring. For a few heartbeat intervals after an exchange publishes I
+ * send its subscribers a HEARTBEAT naming its last sequence, so that
+ * the loss of the final frames of a burst is also noticed. I answer a
+ * SUBSCRIBE with a SUBSCRIBED naming the exchange's last sequence when
+ * the client first subscribed, so that the client also recovers the
+ * first frames published to it, and answers a repeated SUBSCRIBE the
+ * same way. A datagram that my non-blocking channel cannot send because
+ * the socket send buffer is full is counted and logged as dropped, and
+ * is recovered the same way as one lost on the network.
+ *
+ * When coalescing, which is off unless requested or the slothmq.coalesce
+ * system property is set, I append the frames for each client to that
+ * client's pending datagram instead of sending them one by one. A
+ * pending datagram is sent when the next frame would not fit within the
+ * coalescing length, or when the oldest pending frame has lingered for
+ * the linger interval.
  *
  * @author Vaughn Vernon
  */
 public class SlothServer extends SlothWorker {
 
-	private Map<String,ClientRegistration> clientRegistrations;
+	private static final int BIND_ATTEMPTS = 20;
+	private static final long BIND_RETRY_INTERVAL = 50L;
+	private static final long HEARTBEAT_INTERVAL = 20L;
+	private static final int HEARTBEAT_REPEATS = 5;
+	private static final int RETRANSMIT_RING_CAPACITY = 4096;
+
+	private ByteBuffer buffer;
+	private DatagramChannel channel;
+	private Map<SocketAddress,ClientRegistration> clientRegistrations;
 	private boolean closed;
-	private DatagramSocket serverSocket;
+	private boolean coalescing;
+	private int coalescingLength;
+	private long coalescedSince;
+	private ByteBuffer controlBuffer;
+	private long droppedDatagramCount;
+	private ExchangeSubscriptions exchangeSubscriptions;
+	private Map<Integer,Integer> heartbeatsRemaining;
+	private long lastHeartbeat;
+	private long lingerNanos;
+	private int nextSourceId;
+	private Set<ClientRegistration> pendingDestinations;
+	private Map<Integer,RetransmitRing> retransmitRings;
+	private Selector selector;
 
 	public static void executeInProcessDetachedServer() {
+		SlothServer.executeInProcessDetachedServer(COALESCE);
+	}
+
+	public static void executeInProcessDetachedServer(final boolean aCoalescing) {
 		Thread serverThread = new Thread() {
 			@Override
 			public void run() {
-				SlothServer.executeNewServer();
+				SlothServer.executeNewServer(aCoalescing);
 			}
 		};
 
@@ -45,8 +106,16 @@ public class SlothServer extends SlothWorker {
 	}
 
 	public static void executeNewServer() {
+		SlothServer.executeNewServer(COALESCE);
+	}
+
+	public static void executeNewServer(boolean aCoalescing) {
 		SlothServer slothServer = new SlothServer();
 
+		if (aCoalescing) {
+			slothServer.enableCoalescing();
+		}
+
 		slothServer.execute();
 	}
 
@@ -57,132 +126,357 @@ public class SlothServer extends SlothWorker {
 	public SlothServer() {
 		super();
 
-		this.clientRegistrations = new HashMap<String,ClientRegistration>();
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+		this.clientRegistrations = new HashMap<SocketAddress,ClientRegistration>();
+		this.controlBuffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+		this.exchangeSubscriptions = new ExchangeSubscriptions();
+		this.heartbeatsRemaining = new HashMap<Integer,Integer>();
+		this.pendingDestinations = new LinkedHashSet<ClientRegistration>();
+		this.retransmitRings = new HashMap<Integer,RetransmitRing>();
 
-		this.openSocket();
+		this.openChannel();
+	}
+
+	public void enableCoalescing() {
+		this.enableCoalescing(DEFAULT_COALESCING_LENGTH, DEFAULT_LINGER_MICROS);
+	}
+
+	public void enableCoalescing(int aCoalescingLength, long aLingerMicros) {
+		if (aCoalescingLength < SlothFrame.HEADER_LENGTH || aCoalescingLength > BUFFER_LENGTH) {
+			throw new IllegalArgumentException(
+					"Coalescing length must be between " + SlothFrame.HEADER_LENGTH + " and " + BUFFER_LENGTH + ".");
+		}
+
+		if (aLingerMicros < 0) {
+			throw new IllegalArgumentException("Linger must not be negative.");
+		}
+
+		this.coalescing = true;
+		this.coalescingLength = aCoalescingLength;
+		this.lingerNanos = aLingerMicros * 1000L;
 	}
 
 	public void execute() {
 
 		while (!this.closed) {
-			DatagramPacket receivePacket = this.receive();
+			try {
+				if (this.pendingDestinations.isEmpty()) {
+					this.selector.select(HEARTBEAT_INTERVAL);
+				} else {
+					long linger = this.lingerNanos - (System.nanoTime() - this.coalescedSince);
 
-			String message = new String(receivePacket.getData()).trim();
+					if (linger > 0) {
+						LockSupport.parkNanos(linger);
+					}
 
-			this.handleMessage(receivePacket, message);
-		}
-	}
+					this.selector.selectNow();
+				}
+
+				this.selector.selectedKeys().clear();
+
+				this.receiveAll();
+
+				if (!this.closed) {
+					if (!this.pendingDestinations.isEmpty()
+							&& System.nanoTime() - this.coalescedSince >= this.lingerNanos) {
 
-	private ClientRegistration attach(DatagramPacket aReceivePacket) {
-		InetAddress ipAddress = aReceivePacket.getAddress();
-		int port = aReceivePacket.getPort();
+						this.flushAll();
+					}
 
-		String name = ipAddress.toString() + ":" + port;
+					this.sendHeartbeats();
+				}
+
+			} catch (IOException e) {
+				if (!this.closed) {
+					System.out.println("SLOTH SERVER: Failed to receive because: " + e.getMessage() + ": Continuing...");
+					e.printStackTrace();
+				}
+			}
+		}
+	}
 
-		ClientRegistration clientRegistration = this.clientRegistrations.get(name);
+	private ClientRegistration attach(SocketAddress aSocketAddress) {
+		ClientRegistration clientRegistration = this.clientRegistrations.get(aSocketAddress);
 
 		if (clientRegistration == null) {
-			clientRegistration = new ClientRegistration(ipAddress, port);
-			this.clientRegistrations.put(name, clientRegistration);
+			clientRegistration = new ClientRegistration((InetSocketAddress) aSocketAddress, ++this.nextSourceId);
+			this.clientRegistrations.put(aSocketAddress, clientRegistration);
 		}
 
 		return clientRegistration;
 	}
 
+	private void bind() throws IOException {
+		// a server closed just before I start may still hold the port
+		for (int attempt = 1; ; ++attempt) {
+			try {
+				this.channel.socket().bind(new InetSocketAddress(PORT));
+
+				return;
+
+			} catch (BindException e) {
+				if (attempt == BIND_ATTEMPTS) {
+					throw e;
+				}
+
+				try {
+					Thread.sleep(BIND_RETRY_INTERVAL);
+				} catch (InterruptedException ie) {
+					throw e;
+				}
+			}
+		}
+	}
+
 	private void close() {
 		System.out.println("SLOTH SERVER: Closing...");
 
 		this.closed = true;
 
-		this.serverSocket.close();
+		try {
+			this.selector.close();
+			this.channel.close();
+		} catch (IOException e) {
+			System.out.println("SLOTH SERVER: Failed to close because: " + e.getMessage());
+		}
 
 		System.out.println("SLOTH SERVER: Closed.");
 	}
 
-	private void handleMessage(DatagramPacket aReceivePacket, String aMessage) {
-		System.out.println("SLOTH SERVER: Handling: " + aMessage);
+	private void flush(ClientRegistration aClientRegistration) {
+		ByteBuffer pendingFrames = aClientRegistration.pendingFrames(this.coalescingLength);
+
+		if (pendingFrames.position() > 0) {
+			pendingFrames.flip();
+
+			this.send(aClientRegistration.socketAddress(), pendingFrames);
+
+			pendingFrames.clear();
+		}
+	}
+
+	private void flushAll() {
+		for (ClientRegistration clientRegistration : this.pendingDestinations) {
+			this.flush(clientRegistration);
+		}
+
+		this.pendingDestinations.clear();
+	}
+
+	private void handleFrame(SocketAddress aSocketAddress, ByteBuffer aFrame) {
+		if (!SlothFrame.isComplete(aFrame)) {
+			System.out.println("SLOTH SERVER: Malformed frame of " + aFrame.remaining() + " bytes; ignoring.");
+			return;
+		}
+
+		byte command = SlothFrame.command(aFrame);
+
+		if (TRACE) {
+			System.out.println("SLOTH SERVER: Handling: command " + command + " from " + aSocketAddress);
+		}
 
-		if (aMessage.startsWith("ATTACH:")) {
-			this.attach(aReceivePacket);
-		} else if (aMessage.startsWith("CLOSE:")) {
+		switch (command) {
+		case SlothFrame.PUBLISH:
+			this.publishToClients(aSocketAddress, aFrame);
+			break;
+		case SlothFrame.NACK:
+			this.retransmitTo(aSocketAddress, aFrame);
+			break;
+		case SlothFrame.ATTACH:
+			this.attach(aSocketAddress);
+			break;
+		case SlothFrame.CLOSE:
 			this.close();
-		} else if (aMessage.startsWith("PUBLISH:")) {
-			this.publishToClients(aReceivePacket, aMessage);
-		} else if (aMessage.startsWith("SUBSCRIBE:")) {
-			this.subscribeClientTo(aReceivePacket, aMessage.substring(10));
-		} else if (aMessage.startsWith("UNSUBSCRIBE:")) {
-			this.unsubscribeClientFrom(aReceivePacket, aMessage.substring(12));
-		} else {
-			System.out.println("SLOTH SERVER: Does not understand: " + aMessage);
+			break;
+		case SlothFrame.SUBSCRIBE:
+			this.subscribeClientTo(aSocketAddress, SlothFrame.exchangeName(aFrame));
+			break;
+		case SlothFrame.UNSUBSCRIBE:
+			this.unsubscribeClientFrom(aSocketAddress, SlothFrame.exchangeName(aFrame));
+			break;
+		default:
+			System.out.println("SLOTH SERVER: Does not understand command: " + command);
+			break;
+		}
+	}
+
+	private void handleFrames(SocketAddress aSocketAddress, ByteBuffer aDatagram) {
+		int datagramLimit = aDatagram.limit();
+
+		while (!this.closed && aDatagram.hasRemaining()) {
+			int frameLength = SlothFrame.frameLength(aDatagram);
+
+			if (frameLength < 0 || frameLength > aDatagram.remaining()) {
+				System.out.println("SLOTH SERVER: Malformed frame of " + aDatagram.remaining() + " bytes; ignoring.");
+				return;
+			}
+
+			int frameEnd = aDatagram.position() + frameLength;
+
+			aDatagram.limit(frameEnd);
+
+			this.handleFrame(aSocketAddress, aDatagram);
+
+			aDatagram.limit(datagramLimit);
+			aDatagram.position(frameEnd);
 		}
 	}
 
-	private void openSocket() {
+	private void openChannel() {
 		try {
-			this.serverSocket = new DatagramSocket(PORT);
-		} catch (SocketException e) {
+			this.channel = DatagramChannel.open();
+			this.channel.configureBlocking(false);
+			this.channel.socket().setReceiveBufferSize(SOCKET_BUFFER_LENGTH);
+			this.channel.socket().setSendBufferSize(SOCKET_BUFFER_LENGTH);
+
+			this.bind();
+
+			this.selector = Selector.open();
+			this.channel.register(this.selector, SelectionKey.OP_READ);
+
+		} catch (IOException e) {
 			System.out.println("SLOTH SERVER: Won't start because: " + e.getMessage());
 			e.printStackTrace();
 			System.exit(2);
 		}
 	}
 
-	private void publishToClients(
-			DatagramPacket aReceivePacket,
-			String anExchangeMessage) {
+	private void publishToClients(SocketAddress aSocketAddress, ByteBuffer aFrame) {
+		int exchangeId = SlothFrame.exchangeId(aFrame);
 
-		int exchangeDivider = anExchangeMessage.indexOf("PUBLISH:");
-		int typeDivider = anExchangeMessage.indexOf("TYPE:", exchangeDivider + 8);
+		this.retransmitRingOf(exchangeId).append(aFrame, this.attach(aSocketAddress).sourceId());
 
-		if (exchangeDivider == -1) {
-			System.out.println("SLOTH SERVER: PUBLISH: No exchange name; ignoring: " + anExchangeMessage);
-		} else if (typeDivider == -1) {
-			System.out.println("SLOTH SERVER: PUBLISH: No TYPE; ignoring: " + anExchangeMessage);
-		} else {
-			String exchangeName = anExchangeMessage.substring(exchangeDivider + 8, typeDivider);
+		this.heartbeatsRemaining.put(exchangeId, HEARTBEAT_REPEATS);
 
-			for (ClientRegistration clientSubscriptions : this.clientRegistrations.values()) {
-				if (clientSubscriptions.isSubscribedTo(exchangeName)) {
-					this.send(clientSubscriptions.ipAddress(), clientSubscriptions.port(), anExchangeMessage);
-				}
+		ClientRegistration[] subscribers = this.exchangeSubscriptions.subscribersOf(exchangeId);
+
+		for (ClientRegistration subscriber : subscribers) {
+			this.sendTo(subscriber, aFrame);
+		}
+	}
+
+	private void receiveAll() throws IOException {
+		while (!this.closed) {
+			this.buffer.clear();
+
+			SocketAddress socketAddress = this.channel.receive(this.buffer);
+
+			if (socketAddress == null) {
+				break;
 			}
+
+			this.buffer.flip();
+
+			this.handleFrames(socketAddress, this.buffer);
 		}
 	}
 
-	private DatagramPacket receive() {
+	private void retransmitTo(SocketAddress aSocketAddress, ByteBuffer aNack) {
+		RetransmitRing retransmitRing = this.retransmitRings.get(SlothFrame.exchangeId(aNack));
 
-		byte[] receiveBuffer = new byte[BUFFER_LENGTH];
+		if (retransmitRing == null) {
+			return;
+		}
 
-		DatagramPacket receivePacket = new DatagramPacket(receiveBuffer, BUFFER_LENGTH);
+		ClientRegistration clientRegistration = this.attach(aSocketAddress);
 
-		try {
-			this.serverSocket.receive(receivePacket);
-		} catch (IOException e) {
-			System.out.println("SLOTH SERVER: Failed to receive because: " + e.getMessage() + ": Continuing...");
-			e.printStackTrace();
+		long fromSequence = SlothFrame.sequence(aNack);
+		long toSequence = Math.min(SlothFrame.toSequence(aNack), retransmitRing.lastSequence());
+
+		if (fromSequence < retransmitRing.oldestSequence()) {
+			long lostToSequence = Math.min(toSequence, retransmitRing.oldestSequence() - 1);
+
+			this.controlBuffer.clear();
+
+			SlothFrame.encode(this.controlBuffer, SlothFrame.LOST, SlothFrame.exchangeId(aNack), fromSequence, lostToSequence);
+
+			this.controlBuffer.flip();
+
+			this.sendTo(clientRegistration, this.controlBuffer);
+
+			fromSequence = lostToSequence + 1;
+		}
+
+		for (long sequence = fromSequence; sequence <= toSequence; ++sequence) {
+			this.sendTo(clientRegistration, retransmitRing.frameOf(sequence));
+		}
+
+		if (TRACE) {
+			System.out.println("SLOTH SERVER: Retransmitted: " + fromSequence + ".." + toSequence + " to " + aSocketAddress);
+		}
+	}
+
+	private RetransmitRing retransmitRingOf(int anExchangeId) {
+		RetransmitRing retransmitRing = this.retransmitRings.get(anExchangeId);
+
+		if (retransmitRing == null) {
+			retransmitRing = new RetransmitRing(RETRANSMIT_RING_CAPACITY);
+			this.retransmitRings.put(anExchangeId, retransmitRing);
 		}
 
-		return receivePacket;
+		return retransmitRing;
 	}
 
-	private void send(
-			InetAddress anIPAddress,
-			int aPort,
-			String aMessage) {
+	private void sendHeartbeats() {
+		long now = System.currentTimeMillis();
+
+		if (now - this.lastHeartbeat < HEARTBEAT_INTERVAL) {
+			return;
+		}
+
+		this.lastHeartbeat = now;
+
+		Iterator<Map.Entry<Integer,Integer>> iterator = this.heartbeatsRemaining.entrySet().iterator();
+
+		while (iterator.hasNext()) {
+			Map.Entry<Integer,Integer> entry = iterator.next();
+
+			int exchangeId = entry.getKey();
+
+			long lastSequence = this.retransmitRings.get(exchangeId).lastSequence();
+
+			this.controlBuffer.clear();
+
+			SlothFrame.encode(this.controlBuffer, SlothFrame.HEARTBEAT, exchangeId, lastSequence, lastSequence);
 
-		byte[] sendBuffer = aMessage.getBytes();
+			this.controlBuffer.flip();
 
-		DatagramPacket sendPacket =
-				new DatagramPacket(
-						sendBuffer,
-						sendBuffer.length,
-						anIPAddress,
-						aPort);
+			for (ClientRegistration subscriber : this.exchangeSubscriptions.subscribersOf(exchangeId)) {
+				this.sendTo(subscriber, this.controlBuffer);
+			}
+
+			if (entry.getValue() <= 1) {
+				iterator.remove();
+			} else {
+				entry.setValue(entry.getValue() - 1);
+			}
+		}
+	}
 
+	private void send(SocketAddress aSocketAddress, ByteBuffer aFrame) {
 		try {
-			this.serverSocket.send(sendPacket);
+			int length = aFrame.remaining();
+
+			int sent = this.channel.send(aFrame, aSocketAddress);
+
+			if (sent == 0 && length > 0) {
+				// the socket send buffer is full; clients NACK the gap
+				++this.droppedDatagramCount;
+
+				System.out.println(
+						"SLOTH SERVER: Warning: Dropped datagram of "
+						+ length
+						+ " bytes to "
+						+ aSocketAddress
+						+ " because the send buffer is full; dropped: "
+						+ this.droppedDatagramCount);
+
+				return;
+			}
 
-			System.out.println("SLOTH SERVER: Sent: " + aMessage);
+			if (TRACE) {
+				System.out.println("SLOTH SERVER: Sent: " + sent + " bytes to " + aSocketAddress);
+			}
 
 		} catch (IOException e) {
 			System.out.println("SLOTH SERVER: Failed to send because: " + e.getMessage() + ": Continuing...");
@@ -190,40 +484,81 @@ public class SlothServer extends SlothWorker {
 		}
 	}
 
+	private void sendTo(ClientRegistration aClientRegistration, ByteBuffer aFrame) {
+		int frameStart = aFrame.position();
+
+		if (!this.coalescing) {
+			this.send(aClientRegistration.socketAddress(), aFrame);
+
+		} else {
+			ByteBuffer pendingFrames = aClientRegistration.pendingFrames(this.coalescingLength);
+
+			if (aFrame.remaining() > pendingFrames.remaining()) {
+				this.flush(aClientRegistration);
+			}
+
+			if (aFrame.remaining() > pendingFrames.remaining()) {
+				this.send(aClientRegistration.socketAddress(), aFrame);
+
+			} else {
+				if (this.pendingDestinations.isEmpty()) {
+					this.coalescedSince = System.nanoTime();
+				}
+
+				this.pendingDestinations.add(aClientRegistration);
+
+				pendingFrames.put(aFrame);
+			}
+		}
+
+		aFrame.position(frameStart);
+	}
+
 	private void subscribeClientTo(
-			DatagramPacket aReceivePacket,
+			SocketAddress aSocketAddress,
 			String anExchangeName) {
 
-		InetAddress ipAddress = aReceivePacket.getAddress();
-		int port = aReceivePacket.getPort();
+		ClientRegistration clientRegistration = this.attach(aSocketAddress);
 
-		String name = ipAddress.toString() + ":" + port;
+		int exchangeId = SlothFrame.idOf(anExchangeName);
 
-		ClientRegistration clientRegistration = this.clientRegistrations.get(name);
+		if (!clientRegistration.isSubscribedTo(anExchangeName)) {
+			clientRegistration.addSubscription(anExchangeName);
 
-		if (clientRegistration == null) {
-			clientRegistration = this.attach(aReceivePacket);
+			this.exchangeSubscriptions.subscribe(exchangeId, clientRegistration);
+
+			System.out.println("SLOTH SERVER: Subscribed: " + clientRegistration + " TO: " + anExchangeName);
 		}
 
-		clientRegistration.addSubscription(anExchangeName);
+		long subscribedAfter =
+				clientRegistration.subscribedAfter(
+						exchangeId,
+						this.retransmitRingOf(exchangeId).lastSequence());
+
+		this.controlBuffer.clear();
+
+		SlothFrame.encode(this.controlBuffer, SlothFrame.SUBSCRIBED, exchangeId, subscribedAfter, subscribedAfter);
 
-		System.out.println("SLOTH SERVER: Subscribed: " + clientRegistration + " TO: " + anExchangeName);
+		this.controlBuffer.flip();
+
+		this.sendTo(clientRegistration, this.controlBuffer);
 	}
 
 	private void unsubscribeClientFrom(
-			DatagramPacket aReceivePacket,
+			SocketAddress aSocketAddress,
 			String anExchangeName) {
 
-		InetAddress ipAddress = aReceivePacket.getAddress();
-		int port = aReceivePacket.getPort();
-
-		String name = ipAddress.toString() + ":" + port;
-
-		ClientRegistration clientRegistration = this.clientRegistrations.get(name);
+		ClientRegistration clientRegistration = this.clientRegistrations.get(aSocketAddress);
 
 		if (clientRegistration != null) {
 			clientRegistration.removeSubscription(anExchangeName);
 
+			int exchangeId = SlothFrame.idOf(anExchangeName);
+
+			if (!clientRegistration.isSubscribedTo(exchangeId)) {
+				this.exchangeSubscriptions.unsubscribe(exchangeId, clientRegistration);
+			}
+
 			System.out.println("SLOTH SERVER: Unsubscribed: " + clientRegistration + " FROM: " + anExchangeName);
 		}
 	}
@@ -17,7 +17,12 @@ package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
 public abstract class SlothWorker {
 
 	protected static final int BUFFER_LENGTH = 8192;
+	protected static final boolean COALESCE = Boolean.getBoolean("slothmq.coalesce");
+	protected static final int DEFAULT_COALESCING_LENGTH = 1472;
+	protected static final long DEFAULT_LINGER_MICROS = 100L;
 	protected static final int PORT = 55555;
+	protected static final int SOCKET_BUFFER_LENGTH = 4 * 1024 * 1024;
+	protected static final boolean TRACE = Boolean.getBoolean("slothmq.trace");
 
 	protected SlothWorker() {
 		super();
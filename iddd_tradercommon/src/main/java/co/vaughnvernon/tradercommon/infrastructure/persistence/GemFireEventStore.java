@@ -1,101 +1,372 @@
 package co.vaughnvernon.tradercommon.infrastructure.persistence;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.gemstone.gemfire.cache.CacheClosedException;
 import com.gemstone.gemfire.cache.Region;
 import com.gemstone.gemfire.cache.client.ClientCache;
 import com.gemstone.gemfire.cache.client.ClientCacheFactory;
+import com.gemstone.gemfire.cache.execute.FunctionService;
+import com.gemstone.gemfire.cache.query.Query;
+import com.gemstone.gemfire.cache.query.QueryException;
+import com.gemstone.gemfire.cache.query.SelectResults;
 
 import co.vaughnvernon.tradercommon.event.DomainEvent;
 import co.vaughnvernon.tradercommon.event.EventStore;
 import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
 
+/**
+ * I store events in the DomainEvents region. Event ids come from
+ * blocks reserved on the grid by ReserveEventIdBlockFunction, so
+ * stores in any number of clients never assign the same id, though
+ * ids of events appended concurrently by different stores need not
+ * follow append order. An event may therefore be stored with an id
+ * lower than one already read; write-behind widens that window to
+ * the flush interval. Ids within a block are dense, so my cursors
+ * hold at the first missing id until it is stored or the gap timeout
+ * elapses, after which the missing ids are taken to be the unused
+ * rest of some store's block. The gap timeout should exceed the
+ * write-behind flush interval. Any other reader resuming from the
+ * highest id it has seen can skip an event for good.
+ *
+ * By default each append is written through, a list of events with
+ * a single putAll(). In write-behind mode appended events are held
+ * until the flush size is reached or the flush interval elapses,
+ * and are then written with a single putAll(). My reads flush first,
+ * so a client always reads its own appended events.
+ *
+ * An append is newStoredEvents(), which reserves the event ids, then
+ * store(), which puts the events keyed by those ids. A writer that
+ * retries a failed store() of the same StoredEvents overwrites any it
+ * had stored, so it never stores an event twice.
+ *
+ * I read ranges with an indexed OQL query that answers events in id
+ * order a page at a time, rather than fetching every key and then
+ * each event.
+ */
 public class GemFireEventStore implements EventStore {
 
-	private int nextEventId;
+	public static final long DEFAULT_GAP_TIMEOUT = 5000L;
+	public static final int DEFAULT_ID_BLOCK_SIZE = 100;
+	public static final int DEFAULT_PAGE_SIZE = 1000;
 
 	private static final String DOMAIN_EVENTS_REGION = "DomainEvents";
+	private static final String EVENT_ID_SEQUENCES_REGION = "EventIdSequences";
+
+	// served by the DomainEventsByEventId index declared in the cluster configuration
+	private static final String STORED_EVENTS_IN_RANGE_OQL =
+			"SELECT DISTINCT * FROM /" + DOMAIN_EVENTS_REGION + " e"
+			+ " WHERE e.eventId > $1 AND e.eventId <= $2"
+			+ " ORDER BY e.eventId"
+			+ " LIMIT ";
+
+	private static final ReserveEventIdBlockFunction RESERVE_EVENT_ID_BLOCK =
+			new ReserveEventIdBlockFunction();
+
 	private Region<Long, StoredEvent> domainEventsRegion;
+	private Region<String, Long> eventIdSequencesRegion;
+	private Object flushLock;
+	private int idBlockSize;
+	private long limitEventId;
+	private long nextEventId;
+	private Map<Long, StoredEvent> pendingEvents;
+	private WriteBehindFlusher writeBehindFlusher;
+	private int writeBehindFlushSize;
 	ClientCache clientCache;
 
 	public GemFireEventStore() {
+		this(DEFAULT_ID_BLOCK_SIZE);
+	}
+
+	public GemFireEventStore(int anIdBlockSize) {
 		super();
 
 		initializeGemFireCache();
 
-		this.setEvents(new ArrayList<StoredEvent>());
-		this.setNextEventId(1);
+		this.setIdBlockSize(anIdBlockSize);
+		this.flushLock = new Object();
+	}
+
+	public GemFireEventStore(
+			int anIdBlockSize,
+			int aWriteBehindFlushSize,
+			long aWriteBehindFlushInterval) {
+
+		this(anIdBlockSize);
+
+		if (aWriteBehindFlushSize <= 0) {
+			throw new IllegalArgumentException("Write-behind flush size must be greater than zero.");
+		}
+
+		if (aWriteBehindFlushInterval <= 0) {
+			throw new IllegalArgumentException("Write-behind flush interval must be greater than zero.");
+		}
+
+		this.pendingEvents = new LinkedHashMap<Long, StoredEvent>();
+		this.writeBehindFlushSize = aWriteBehindFlushSize;
+		this.writeBehindFlusher = new WriteBehindFlusher(aWriteBehindFlushInterval);
+		this.writeBehindFlusher.start();
 	}
 
 	@Override
 	public List<StoredEvent> allStoredEventsBetween(long aLowStoredEventId, long aHighStoredEventId) {
-		List<StoredEvent> results = new ArrayList<>();
-		Set<Long> keys = events().keySetOnServer();
-		for (Long key : keys) {
-			StoredEvent event = events().get(key);
-			if (event.eventId() >= aLowStoredEventId && event.eventId() <= aHighStoredEventId) {
-				results.add(event);
+		this.flush();
+
+		List<StoredEvent> results = new ArrayList<StoredEvent>();
+
+		// the low bound is exclusive; no event id can be Long.MIN_VALUE
+		long lastEventId =
+				aLowStoredEventId == Long.MIN_VALUE ?
+						Long.MIN_VALUE : aLowStoredEventId - 1;
+
+		Query query = this.storedEventsInRangeQuery(DEFAULT_PAGE_SIZE);
+
+		while (true) {
+			List<StoredEvent> page =
+					this.storedEventsInRange(query, lastEventId, aHighStoredEventId);
+
+			results.addAll(page);
+
+			if (page.size() < DEFAULT_PAGE_SIZE) {
+				return results;
 			}
+
+			lastEventId = page.get(page.size() - 1).eventId();
 		}
-		return results;
 	}
 
 	@Override
 	public List<StoredEvent> allStoredEventsSince(long aStoredEventId) {
-		List<StoredEvent> results = new ArrayList<>();
-		Set<Long> keys = events().keySetOnServer();
-		for (Long key : keys) {
-			StoredEvent event = events().get(key);
-			if (event.eventId() > aStoredEventId) {
-				results.add(event);
-			}
+		if (aStoredEventId == Long.MAX_VALUE) {
+			return new ArrayList<StoredEvent>();
 		}
-		return results;
+
+		return this.allStoredEventsBetween(aStoredEventId + 1, Long.MAX_VALUE);
+	}
+
+	@Override
+	public StoredEventCursor storedEventCursorSince(long aStoredEventId, int aPageSize) {
+		return this.storedEventCursorSince(aStoredEventId, aPageSize, DEFAULT_GAP_TIMEOUT);
+	}
+
+	public StoredEventCursor storedEventCursorSince(
+			long aStoredEventId,
+			int aPageSize,
+			long aGapTimeout) {
+
+		if (aGapTimeout <= 0L) {
+			throw new IllegalArgumentException("Gap timeout must be greater than zero.");
+		}
+
+		return new StoredEventCursor(this, aStoredEventId, aPageSize, aGapTimeout);
+	}
+
+	@Override
+	public List<StoredEvent> storedEventsSince(long aStoredEventId, int aPageSize) {
+		if (aPageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be greater than zero.");
+		}
+
+		this.flush();
+
+		return this.storedEventsInRange(
+				this.storedEventsInRangeQuery(aPageSize),
+				aStoredEventId,
+				Long.MAX_VALUE);
 	}
 
 	@Override
 	public StoredEvent append(DomainEvent aDomainEvent) {
-		StoredEvent storedEvent = new StoredEvent(aDomainEvent);
+		return this.append(Collections.singletonList(aDomainEvent)).get(0);
+	}
+
+	@Override
+	public List<StoredEvent> append(List<? extends DomainEvent> aDomainEvents) {
+		List<StoredEvent> storedEvents = this.newStoredEvents(aDomainEvents);
 
-		Collection<StoredEvent> events = events().values();
-		synchronized (events) {
-			int nextEventId = this.nextEventId();
+		this.store(storedEvents);
 
-			storedEvent.setEventId(nextEventId);
+		return storedEvents;
+	}
 
-			this.setNextEventId(nextEventId + 1);
+	public List<StoredEvent> newStoredEvents(List<? extends DomainEvent> aDomainEvents) {
+		List<StoredEvent> storedEvents = new ArrayList<StoredEvent>(aDomainEvents.size());
 
-			events().put(storedEvent.eventId(), storedEvent);
+		synchronized (this) {
+			for (DomainEvent domainEvent : aDomainEvents) {
+				StoredEvent storedEvent = new StoredEvent(domainEvent);
+
+				storedEvent.setEventId(this.nextEventId(aDomainEvents.size() - storedEvents.size()));
+
+				storedEvents.add(storedEvent);
+			}
 		}
 
-		return storedEvent;
+		return storedEvents;
+	}
+
+	public void store(List<StoredEvent> aStoredEvents) {
+		Map<Long, StoredEvent> storedEvents = new LinkedHashMap<Long, StoredEvent>();
+
+		for (StoredEvent storedEvent : aStoredEvents) {
+			storedEvents.put(storedEvent.eventId(), storedEvent);
+		}
+
+		if (this.isWriteBehind()) {
+			boolean flushNow;
+
+			synchronized (this.pendingEvents) {
+				this.pendingEvents.putAll(storedEvents);
+
+				flushNow = this.pendingEvents.size() >= this.writeBehindFlushSize;
+			}
+
+			if (flushNow) {
+				this.flush();
+			}
+		} else {
+			events().putAll(storedEvents);
+		}
+	}
+
+	public void close() {
+		if (this.isWriteBehind()) {
+			this.writeBehindFlusher.close();
+		}
+
+		this.flush();
 	}
 
 	@Override
 	public long countStoredEvents() {
+		this.flush();
+
 		return events().keySetOnServer().size();
 	}
 
-	private Region<Long, StoredEvent> events() {
-		return domainEventsRegion;
+	public void flush() {
+		if (!this.isWriteBehind()) {
+			return;
+		}
+
+		synchronized (this.flushLock) {
+			Map<Long, StoredEvent> batch;
+
+			synchronized (this.pendingEvents) {
+				if (this.pendingEvents.isEmpty()) {
+					return;
+				}
+
+				batch = new LinkedHashMap<Long, StoredEvent>(this.pendingEvents);
+
+				this.pendingEvents.clear();
+			}
+
+			try {
+				events().putAll(batch);
+
+			} catch (RuntimeException e) {
+				// keep the batch ahead of anything appended meanwhile
+				synchronized (this.pendingEvents) {
+					batch.putAll(this.pendingEvents);
+
+					this.pendingEvents.clear();
+					this.pendingEvents.putAll(batch);
+				}
+
+				throw e;
+			}
+		}
 	}
 
-	private void setEvents(List<StoredEvent> anEvents) {
+	public void removeAllStoredEvents() {
+		if (this.isWriteBehind()) {
+			synchronized (this.pendingEvents) {
+				this.pendingEvents.clear();
+			}
+		}
+
 		Set<Long> keys = events().keySetOnServer();
 		events().removeAll(keys);
-		anEvents.forEach((v) -> events().put(v.eventId(), v));
 	}
 
-	private int nextEventId() {
-		return this.nextEventId;
+	@SuppressWarnings("unchecked")
+	private List<StoredEvent> storedEventsInRange(
+			Query aQuery,
+			long anExclusiveLowStoredEventId,
+			long anInclusiveHighStoredEventId) {
+
+		try {
+			SelectResults<StoredEvent> storedEvents =
+					(SelectResults<StoredEvent>)
+						aQuery.execute(anExclusiveLowStoredEventId, anInclusiveHighStoredEventId);
+
+			return new ArrayList<StoredEvent>(storedEvents.asList());
+
+		} catch (QueryException e) {
+			throw new IllegalStateException(
+					"Cannot query stored events after: "
+					+ anExclusiveLowStoredEventId
+					+ " because: "
+					+ e.getMessage(),
+					e);
+		}
+	}
+
+	private Query storedEventsInRangeQuery(int aPageSize) {
+		// OQL takes no parameter for LIMIT
+		return clientCache
+					.getQueryService()
+					.newQuery(STORED_EVENTS_IN_RANGE_OQL + aPageSize);
+	}
+
+	private Region<Long, StoredEvent> events() {
+		return domainEventsRegion;
+	}
+
+	private Region<String, Long> eventIdSequences() {
+		return eventIdSequencesRegion;
+	}
+
+	private boolean isWriteBehind() {
+		return this.writeBehindFlusher != null;
 	}
 
-	private void setNextEventId(int aNextEventId) {
-		this.nextEventId = aNextEventId;
+	private void setIdBlockSize(int anIdBlockSize) {
+		if (anIdBlockSize <= 0) {
+			throw new IllegalArgumentException("Id block size must be greater than zero.");
+		}
+
+		this.idBlockSize = anIdBlockSize;
+	}
+
+	private long nextEventId(int aRemainingEventCount) {
+		if (this.nextEventId == this.limitEventId) {
+			int blockSize = Math.max(this.idBlockSize, aRemainingEventCount);
+
+			this.nextEventId = this.reserveIdBlock(blockSize);
+			this.limitEventId = this.nextEventId + blockSize;
+		}
+
+		return this.nextEventId++;
+	}
+
+	private long reserveIdBlock(int aBlockSize) {
+		List<?> results =
+				(List<?>) FunctionService
+					.onRegion(eventIdSequences())
+					.withFilter(Collections.singleton(DOMAIN_EVENTS_REGION))
+					.withArgs(aBlockSize)
+					.execute(RESERVE_EVENT_ID_BLOCK)
+					.getResult();
+
+		return ((Long) results.get(0)).longValue();
 	}
 
 	private void initializeGemFireCache() {
@@ -110,5 +381,45 @@ public class GemFireEventStore implements EventStore {
 			clientCache = ccf.create();
 		}
 		domainEventsRegion = clientCache.getRegion(DOMAIN_EVENTS_REGION);
+		eventIdSequencesRegion = clientCache.getRegion(EVENT_ID_SEQUENCES_REGION);
+	}
+
+	private class WriteBehindFlusher extends Thread {
+
+		private volatile boolean closed;
+		private long flushInterval;
+
+		WriteBehindFlusher(long aFlushInterval) {
+			super("GemFireEventStoreWriteBehindFlusher");
+
+			this.flushInterval = aFlushInterval;
+
+			this.setDaemon(true);
+		}
+
+		void close() {
+			this.closed = true;
+
+			this.interrupt();
+		}
+
+		@Override
+		public void run() {
+			while (!this.closed) {
+				try {
+					Thread.sleep(this.flushInterval);
+				} catch (InterruptedException e) {
+					// closed, or woken early; flush either way
+				}
+
+				try {
+					flush();
+				} catch (Exception e) {
+					System.out.println(
+							"Error: WRITE-BEHIND FLUSH: because: "
+							+ e.getMessage());
+				}
+			}
+		}
 	}
 }
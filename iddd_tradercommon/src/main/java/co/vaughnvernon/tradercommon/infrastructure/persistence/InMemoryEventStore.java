@@ -15,22 +15,42 @@
 package co.vaughnvernon.tradercommon.infrastructure.persistence;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import co.vaughnvernon.tradercommon.event.DomainEvent;
 import co.vaughnvernon.tradercommon.event.EventStore;
 import co.vaughnvernon.tradercommon.event.StoredEvent;
-
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
+
+/**
+ * I keep stored events in fixed-size append-only segments. Since
+ * event ids are dense and start at 1, the event with id n is found
+ * at position n - 1 without searching, and a range read copies
+ * only the events in the range.
+ *
+ * Appenders are serialized with one another, but readers take no
+ * lock: an appender fills a slot, possibly growing the segment
+ * directory first, and only then publishes the new count through
+ * a volatile write. A reader that sees a count therefore also sees
+ * every segment and event below it.
+ */
 public class InMemoryEventStore implements EventStore {
 
-	private List<StoredEvent> events;
-	private int nextEventId;
+	private static final int SEGMENT_SHIFT = 14;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private Object appendLock;
+	private volatile long count;
+	private volatile StoredEvent[][] segments;
 
 	public InMemoryEventStore() {
 		super();
 
-		this.setEvents(new ArrayList<StoredEvent>());
-		this.setNextEventId(1);
+		this.appendLock = new Object();
+		this.count = 0L;
+		this.segments = new StoredEvent[1][];
 	}
 
 	@Override
@@ -38,75 +58,131 @@ public class InMemoryEventStore implements EventStore {
 			long aLowStoredEventId,
 			long aHighStoredEventId) {
 
-		List<StoredEvent> results = new ArrayList<StoredEvent>();
-
-		synchronized (this.events()) {
-			for (StoredEvent storedEvent : this.events()) {
-				if (storedEvent.eventId() >= aLowStoredEventId && storedEvent.eventId() <= aHighStoredEventId) {
-					results.add(storedEvent);
-				}
-			}
-		}
+		long count = this.count;
 
-		return results;
+		return this.slice(
+				Math.max(aLowStoredEventId, 1L) - 1,
+				Math.min(aHighStoredEventId, count),
+				this.segments);
 	}
 
 	@Override
 	public List<StoredEvent> allStoredEventsSince(long aStoredEventId) {
-		List<StoredEvent> results = new ArrayList<StoredEvent>();
+		long count = this.count;
 
-		synchronized (this.events()) {
-			for (StoredEvent storedEvent : this.events()) {
-				if (storedEvent.eventId() > aStoredEventId) {
-					results.add(storedEvent);
-				}
-			}
-		}
-
-		return results;
+		return this.slice(Math.max(aStoredEventId, 0L), count, this.segments);
 	}
 
 	@Override
 	public StoredEvent append(DomainEvent aDomainEvent) {
 		StoredEvent storedEvent = new StoredEvent(aDomainEvent);
 
-		synchronized (this.events()) {
-			int nextEventId = this.nextEventId();
+		synchronized (this.appendLock) {
+			long index = this.count;
 
-			storedEvent.setEventId(nextEventId);
+			storedEvent.setEventId(index + 1);
 
-			this.setNextEventId(nextEventId + 1);
+			this.segmentFor(index)[(int) (index & SEGMENT_MASK)] = storedEvent;
 
-			this.events().add(storedEvent);
+			this.count = index + 1;
 		}
 
 		return storedEvent;
 	}
 
 	@Override
-	public long countStoredEvents() {
-		int count;
+	public List<StoredEvent> append(List<? extends DomainEvent> aDomainEvents) {
+		List<StoredEvent> storedEvents = new ArrayList<StoredEvent>(aDomainEvents.size());
+
+		for (DomainEvent domainEvent : aDomainEvents) {
+			storedEvents.add(new StoredEvent(domainEvent));
+		}
+
+		synchronized (this.appendLock) {
+			long index = this.count;
+
+			for (StoredEvent storedEvent : storedEvents) {
+				storedEvent.setEventId(index + 1);
+
+				this.segmentFor(index)[(int) (index & SEGMENT_MASK)] = storedEvent;
+
+				++index;
+			}
 
-		synchronized (this.events()) {
-			count = this.events().size();
+			// readers see the whole list or none of it
+			this.count = index;
 		}
 
-		return count;
+		return storedEvents;
 	}
 
-	private List<StoredEvent> events() {
-		return this.events;
+	@Override
+	public long countStoredEvents() {
+		return this.count;
 	}
 
-	private void setEvents(List<StoredEvent> anEvents) {
-		this.events = anEvents;
+	@Override
+	public StoredEventCursor storedEventCursorSince(long aStoredEventId, int aPageSize) {
+		return new StoredEventCursor(this, aStoredEventId, aPageSize);
 	}
 
-	private int nextEventId() {
-		return this.nextEventId;
+	@Override
+	public List<StoredEvent> storedEventsSince(long aStoredEventId, int aPageSize) {
+		if (aPageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be greater than zero.");
+		}
+
+		long count = this.count;
+
+		long fromIndex = Math.min(Math.max(aStoredEventId, 0L), count);
+
+		return this.slice(fromIndex, Math.min(count, fromIndex + aPageSize), this.segments);
 	}
 
-	private void setNextEventId(int aNextEventId) {
-		this.nextEventId = aNextEventId;
+	private StoredEvent[] segmentFor(long anIndex) {
+		int segmentIndex = (int) (anIndex >>> SEGMENT_SHIFT);
+
+		StoredEvent[][] segments = this.segments;
+
+		if (segmentIndex >= segments.length) {
+			segments = Arrays.copyOf(segments, segments.length * 2);
+
+			this.segments = segments;
+		}
+
+		StoredEvent[] segment = segments[segmentIndex];
+
+		if (segment == null) {
+			segment = new StoredEvent[SEGMENT_SIZE];
+
+			segments[segmentIndex] = segment;
+		}
+
+		return segment;
+	}
+
+	private List<StoredEvent> slice(
+			long aFromIndex,
+			long aToIndex,
+			StoredEvent[][] aSegments) {
+
+		if (aFromIndex >= aToIndex) {
+			return new ArrayList<StoredEvent>(0);
+		}
+
+		List<StoredEvent> results = new ArrayList<StoredEvent>((int) (aToIndex - aFromIndex));
+
+		for (long index = aFromIndex; index < aToIndex; ) {
+			StoredEvent[] segment = aSegments[(int) (index >>> SEGMENT_SHIFT)];
+
+			int from = (int) (index & SEGMENT_MASK);
+			int to = (int) Math.min(SEGMENT_SIZE, from + (aToIndex - index));
+
+			results.addAll(Arrays.asList(segment).subList(from, to));
+
+			index += to - from;
+		}
+
+		return results;
 	}
 }
@@ -14,18 +14,21 @@
 
 package co.vaughnvernon.tradercommon.infrastructure.persistence;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import co.vaughnvernon.tradercommon.quote.StreamingQuote;
 import co.vaughnvernon.tradercommon.quote.StreamingQuoteRepository;
+import co.vaughnvernon.tradercommon.quote.SymbolTable;
 
+/**
+ * I keep streaming quotes in a SymbolTable, so a lookup is an
+ * array read that never blocks, even while quote bars are saving
+ * concurrently.
+ */
 public class InMemoryStreamingQuoteRepository
 		implements StreamingQuoteRepository {
 
 	private static StreamingQuoteRepository instance;
 
-	private Map<String,StreamingQuote> streamingQuotes;
+	private SymbolTable<StreamingQuote> streamingQuotes;
 
 	public static synchronized StreamingQuoteRepository instance() {
 		if (instance == null) {
@@ -39,13 +42,7 @@ public class InMemoryStreamingQuoteRepository
 	public StreamingQuote streamingQuoteOfSymbol(
 			String aSymbol) {
 
-		for (StreamingQuote streamingQuote : this.streamingQuotes().values()) {
-			if (streamingQuote.symbol().equals(aSymbol)) {
-				return streamingQuote;
-			}
-		}
-
-		return null;
+		return this.streamingQuotes().get(aSymbol);
 	}
 
 	@Override
@@ -55,20 +52,32 @@ public class InMemoryStreamingQuoteRepository
 
 	@Override
 	public void save(StreamingQuote aStreamingQuote) {
-		this.streamingQuotes().put(aStreamingQuote.symbol(), aStreamingQuote);
+		// an updated instance is already visible through its volatile quote
+		if (this.streamingQuotes().get(aStreamingQuote.symbol()) != aStreamingQuote) {
+			this.streamingQuotes().put(aStreamingQuote.symbol(), aStreamingQuote);
+		}
+	}
+
+	@Override
+	public StreamingQuote saveIfAbsent(StreamingQuote aStreamingQuote) {
+		StreamingQuote existing =
+				this.streamingQuotes()
+					.putIfAbsent(aStreamingQuote.symbol(), aStreamingQuote);
+
+		return existing == null ? aStreamingQuote : existing;
 	}
 
-	private Map<String,StreamingQuote> streamingQuotes() {
+	private SymbolTable<StreamingQuote> streamingQuotes() {
 		return this.streamingQuotes;
 	}
 
-	private void setStreamingQuotes(Map<String,StreamingQuote> aMap) {
-		this.streamingQuotes = aMap;
+	private void setStreamingQuotes(SymbolTable<StreamingQuote> aSymbolTable) {
+		this.streamingQuotes = aSymbolTable;
 	}
 
 	private InMemoryStreamingQuoteRepository() {
 		super();
 
-		this.setStreamingQuotes(new HashMap<String,StreamingQuote>());
+		this.setStreamingQuotes(new SymbolTable<StreamingQuote>());
 	}
 }
@@ -0,0 +1,703 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import co.vaughnvernon.tradercommon.event.DomainEvent;
+import co.vaughnvernon.tradercommon.event.EventSerializer;
+import co.vaughnvernon.tradercommon.event.EventStore;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
+
+/**
+ * I store events in a directory of fixed-size segment files, each
+ * memory mapped and named for the id of its first event. A record
+ * is its payload length, a CRC32 of the payload, and the payload:
+ * the event id, the event type name, and the event serialized by
+ * EventSerializer. The length is written last, and a zero length
+ * ends a segment, so a partly written record is never read.
+ *
+ * For every INDEX_INTERVAL events of a segment I remember the
+ * record's offset, so finding an event reads at most that many
+ * records. Event ids are dense from 1, as with InMemoryEventStore.
+ *
+ * Appends are forced to disk by group commit: after every so many
+ * appends, by the appending thread, and after every commit interval,
+ * by my committer thread, whichever comes first. When opened I scan
+ * every segment to rebuild my index, stop the last one at its first
+ * torn or corrupt record, and clear what follows it.
+ *
+ * Appenders are serialized with one another, but readers take no
+ * lock, reading only events up to the count published after the
+ * records are written. A list is appended whole or not at all: one
+ * that fails part way is cleared from the segments before its ids
+ * are used again.
+ */
+public class MappedFileEventStore implements EventStore {
+
+	public static final int DEFAULT_COMMIT_EVERY_APPENDS = 100000;
+	public static final long DEFAULT_COMMIT_INTERVAL = 10L;
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final int INDEX_INTERVAL = 64;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int HEADER_LENGTH = 8;
+	private static final int MINIMUM_PAYLOAD_LENGTH = 12;
+	private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("events-(\\d{20})\\.log");
+
+	private Object appendLock;
+	private int commitEveryAppends;
+	private Committer committer;
+	private volatile long committedCount;
+	private volatile long count;
+	private CRC32 crc;
+	private File directory;
+	private Map<String, Class<? extends DomainEvent>> eventTypes;
+	private ByteBuffer payload;
+	private int segmentSize;
+	private volatile Segment[] segments;
+
+	public MappedFileEventStore(File aDirectory) {
+		this(aDirectory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_EVERY_APPENDS, DEFAULT_COMMIT_INTERVAL);
+	}
+
+	public MappedFileEventStore(
+			File aDirectory,
+			int aSegmentSize,
+			int aCommitEveryAppends,
+			long aCommitInterval) {
+
+		super();
+
+		if (aDirectory == null) {
+			throw new IllegalArgumentException("Directory must be provided.");
+		}
+
+		if (aSegmentSize < 1024) {
+			throw new IllegalArgumentException("Segment size must be at least 1024 bytes.");
+		}
+
+		if (aCommitEveryAppends <= 0) {
+			throw new IllegalArgumentException("Commit every appends must be greater than zero.");
+		}
+
+		if (aCommitInterval < 0) {
+			throw new IllegalArgumentException("Commit interval must not be negative.");
+		}
+
+		this.appendLock = new Object();
+		this.commitEveryAppends = aCommitEveryAppends;
+		this.crc = new CRC32();
+		this.directory = aDirectory;
+		this.eventTypes = new ConcurrentHashMap<String, Class<? extends DomainEvent>>();
+		this.payload = ByteBuffer.allocate(1024);
+		this.segmentSize = aSegmentSize;
+
+		try {
+			this.open();
+		} catch (IOException e) {
+			throw new IllegalStateException(
+					"Cannot open event store: "
+					+ aDirectory
+					+ " because: "
+					+ e.getMessage(),
+					e);
+		}
+
+		if (aCommitInterval > 0) {
+			this.committer = new Committer(aCommitInterval);
+			this.committer.start();
+		}
+	}
+
+	@Override
+	public List<StoredEvent> allStoredEventsBetween(
+			long aLowStoredEventId,
+			long aHighStoredEventId) {
+
+		long count = this.count;
+
+		return this.read(
+				Math.max(aLowStoredEventId, 1L),
+				Math.min(aHighStoredEventId, count),
+				this.segments);
+	}
+
+	@Override
+	public List<StoredEvent> allStoredEventsSince(long aStoredEventId) {
+		long count = this.count;
+
+		return this.read(Math.max(aStoredEventId, 0L) + 1, count, this.segments);
+	}
+
+	@Override
+	public StoredEvent append(DomainEvent aDomainEvent) {
+		return this.append(Collections.singletonList(aDomainEvent)).get(0);
+	}
+
+	@Override
+	public List<StoredEvent> append(List<? extends DomainEvent> aDomainEvents) {
+		List<StoredEvent> storedEvents = new ArrayList<StoredEvent>(aDomainEvents.size());
+
+		List<byte[]> typeNames = new ArrayList<byte[]>(aDomainEvents.size());
+		List<byte[]> bodies = new ArrayList<byte[]>(aDomainEvents.size());
+
+		for (DomainEvent domainEvent : aDomainEvents) {
+			byte[] typeName = domainEvent.getClass().getName().getBytes(UTF_8);
+			byte[] body = EventSerializer.instance().serialize(domainEvent).getBytes(UTF_8);
+
+			int recordLength = HEADER_LENGTH + this.payloadLengthOf(typeName, body);
+
+			// refuse the whole list before any of it is written
+			if (recordLength > this.segmentSize) {
+				throw new IllegalArgumentException(
+						"Event of " + recordLength + " bytes exceeds segment size: " + this.segmentSize);
+			}
+
+			storedEvents.add(new StoredEvent(domainEvent));
+			typeNames.add(typeName);
+			bodies.add(body);
+		}
+
+		boolean commitNow;
+
+		synchronized (this.appendLock) {
+			long eventId = this.count;
+
+			Segment[] segments = this.segments;
+			Segment segment = segments[segments.length - 1];
+			int position = segment.position();
+			int indexCount = segment.indexCount();
+
+			try {
+				for (int idx = 0; idx < storedEvents.size(); ++idx) {
+					StoredEvent storedEvent = storedEvents.get(idx);
+
+					storedEvent.setEventId(++eventId);
+
+					this.write(eventId, typeNames.get(idx), bodies.get(idx));
+				}
+			} catch (RuntimeException e) {
+				this.rollBack(segments, position, indexCount);
+
+				throw e;
+			}
+
+			// readers see the whole list or none of it
+			this.count = eventId;
+
+			commitNow = eventId - this.committedCount >= this.commitEveryAppends;
+		}
+
+		if (commitNow) {
+			this.commit();
+		}
+
+		return storedEvents;
+	}
+
+	public void close() {
+		if (this.committer != null) {
+			this.committer.close();
+		}
+
+		this.commit();
+
+		synchronized (this.appendLock) {
+			for (Segment segment : this.segments) {
+				segment.close();
+			}
+		}
+	}
+
+	public void commit() {
+		long count = this.count;
+
+		if (count > this.committedCount) {
+			Segment[] segments = this.segments;
+
+			// earlier segments were forced when the next one was started
+			segments[segments.length - 1].force();
+
+			synchronized (this.appendLock) {
+				if (count > this.committedCount) {
+					this.committedCount = count;
+				}
+			}
+		}
+	}
+
+	public long committedCount() {
+		return this.committedCount;
+	}
+
+	@Override
+	public long countStoredEvents() {
+		return this.count;
+	}
+
+	@Override
+	public StoredEventCursor storedEventCursorSince(long aStoredEventId, int aPageSize) {
+		return new StoredEventCursor(this, aStoredEventId, aPageSize);
+	}
+
+	@Override
+	public List<StoredEvent> storedEventsSince(long aStoredEventId, int aPageSize) {
+		if (aPageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be greater than zero.");
+		}
+
+		long count = this.count;
+
+		long lowEventId = Math.min(Math.max(aStoredEventId, 0L), count) + 1;
+
+		return this.read(lowEventId, Math.min(count, lowEventId + aPageSize - 1), this.segments);
+	}
+
+	private StoredEvent decode(ByteBuffer aBuffer, int aPosition, int aPayloadLength) {
+		byte[] payload = new byte[aPayloadLength - 8];
+
+		ByteBuffer record = aBuffer.duplicate();
+		record.position(aPosition + HEADER_LENGTH + 8);
+		record.get(payload);
+
+		int typeNameLength = ByteBuffer.wrap(payload).getInt();
+
+		String typeName = new String(payload, 4, typeNameLength, UTF_8);
+		String body = new String(payload, 4 + typeNameLength, payload.length - 4 - typeNameLength, UTF_8);
+
+		DomainEvent domainEvent =
+				EventSerializer.instance().deserialize(body, this.eventTypeOf(typeName));
+
+		StoredEvent storedEvent = new StoredEvent(domainEvent);
+
+		storedEvent.setEventId(aBuffer.getLong(aPosition + HEADER_LENGTH));
+
+		return storedEvent;
+	}
+
+	private Class<? extends DomainEvent> eventTypeOf(String aTypeName) {
+		Class<? extends DomainEvent> eventType = this.eventTypes.get(aTypeName);
+
+		if (eventType == null) {
+			try {
+				eventType = Class.forName(aTypeName).asSubclass(DomainEvent.class);
+			} catch (ClassNotFoundException e) {
+				throw new IllegalStateException("Unknown event type: " + aTypeName, e);
+			}
+
+			this.eventTypes.put(aTypeName, eventType);
+		}
+
+		return eventType;
+	}
+
+	private File fileOf(long aFirstEventId) {
+		return new File(this.directory, String.format("events-%020d.log", aFirstEventId));
+	}
+
+	private void open() throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create directory.");
+		}
+
+		List<Long> firstEventIds = new ArrayList<Long>();
+
+		for (String fileName : this.directory.list()) {
+			Matcher matcher = SEGMENT_FILE_NAME.matcher(fileName);
+
+			if (matcher.matches()) {
+				firstEventIds.add(Long.valueOf(matcher.group(1)));
+			}
+		}
+
+		Collections.sort(firstEventIds);
+
+		if (firstEventIds.isEmpty()) {
+			firstEventIds.add(1L);
+		}
+
+		Segment[] segments = new Segment[firstEventIds.size()];
+
+		long nextEventId = 1L;
+
+		for (int idx = 0; idx < segments.length; ++idx) {
+			long firstEventId = firstEventIds.get(idx);
+
+			if (firstEventId != nextEventId) {
+				throw new IOException("Missing events " + nextEventId + " through " + (firstEventId - 1) + ".");
+			}
+
+			segments[idx] = new Segment(firstEventId, this.fileOf(firstEventId), this.segmentSize);
+
+			boolean isLast = idx == segments.length - 1;
+
+			nextEventId = this.recover(segments[idx], isLast);
+		}
+
+		this.segments = segments;
+		this.count = nextEventId - 1;
+		this.committedCount = this.count;
+	}
+
+	private List<StoredEvent> read(long aLowEventId, long aHighEventId, Segment[] aSegments) {
+		if (aLowEventId > aHighEventId) {
+			return new ArrayList<StoredEvent>(0);
+		}
+
+		List<StoredEvent> storedEvents =
+				new ArrayList<StoredEvent>((int) Math.min(aHighEventId - aLowEventId + 1, 1024));
+
+		int segmentIndex = this.segmentIndexOf(aLowEventId, aSegments);
+
+		long eventId = aLowEventId;
+
+		while (eventId <= aHighEventId) {
+			Segment segment = aSegments[segmentIndex++];
+
+			ByteBuffer buffer = segment.buffer();
+
+			int position = segment.positionOf(eventId);
+
+			while (eventId <= aHighEventId && position + HEADER_LENGTH <= buffer.capacity()) {
+				int payloadLength = buffer.getInt(position);
+
+				if (payloadLength == 0) {
+					break;
+				}
+
+				if (buffer.getLong(position + HEADER_LENGTH) == eventId) {
+					storedEvents.add(this.decode(buffer, position, payloadLength));
+
+					++eventId;
+				}
+
+				position += HEADER_LENGTH + payloadLength;
+			}
+		}
+
+		return storedEvents;
+	}
+
+	private long recover(Segment aSegment, boolean isLast) throws IOException {
+		ByteBuffer buffer = aSegment.buffer();
+
+		long nextEventId = aSegment.firstEventId();
+		int position = 0;
+
+		while (position + HEADER_LENGTH <= buffer.capacity()) {
+			int payloadLength = buffer.getInt(position);
+
+			if (payloadLength < MINIMUM_PAYLOAD_LENGTH
+					|| position + HEADER_LENGTH + payloadLength > buffer.capacity()
+					|| buffer.getLong(position + HEADER_LENGTH) != nextEventId
+					|| !this.hasValidChecksum(buffer, position, payloadLength)) {
+				break;
+			}
+
+			aSegment.indexed(nextEventId++, position);
+
+			position += HEADER_LENGTH + payloadLength;
+		}
+
+		if (isLast) {
+			aSegment.truncateAt(position);
+
+		} else if (position + HEADER_LENGTH <= buffer.capacity() && buffer.getInt(position) != 0) {
+			throw new IOException("Corrupt segment: " + aSegment.file());
+		}
+
+		return nextEventId;
+	}
+
+	private boolean hasValidChecksum(ByteBuffer aBuffer, int aPosition, int aPayloadLength) {
+		byte[] payload = new byte[aPayloadLength];
+
+		ByteBuffer record = aBuffer.duplicate();
+		record.position(aPosition + HEADER_LENGTH);
+		record.get(payload);
+
+		CRC32 crc = new CRC32();
+
+		crc.update(payload, 0, payload.length);
+
+		return (int) crc.getValue() == aBuffer.getInt(aPosition + 4);
+	}
+
+	private int payloadLengthOf(byte[] aTypeName, byte[] aBody) {
+		return MINIMUM_PAYLOAD_LENGTH + aTypeName.length + aBody.length;
+	}
+
+	private void rollBack(Segment[] aSegments, int aPosition, int anIndexCount) {
+		Segment[] segments = this.segments;
+
+		for (int idx = aSegments.length; idx < segments.length; ++idx) {
+			segments[idx].close();
+
+			if (!segments[idx].file().delete()) {
+				System.out.println("Error: ROLL BACK SEGMENT: " + segments[idx].file() + " not deleted.");
+			}
+		}
+
+		this.segments = aSegments;
+
+		aSegments[aSegments.length - 1].rollBackTo(aPosition, anIndexCount);
+	}
+
+	private int segmentIndexOf(long anEventId, Segment[] aSegments) {
+		int low = 0;
+		int high = aSegments.length - 1;
+
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+
+			if (aSegments[middle].firstEventId() <= anEventId) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private void write(long anEventId, byte[] aTypeName, byte[] aBody) {
+		int payloadLength = this.payloadLengthOf(aTypeName, aBody);
+		int recordLength = HEADER_LENGTH + payloadLength;
+
+		Segment[] segments = this.segments;
+
+		Segment segment = segments[segments.length - 1];
+
+		if (segment.position() + recordLength > segment.buffer().capacity()) {
+			segment.force();
+
+			try {
+				segment = new Segment(anEventId, this.fileOf(anEventId), this.segmentSize);
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Cannot create segment for event: "
+						+ anEventId
+						+ " because: "
+						+ e.getMessage(),
+						e);
+			}
+
+			segments = Arrays.copyOf(segments, segments.length + 1);
+			segments[segments.length - 1] = segment;
+
+			this.segments = segments;
+		}
+
+		if (this.payload.capacity() < payloadLength) {
+			this.payload = ByteBuffer.allocate(Math.max(payloadLength, this.payload.capacity() * 2));
+		}
+
+		this.payload.clear();
+		this.payload.putLong(anEventId);
+		this.payload.putInt(aTypeName.length);
+		this.payload.put(aTypeName);
+		this.payload.put(aBody);
+
+		this.crc.reset();
+		this.crc.update(this.payload.array(), 0, payloadLength);
+
+		int position = segment.position();
+
+		ByteBuffer buffer = segment.buffer();
+
+		buffer.putInt(position + 4, (int) this.crc.getValue());
+
+		ByteBuffer record = buffer.duplicate();
+		record.position(position + HEADER_LENGTH);
+		record.put(this.payload.array(), 0, payloadLength);
+
+		// a record without its length is never read
+		buffer.putInt(position, payloadLength);
+
+		segment.indexed(anEventId, position);
+	}
+
+	private static class Segment {
+
+		private MappedByteBuffer buffer;
+		private FileChannel channel;
+		private File file;
+		private long firstEventId;
+		private volatile int[] index;
+		private int indexCount;
+		private int position;
+
+		Segment(long aFirstEventId, File aFile, int aSegmentSize) throws IOException {
+			super();
+
+			RandomAccessFile randomAccessFile = new RandomAccessFile(aFile, "rw");
+
+			long size = Math.max(randomAccessFile.length(), aSegmentSize);
+
+			this.channel = randomAccessFile.getChannel();
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			this.file = aFile;
+			this.firstEventId = aFirstEventId;
+			this.index = new int[16];
+			this.indexCount = 0;
+			this.position = 0;
+		}
+
+		ByteBuffer buffer() {
+			return this.buffer;
+		}
+
+		void close() {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				System.out.println("Error: CLOSE SEGMENT: " + this.file + " because: " + e.getMessage());
+			}
+		}
+
+		File file() {
+			return this.file;
+		}
+
+		long firstEventId() {
+			return this.firstEventId;
+		}
+
+		void force() {
+			this.buffer.force();
+		}
+
+		void indexed(long anEventId, int aPosition) {
+			long offset = anEventId - this.firstEventId;
+
+			if (offset % INDEX_INTERVAL == 0) {
+				int[] index = this.index;
+
+				if (this.indexCount == index.length) {
+					index = Arrays.copyOf(index, index.length * 2);
+				}
+
+				index[this.indexCount++] = aPosition;
+
+				this.index = index;
+			}
+
+			this.position = aPosition + HEADER_LENGTH + this.buffer.getInt(aPosition);
+		}
+
+		int indexCount() {
+			return this.indexCount;
+		}
+
+		int position() {
+			return this.position;
+		}
+
+		int positionOf(long anEventId) {
+			return this.index[(int) ((anEventId - this.firstEventId) / INDEX_INTERVAL)];
+		}
+
+		void rollBackTo(int aPosition, int anIndexCount) {
+			this.indexCount = anIndexCount;
+
+			this.truncateAt(aPosition);
+		}
+
+		void truncateAt(int aPosition) {
+			this.position = aPosition;
+
+			int end = aPosition;
+
+			int scan = aPosition;
+
+			for ( ; scan + 8 <= this.buffer.capacity(); scan += 8) {
+				if (this.buffer.getLong(scan) != 0L) {
+					end = scan + 8;
+				}
+			}
+
+			for ( ; scan < this.buffer.capacity(); ++scan) {
+				if (this.buffer.get(scan) != 0) {
+					end = scan + 1;
+				}
+			}
+
+			for (int clear = aPosition; clear < end; ++clear) {
+				this.buffer.put(clear, (byte) 0);
+			}
+
+			if (end > aPosition) {
+				this.buffer.force();
+			}
+		}
+	}
+
+	private class Committer extends Thread {
+
+		private volatile boolean closed;
+		private long commitInterval;
+
+		Committer(long aCommitInterval) {
+			super("MappedFileEventStoreCommitter");
+
+			this.commitInterval = aCommitInterval;
+
+			this.setDaemon(true);
+		}
+
+		void close() {
+			this.closed = true;
+
+			this.interrupt();
+		}
+
+		@Override
+		public void run() {
+			while (!this.closed) {
+				try {
+					Thread.sleep(this.commitInterval);
+				} catch (InterruptedException e) {
+					// closed; close() commits
+				}
+
+				try {
+					commit();
+				} catch (Exception e) {
+					System.out.println(
+							"Error: EVENT STORE COMMIT: because: "
+							+ e.getMessage());
+				}
+			}
+		}
+	}
+}
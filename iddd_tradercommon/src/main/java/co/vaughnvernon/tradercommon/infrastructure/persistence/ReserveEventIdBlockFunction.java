@@ -0,0 +1,92 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.util.Properties;
+
+import com.gemstone.gemfire.cache.Declarable;
+import com.gemstone.gemfire.cache.Region;
+import com.gemstone.gemfire.cache.execute.FunctionAdapter;
+import com.gemstone.gemfire.cache.execute.FunctionContext;
+import com.gemstone.gemfire.cache.execute.RegionFunctionContext;
+
+/**
+ * I run on the member hosting a sequence and atomically reserve a
+ * block of ids from it. The sequence is named by the single filter
+ * key and the block size is my argument. I answer the first id of
+ * the reserved block; a new sequence starts at 1.
+ *
+ * Because I compare-and-replace the sequence's last reserved id,
+ * concurrent reservations, whether from one client or many, never
+ * receive overlapping blocks.
+ */
+public class ReserveEventIdBlockFunction
+		extends FunctionAdapter
+		implements Declarable {
+
+	public static final String ID = ReserveEventIdBlockFunction.class.getName();
+
+	private static final long serialVersionUID = 1L;
+
+	public ReserveEventIdBlockFunction() {
+		super();
+	}
+
+	@Override
+	public void execute(FunctionContext aContext) {
+		RegionFunctionContext context = (RegionFunctionContext) aContext;
+
+		Region<String,Long> sequences = context.getDataSet();
+
+		String sequenceName = (String) context.getFilter().iterator().next();
+
+		int blockSize = (Integer) context.getArguments();
+
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size must be greater than zero.");
+		}
+
+		context.getResultSender().lastResult(this.reserve(sequences, sequenceName, blockSize));
+	}
+
+	@Override
+	public String getId() {
+		return ID;
+	}
+
+	@Override
+	public void init(Properties aProperties) {
+		// declared in the cluster configuration; has no properties
+	}
+
+	@Override
+	public boolean optimizeForWrite() {
+		return true;
+	}
+
+	private Long reserve(Region<String,Long> aSequences, String aSequenceName, int aBlockSize) {
+		while (true) {
+			Long lastReservedId = aSequences.get(aSequenceName);
+
+			if (lastReservedId == null) {
+				if (aSequences.putIfAbsent(aSequenceName, Long.valueOf(aBlockSize)) == null) {
+					return Long.valueOf(1L);
+				}
+			} else if (aSequences.replace(aSequenceName, lastReservedId, lastReservedId + aBlockSize)) {
+				return lastReservedId + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.monetary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * I provide fixed-point money arithmetic on primitive longs that
+ * hold amounts in ten-thousandths (units), the scale of Money. I
+ * allocate nothing, so I am meant for hot paths that would
+ * otherwise create a BigDecimal and a Money on every operation.
+ *
+ * All of my arithmetic is overflow-checked and throws an
+ * ArithmeticException rather than wrapping. Division rounds
+ * HALF_UP to four decimal places, just as Money.dividedBy() does.
+ * An amount converts losslessly to and from Money when it has no
+ * more than four decimal places and fewer than fifteen integer
+ * digits; see isRepresentable().
+ */
+public final class FixedPointMoney {
+
+	public static final int SCALE = 4;
+
+	public static final long UNITS_PER_WHOLE = 10000L;
+
+	private static final int MAXIMUM_INTEGER_DIGITS = 14;
+
+	public static long addedTo(long aUnits, long anOtherUnits) {
+		return Math.addExact(aUnits, anOtherUnits);
+	}
+
+	public static long dividedBy(long aUnits, long aQuantity) {
+		return divideHalfUp(aUnits, aQuantity);
+	}
+
+	public static long dividedByAmount(long aUnits, long aDivisorUnits) {
+		return divideHalfUp(Math.multiplyExact(aUnits, UNITS_PER_WHOLE), aDivisorUnits);
+	}
+
+	public static boolean isRepresentable(Money aMoney) {
+		return isRepresentable(aMoney.amount(), SCALE);
+	}
+
+	public static boolean isWholeQuantity(BigDecimal aQuantity) {
+		return isRepresentable(aQuantity, 0);
+	}
+
+	public static long multipliedBy(long aUnits, long aQuantity) {
+		return Math.multiplyExact(aUnits, aQuantity);
+	}
+
+	public static long multipliedByAmount(long aUnits, long anOtherUnits) {
+		return divideHalfUp(Math.multiplyExact(aUnits, anOtherUnits), UNITS_PER_WHOLE);
+	}
+
+	public static long subtract(long aUnits, long anOtherUnits) {
+		return Math.subtractExact(aUnits, anOtherUnits);
+	}
+
+	public static Money toMoney(long aUnits) {
+		return new Money(BigDecimal.valueOf(aUnits, SCALE));
+	}
+
+	public static long unitsOf(int aWholeAmount) {
+		return Math.multiplyExact((long) aWholeAmount, UNITS_PER_WHOLE);
+	}
+
+	public static long unitsOf(Money aMoney) {
+		if (!isRepresentable(aMoney)) {
+			throw new ArithmeticException("Not representable as fixed-point money: " + aMoney);
+		}
+
+		return unscaled(aMoney.amount(), RoundingMode.UNNECESSARY);
+	}
+
+	public static long unitsOfRounded(Money aMoney) {
+		return unscaled(aMoney.amount(), RoundingMode.HALF_UP);
+	}
+
+	public static long wholeQuantityOf(BigDecimal aQuantity) {
+		if (!isWholeQuantity(aQuantity)) {
+			throw new ArithmeticException("Not a whole quantity: " + aQuantity);
+		}
+
+		return aQuantity.longValueExact();
+	}
+
+	private static long divideHalfUp(long aDividend, long aDivisor) {
+		if (aDivisor == 0L) {
+			throw new ArithmeticException("Division by zero.");
+		}
+
+		if (aDividend == Long.MIN_VALUE && aDivisor == -1L) {
+			throw new ArithmeticException("long overflow");
+		}
+
+		long quotient = aDividend / aDivisor;
+		long remainder = aDividend % aDivisor;
+
+		if (remainder != 0L) {
+			long absoluteRemainder = Math.abs(remainder);
+			long absoluteDivisor = Math.abs(aDivisor);
+
+			// unsigned compare keeps |Long.MIN_VALUE| correct
+			if (Long.compareUnsigned(absoluteRemainder, absoluteDivisor - absoluteRemainder) >= 0) {
+				quotient += ((aDividend ^ aDivisor) < 0L) ? -1L : 1L;
+			}
+		}
+
+		return quotient;
+	}
+
+	private static boolean isRepresentable(BigDecimal anAmount, int aScale) {
+		if (anAmount.signum() == 0) {
+			return true;
+		}
+
+		if (anAmount.scale() > aScale && anAmount.stripTrailingZeros().scale() > aScale) {
+			return false;
+		}
+
+		return (anAmount.precision() - anAmount.scale()) <= (MAXIMUM_INTEGER_DIGITS + SCALE - aScale);
+	}
+
+	private static long unscaled(BigDecimal anAmount, RoundingMode aRoundingMode) {
+		BigDecimal amount =
+				anAmount.scale() == SCALE ?
+						anAmount :
+						anAmount.setScale(SCALE, aRoundingMode);
+
+		return amount.unscaledValue().longValueExact();
+	}
+
+	private FixedPointMoney() {
+		super();
+	}
+}
@@ -15,10 +15,15 @@
 package co.vaughnvernon.tradercommon.monetary;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 
-public final class Money {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public final class Money implements PdxSerializable {
 
 	private static final int SCALE = 4;
 
@@ -88,6 +93,14 @@ public final class Money {
 		return this.dividedBy(new BigDecimal(aQuantity));
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		BigInteger unscaledAmount = new BigInteger(aReader.readByteArray("unscaledAmount"));
+
+		this.setAmount(new BigDecimal(unscaledAmount, aReader.readInt("amountScale")));
+		this.setScale(aReader.readInt("scale"));
+	}
+
 	public boolean isGreaterThan(Money anAmount) {
 		return this.amount().compareTo(anAmount.amount()) > 0;
 	}
@@ -143,6 +156,14 @@ public final class Money {
 		return new Money(total, this.scale());
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeByteArray("unscaledAmount", this.amount().unscaledValue().toByteArray())
+			.writeInt("amountScale", this.amount().scale())
+			.writeInt("scale", this.scale());
+	}
+
 	@Override
 	public boolean equals(Object anObject) {
 		boolean equalObjects = false;
@@ -16,7 +16,11 @@ package co.vaughnvernon.tradercommon.order;
 
 import java.util.UUID;
 
-public final class AccountId {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public final class AccountId implements PdxSerializable {
 
 	private String id;
 
@@ -37,10 +41,20 @@ public final class AccountId {
 		super();
 	}	
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setId(aReader.readString("id"));
+	}
+
 	public String id() {
 		return this.id;
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter.writeString("id", this.id());
+	}
+
 	@Override
 	public boolean equals(Object anObject) {
 		boolean equalObjects = false;
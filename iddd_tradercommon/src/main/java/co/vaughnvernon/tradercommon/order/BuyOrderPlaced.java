@@ -20,7 +20,11 @@ import co.vaughnvernon.tradercommon.event.DomainEvent;
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.quote.Quote;
 
-public class BuyOrderPlaced implements DomainEvent {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public class BuyOrderPlaced implements DomainEvent, PdxSerializable {
 
 	private AccountId accountId;
 	private Money cost;
@@ -67,6 +71,18 @@ public class BuyOrderPlaced implements DomainEvent {
 		return 1;
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setAccountId((AccountId) aReader.readObject("accountId"));
+		this.setCost((Money) aReader.readObject("cost"));
+		this.setOccurredOn(aReader.readDate("occurredOn"));
+		this.setOrderFee((Money) aReader.readObject("orderFee"));
+		this.setOrderId((OrderId) aReader.readObject("orderId"));
+		this.setPlacedOnDate(aReader.readDate("placedOnDate"));
+		this.setQuantityOfSharesOrdered(aReader.readInt("quantityOfSharesOrdered"));
+		this.setQuote((Quote) aReader.readObject("quote"));
+	}
+
 	@Override
 	public Date occurredOn() {
 		return this.occurredOn;
@@ -92,6 +108,19 @@ public class BuyOrderPlaced implements DomainEvent {
 		return this.quote;
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeObject("accountId", this.accountId())
+			.writeObject("cost", this.cost())
+			.writeDate("occurredOn", this.occurredOn())
+			.writeObject("orderFee", this.orderFee())
+			.writeObject("orderId", this.orderId())
+			.writeDate("placedOnDate", this.placedOnDate())
+			.writeInt("quantityOfSharesOrdered", this.quantityOfSharesOrdered())
+			.writeObject("quote", this.quote());
+	}
+
 	private void setAccountId(AccountId anAccountId) {
 		this.accountId = anAccountId;
 	}
@@ -16,7 +16,11 @@ package co.vaughnvernon.tradercommon.order;
 
 import java.util.UUID;
 
-public final class OrderId {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public final class OrderId implements PdxSerializable {
 
 	private String id;
 	private String colocationId;
@@ -59,6 +63,19 @@ public final class OrderId {
 		return colocationId;
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setId(aReader.readString("id"));
+		this.setColocationId(aReader.readString("colocationId"));
+	}
+
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeString("id", this.id())
+			.writeString("colocationId", this.colocationId());
+	}
+
 	@Override
 	public boolean equals(Object anObject) {
 		boolean equalObjects = false;
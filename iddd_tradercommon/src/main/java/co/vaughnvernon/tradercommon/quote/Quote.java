@@ -18,7 +18,11 @@ import java.io.Serializable;
 
 import co.vaughnvernon.tradercommon.monetary.Money;
 
-public final class Quote implements Serializable {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public final class Quote implements Serializable, PdxSerializable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -50,6 +54,13 @@ public final class Quote implements Serializable {
 		super();
 	}
 	
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setPrice((Money) aReader.readObject("price"));
+		this.setQuantity(aReader.readInt("quantity"));
+		this.setTickerSymbol((TickerSymbol) aReader.readObject("tickerSymbol"));
+	}
+
 	public boolean hasTickerSymbol(TickerSymbol aTickerSymbol) {
 		return this.tickerSymbol().equals(aTickerSymbol);
 	}
@@ -66,6 +77,14 @@ public final class Quote implements Serializable {
 		return this.tickerSymbol;
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter
+			.writeObject("price", this.price())
+			.writeInt("quantity", this.quantity())
+			.writeObject("tickerSymbol", this.tickerSymbol());
+	}
+
 	public Money valueOfPricedShares(int aQuantity) {
 		return this.price().multipliedBy(aQuantity);
 	}
@@ -16,9 +16,14 @@ package co.vaughnvernon.tradercommon.quote;
 
 import co.vaughnvernon.tradercommon.monetary.Money;
 
+/**
+ * I am the latest quote of one symbol. My quote is immutable and
+ * is replaced as a whole on each update, so readers always see a
+ * complete quote without taking a lock.
+ */
 public class StreamingQuote {
 
-	private Quote quote;
+	private volatile Quote quote;
 	private String symbol;
 
 	public StreamingQuote(Quote aQuote) {
@@ -43,15 +43,23 @@ public class StreamingQuoteApplicationService {
 					.streamingQuoteOfSymbol(aQuoteBar.symbol());
 
 		if (streamingQuote == null) {
-			streamingQuote =
+			StreamingQuote newStreamingQuote =
 					new StreamingQuote(
 							new Quote(
-									new TickerSymbol(aQuoteBar.symbol()),
+									SymbolRegistry.instance().tickerSymbolOf(aQuoteBar.symbolId()),
 									aQuoteBar.price()));
-		} else {
-			streamingQuote.updateWith(aQuoteBar.price());
+
+			streamingQuote =
+					this.streamingQuoteRepository()
+						.saveIfAbsent(newStreamingQuote);
+
+			if (streamingQuote == newStreamingQuote) {
+				return;
+			}
 		}
 
+		streamingQuote.updateWith(aQuoteBar.price());
+
 		this.streamingQuoteRepository().save(streamingQuote);
 	}
 
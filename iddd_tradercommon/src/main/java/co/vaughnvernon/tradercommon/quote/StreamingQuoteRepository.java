@@ -21,4 +21,6 @@ public interface StreamingQuoteRepository {
 	public void remove(StreamingQuote aStreamingQuote);
 
 	public void save(StreamingQuote aStreamingQuote);
+
+	public StreamingQuote saveIfAbsent(StreamingQuote aStreamingQuote);
 }
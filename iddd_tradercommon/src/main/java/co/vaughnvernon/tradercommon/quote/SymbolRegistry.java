@@ -0,0 +1,123 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quote;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * I intern ticker symbols, assigning each a dense int id the
+ * first time it is seen. Ids start at zero and are never reused,
+ * so per-symbol state may be kept in arrays indexed by id, such
+ * as a SymbolTable. Looking up a symbol already interned takes no
+ * lock, and I keep one shared TickerSymbol for each id so that
+ * callers need not create one per quote bar.
+ */
+public final class SymbolRegistry {
+
+	private static SymbolRegistry instance;
+
+	private ConcurrentMap<String,Integer> ids;
+	private int size;
+	private volatile String[] symbols;
+	private volatile TickerSymbol[] tickerSymbols;
+
+	public static synchronized SymbolRegistry instance() {
+		if (instance == null) {
+			instance = new SymbolRegistry();
+		}
+
+		return instance;
+	}
+
+	public int existingIdOf(String aSymbol) {
+		Integer id = aSymbol == null ? null : this.ids.get(aSymbol);
+
+		return id == null ? -1 : id.intValue();
+	}
+
+	public int idOf(String aSymbol) {
+		if (aSymbol == null) {
+			throw new IllegalArgumentException("Symbol must be provided.");
+		}
+
+		Integer id = this.ids.get(aSymbol);
+
+		if (id == null) {
+			id = this.intern(aSymbol);
+		}
+
+		return id.intValue();
+	}
+
+	public int size() {
+		return this.symbols().length;
+	}
+
+	public String symbolOf(int anId) {
+		return this.symbols()[anId];
+	}
+
+	public TickerSymbol tickerSymbolOf(int anId) {
+		return this.tickerSymbols[anId];
+	}
+
+	public TickerSymbol tickerSymbolOf(String aSymbol) {
+		return this.tickerSymbolOf(this.idOf(aSymbol));
+	}
+
+	private synchronized Integer intern(String aSymbol) {
+		if (aSymbol.trim().isEmpty()) {
+			throw new IllegalArgumentException("Symbol must be provided.");
+		}
+
+		Integer id = this.ids.get(aSymbol);
+
+		if (id == null) {
+			id = Integer.valueOf(this.size);
+
+			TickerSymbol[] tickerSymbols = Arrays.copyOf(this.tickerSymbols, this.size + 1);
+
+			tickerSymbols[this.size] = new TickerSymbol(aSymbol);
+
+			this.tickerSymbols = tickerSymbols;
+
+			String[] symbols = Arrays.copyOf(this.symbols(), this.size + 1);
+
+			symbols[this.size] = aSymbol;
+
+			this.symbols = symbols;
+
+			++this.size;
+
+			this.ids.put(aSymbol, id);
+		}
+
+		return id;
+	}
+
+	private String[] symbols() {
+		return this.symbols;
+	}
+
+	private SymbolRegistry() {
+		super();
+
+		this.ids = new ConcurrentHashMap<String,Integer>();
+		this.symbols = new String[0];
+		this.tickerSymbols = new TickerSymbol[0];
+	}
+}
@@ -0,0 +1,140 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * I hold one value per ticker symbol in an array indexed by the
+ * symbol's SymbolRegistry id, so a lookup is an array read rather
+ * than String hashing and equals. Reads take no lock; writes are
+ * serialized so that growing my array never loses a value.
+ */
+public class SymbolTable<V> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private volatile AtomicReferenceArray<V> entries;
+	private SymbolRegistry symbolRegistry;
+
+	public SymbolTable() {
+		this(SymbolRegistry.instance());
+	}
+
+	public SymbolTable(SymbolRegistry aSymbolRegistry) {
+		super();
+
+		if (aSymbolRegistry == null) {
+			throw new IllegalArgumentException("Symbol registry must be provided.");
+		}
+
+		this.entries = new AtomicReferenceArray<V>(INITIAL_CAPACITY);
+		this.symbolRegistry = aSymbolRegistry;
+	}
+
+	public synchronized void clear() {
+		this.entries = new AtomicReferenceArray<V>(INITIAL_CAPACITY);
+	}
+
+	public V get(int aSymbolId) {
+		AtomicReferenceArray<V> entries = this.entries;
+
+		return aSymbolId < entries.length() ? entries.get(aSymbolId) : null;
+	}
+
+	public V get(String aSymbol) {
+		int symbolId = this.symbolRegistry.existingIdOf(aSymbol);
+
+		return symbolId < 0 ? null : this.get(symbolId);
+	}
+
+	public synchronized V put(int aSymbolId, V aValue) {
+		return this.entriesFor(aSymbolId).getAndSet(aSymbolId, aValue);
+	}
+
+	public V put(String aSymbol, V aValue) {
+		return this.put(this.symbolRegistry.idOf(aSymbol), aValue);
+	}
+
+	public synchronized V putIfAbsent(int aSymbolId, V aValue) {
+		AtomicReferenceArray<V> entries = this.entriesFor(aSymbolId);
+
+		V existing = entries.get(aSymbolId);
+
+		if (existing == null) {
+			entries.set(aSymbolId, aValue);
+		}
+
+		return existing;
+	}
+
+	public V putIfAbsent(String aSymbol, V aValue) {
+		return this.putIfAbsent(this.symbolRegistry.idOf(aSymbol), aValue);
+	}
+
+	public synchronized V remove(int aSymbolId) {
+		AtomicReferenceArray<V> entries = this.entries;
+
+		return aSymbolId < entries.length() ? entries.getAndSet(aSymbolId, null) : null;
+	}
+
+	public V remove(String aSymbol) {
+		int symbolId = this.symbolRegistry.existingIdOf(aSymbol);
+
+		return symbolId < 0 ? null : this.remove(symbolId);
+	}
+
+	public SymbolRegistry symbolRegistry() {
+		return this.symbolRegistry;
+	}
+
+	public List<V> values() {
+		AtomicReferenceArray<V> entries = this.entries;
+
+		List<V> values = new ArrayList<V>();
+
+		for (int idx = 0; idx < entries.length(); ++idx) {
+			V value = entries.get(idx);
+
+			if (value != null) {
+				values.add(value);
+			}
+		}
+
+		return values;
+	}
+
+	private AtomicReferenceArray<V> entriesFor(int aSymbolId) {
+		AtomicReferenceArray<V> entries = this.entries;
+
+		if (aSymbolId >= entries.length()) {
+			int capacity = Math.max(aSymbolId + 1, entries.length() * 2);
+
+			AtomicReferenceArray<V> grown = new AtomicReferenceArray<V>(capacity);
+
+			for (int idx = 0; idx < entries.length(); ++idx) {
+				grown.set(idx, entries.get(idx));
+			}
+
+			this.entries = grown;
+
+			entries = grown;
+		}
+
+		return entries;
+	}
+}
@@ -16,7 +16,11 @@ package co.vaughnvernon.tradercommon.quote;
 
 import java.io.Serializable;
 
-public final class TickerSymbol implements Serializable {
+import com.gemstone.gemfire.pdx.PdxReader;
+import com.gemstone.gemfire.pdx.PdxSerializable;
+import com.gemstone.gemfire.pdx.PdxWriter;
+
+public final class TickerSymbol implements Serializable, PdxSerializable {
 
 	private static final long serialVersionUID = 1L;
 
@@ -38,10 +42,20 @@ public final class TickerSymbol implements Serializable {
 		super();
 	}
 
+	@Override
+	public void fromData(PdxReader aReader) {
+		this.setSymbol(aReader.readString("symbol"));
+	}
+
 	public String symbol() {
 		return this.symbol;
 	}
 
+	@Override
+	public void toData(PdxWriter aWriter) {
+		aWriter.writeString("symbol", this.symbol());
+	}
+
 	@Override
 	public boolean equals(Object anObject) {
 		boolean equalObjects = false;
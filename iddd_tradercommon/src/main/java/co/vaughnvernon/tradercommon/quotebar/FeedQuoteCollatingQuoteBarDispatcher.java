@@ -22,10 +22,12 @@ import java.util.List;
 import java.util.Map;
 
 import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweight;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweightSubscriber;
 import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteSubscriber;
 
 public class FeedQuoteCollatingQuoteBarDispatcher
-		implements FeedQuoteSubscriber, QuoteBarDispatcher {
+		implements FeedQuoteFlyweightSubscriber, FeedQuoteSubscriber, QuoteBarDispatcher {
 
 	private Map<String,CollatedFeedQuotes> collatedFeedQuotes;
 	private int maximumQuoteCount;
@@ -49,17 +51,14 @@ public class FeedQuoteCollatingQuoteBarDispatcher
 
 	@Override
 	public synchronized void receive(FeedQuote aFeedQuote) {
-		String symbol = aFeedQuote.symbol();
+		this.collatedFeedQuotesOf(aFeedQuote.symbol()).addFeedQuote(aFeedQuote);
 
-		CollatedFeedQuotes collated = this.collatedFeedQuotes.get(symbol);
-
-		if (collated == null) {
-			collated = new CollatedFeedQuotes();
-
-			this.collatedFeedQuotes.put(symbol, collated);
-		}
+		this.aggregateOnThresholdsReached();
+	}
 
-		collated.addFeedQuote(aFeedQuote);
+	@Override
+	public synchronized void receive(FeedQuoteFlyweight aFeedQuote) {
+		this.collatedFeedQuotesOf(aFeedQuote.symbol()).addFeedQuote(aFeedQuote);
 
 		this.aggregateOnThresholdsReached();
 	}
@@ -97,6 +96,18 @@ public class FeedQuoteCollatingQuoteBarDispatcher
 		this.dispatchAggregatedQuoteBars(collatesToAggregate.values());
 	}
 
+	private CollatedFeedQuotes collatedFeedQuotesOf(String aSymbol) {
+		CollatedFeedQuotes collated = this.collatedFeedQuotes.get(aSymbol);
+
+		if (collated == null) {
+			collated = new CollatedFeedQuotes();
+
+			this.collatedFeedQuotes.put(aSymbol, collated);
+		}
+
+		return collated;
+	}
+
 	private void dispatchAggregatedQuoteBars(
 			final Collection<CollatedFeedQuotes> aCollatesToAggregate) {
 
@@ -104,9 +115,7 @@ public class FeedQuoteCollatingQuoteBarDispatcher
 			@Override
 			public void run() {
 				for (CollatedFeedQuotes collate : aCollatesToAggregate) {
-					QuoteBar quoteBar = quoteBarAggregator.aggregateFrom(collate.feedQuotes);
-
-					dispatch(quoteBar);
+					dispatch(collate.quoteBarBuilder.build());
 				}
 			}
 		};
@@ -115,22 +124,26 @@ public class FeedQuoteCollatingQuoteBarDispatcher
 	}
 
 	private class CollatedFeedQuotes {
-		private List<FeedQuote> feedQuotes;
+		private QuoteBarBuilder quoteBarBuilder;
 		private long startTime;
 
 		CollatedFeedQuotes() {
 			super();
 
-			this.feedQuotes = new ArrayList<FeedQuote>();
+			this.quoteBarBuilder = quoteBarAggregator.newQuoteBarBuilder();
 			this.startTime = new Date().getTime();
 		}
 
 		public void addFeedQuote(FeedQuote aFeedQuote) {
-			this.feedQuotes.add(aFeedQuote);
+			this.quoteBarBuilder.add(aFeedQuote);
+		}
+
+		public void addFeedQuote(FeedQuoteFlyweight aFeedQuote) {
+			this.quoteBarBuilder.add(aFeedQuote);
 		}
 
 		public boolean isThresholdReached() {
-			if (this.feedQuotes.size() >= maximumQuoteCount) {
+			if (this.quoteBarBuilder.totalQuotesInBar() >= maximumQuoteCount) {
 				return true;
 			}
 
@@ -19,6 +19,7 @@ import java.util.Collection;
 
 import co.vaughnvernon.tradercommon.monetary.Money;
 import co.vaughnvernon.tradercommon.pricevolume.PriceVolume;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
 
 public final class QuoteBar {
 
@@ -30,6 +31,7 @@ public final class QuoteBar {
 	private Money price;
 	private Money priceVolume;
 	private String symbol;
+	private transient Integer symbolId;
 	private BigDecimal totalQuantity;
 	private int totalQuotesInBar;
 	private BigDecimal volume;
@@ -63,6 +65,35 @@ public final class QuoteBar {
 		this.calculatePriceVolume(aPriceVolumes);
 	}
 
+	QuoteBar(
+			String aCompanyName,
+			String aSymbol,
+			Money aPrice,
+			Money anOpen,
+			Money aClose,
+			Money aHigh,
+			Money aLow,
+			BigDecimal aVolume,
+			Money aTotalPriceVolume,
+			BigDecimal aTotalQuantity,
+			int aTotalQuotesInBar) {
+
+		super();
+
+		this.setClose(aClose);
+		this.setCompanyName(aCompanyName);
+		this.setHigh(aHigh);
+		this.setLow(aLow);
+		this.setOpen(anOpen);
+		this.setPrice(aPrice);
+		this.setSymbol(aSymbol);
+		this.setTotalQuantity(aTotalQuantity);
+		this.setTotalQuotesInBar(aTotalQuotesInBar);
+		this.setVolume(aVolume);
+
+		this.setPriceVolume(aTotalPriceVolume.dividedBy(aVolume));
+	}
+
 	public Money change() {
 		return this.close().subtract(this.open());
 	}
@@ -99,6 +130,14 @@ public final class QuoteBar {
 		return this.symbol;
 	}
 
+	public int symbolId() {
+		if (this.symbolId == null) {
+			this.symbolId = SymbolRegistry.instance().idOf(this.symbol());
+		}
+
+		return this.symbolId;
+	}
+
 	public BigDecimal totalQuantity() {
 		return this.totalQuantity;
 	}
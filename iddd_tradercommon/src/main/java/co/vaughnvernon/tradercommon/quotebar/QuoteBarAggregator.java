@@ -26,6 +26,10 @@ import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
 
 public class QuoteBarAggregator {
 
+	public QuoteBarBuilder newQuoteBarBuilder() {
+		return new QuoteBarBuilder();
+	}
+
 	public QuoteBar aggregateFrom(Collection<FeedQuote> aQuoteCollection) {
 
 		Iterator<FeedQuote> iterator = aQuoteCollection.iterator();
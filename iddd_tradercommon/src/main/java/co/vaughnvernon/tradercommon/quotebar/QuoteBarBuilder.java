@@ -0,0 +1,305 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotebar;
+
+import java.math.BigDecimal;
+
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
+import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweight;
+
+/**
+ * I build a QuoteBar incrementally by folding each FeedQuote
+ * into running totals as it arrives, so I never hold the raw
+ * quotes of the bar. The QuoteBar I build is identical to the
+ * one QuoteBarAggregator aggregates from the same quotes.
+ *
+ * While prices and volumes fit FixedPointMoney I sum price * volume
+ * in fixed-point units, falling back to Money for the rest of the
+ * bar once a quote does not fit.
+ *
+ * Quotes added as FixedPointMoney units, such as those of a
+ * FeedQuoteFlyweight, are folded entirely in units and allocate
+ * nothing until build(). Should a FeedQuote be added to the same
+ * bar, or a unit total overflow, I continue the bar in Money.
+ *
+ * I am not thread-safe; a bar is built by one thread at a time.
+ */
+public class QuoteBarBuilder {
+
+	private Money close;
+	private long closeUnits;
+	private String companyName;
+	private boolean fixedPoint;
+	private Money high;
+	private long highUnits;
+	private Money low;
+	private long lowUnits;
+	private Money open;
+	private long openUnits;
+	private Money price;
+	private long priceUnits;
+	private String symbol;
+	private Money totalPriceVolume;
+	private long totalPriceVolumeUnits;
+	private BigDecimal totalQuantity;
+	private int totalQuotesInBar;
+	private BigDecimal totalVolume;
+	private long totalWholeQuantity;
+	private long totalWholeVolume;
+
+	public QuoteBarBuilder() {
+		super();
+
+		this.high = new Money(BigDecimal.valueOf(Integer.MIN_VALUE));
+		this.low = new Money(BigDecimal.valueOf(Integer.MAX_VALUE));
+		this.totalQuantity = BigDecimal.ZERO;
+		this.totalVolume = BigDecimal.ZERO;
+	}
+
+	public QuoteBarBuilder add(FeedQuote aFeedQuote) {
+		if (aFeedQuote == null) {
+			throw new IllegalArgumentException("Feed quote must be provided.");
+		}
+
+		this.inflate();
+
+		if (this.isEmpty()) {
+			this.close = aFeedQuote.close();
+			this.companyName = aFeedQuote.companyName();
+			this.open = aFeedQuote.open();
+			this.symbol = aFeedQuote.symbol();
+		}
+
+		if (this.high.isLessThan(aFeedQuote.high())) {
+			this.high = aFeedQuote.high();
+		}
+
+		if (this.low.isGreaterThan(aFeedQuote.low())) {
+			this.low = aFeedQuote.low();
+		}
+
+		this.price = aFeedQuote.price();
+
+		this.accumulatePriceVolume(aFeedQuote.price(), aFeedQuote.volume());
+
+		this.totalQuantity = this.totalQuantity.add(aFeedQuote.quantity());
+
+		this.totalVolume = this.totalVolume.add(aFeedQuote.volume());
+
+		++this.totalQuotesInBar;
+
+		return this;
+	}
+
+	public QuoteBarBuilder add(FeedQuoteFlyweight aFeedQuote) {
+		if (aFeedQuote == null) {
+			throw new IllegalArgumentException("Feed quote must be provided.");
+		}
+
+		return this.add(
+				aFeedQuote.companyName(),
+				aFeedQuote.symbolId(),
+				aFeedQuote.highUnits(),
+				aFeedQuote.lowUnits(),
+				aFeedQuote.openUnits(),
+				aFeedQuote.closeUnits(),
+				aFeedQuote.priceUnits(),
+				aFeedQuote.wholeQuantity(),
+				aFeedQuote.wholeVolume());
+	}
+
+	public QuoteBarBuilder add(
+			String aCompanyName,
+			int aSymbolId,
+			long aHighUnits,
+			long aLowUnits,
+			long anOpenUnits,
+			long aCloseUnits,
+			long aPriceUnits,
+			long aWholeQuantity,
+			long aWholeVolume) {
+
+		if (!this.isEmpty() && !this.fixedPoint) {
+			return this.add(this.feedQuoteOf(
+					aCompanyName, aSymbolId, aHighUnits, aLowUnits, anOpenUnits,
+					aCloseUnits, aPriceUnits, aWholeQuantity, aWholeVolume));
+		}
+
+		long totalWholeQuantity;
+		long totalWholeVolume;
+
+		try {
+			totalWholeQuantity = Math.addExact(this.totalWholeQuantity, aWholeQuantity);
+			totalWholeVolume = Math.addExact(this.totalWholeVolume, aWholeVolume);
+
+		} catch (ArithmeticException e) {
+			return this.add(this.feedQuoteOf(
+					aCompanyName, aSymbolId, aHighUnits, aLowUnits, anOpenUnits,
+					aCloseUnits, aPriceUnits, aWholeQuantity, aWholeVolume));
+		}
+
+		if (this.isEmpty()) {
+			this.fixedPoint = true;
+			this.closeUnits = aCloseUnits;
+			this.companyName = aCompanyName;
+			this.highUnits = aHighUnits;
+			this.lowUnits = aLowUnits;
+			this.openUnits = anOpenUnits;
+			this.symbol = SymbolRegistry.instance().symbolOf(aSymbolId);
+		}
+
+		if (this.highUnits < aHighUnits) {
+			this.highUnits = aHighUnits;
+		}
+
+		if (this.lowUnits > aLowUnits) {
+			this.lowUnits = aLowUnits;
+		}
+
+		this.priceUnits = aPriceUnits;
+
+		this.accumulatePriceVolume(aPriceUnits, aWholeVolume);
+
+		this.totalWholeQuantity = totalWholeQuantity;
+
+		this.totalWholeVolume = totalWholeVolume;
+
+		++this.totalQuotesInBar;
+
+		return this;
+	}
+
+	public QuoteBar build() {
+		if (this.isEmpty()) {
+			throw new IllegalStateException("At least one feed quote must be added.");
+		}
+
+		this.inflate();
+
+		return new QuoteBar(
+				this.companyName,
+				this.symbol,
+				this.price,
+				this.open,
+				this.close,
+				this.high,
+				this.low,
+				this.totalVolume,
+				this.totalPriceVolume(),
+				this.totalQuantity,
+				this.totalQuotesInBar);
+	}
+
+	public boolean isEmpty() {
+		return this.totalQuotesInBar == 0;
+	}
+
+	public int totalQuotesInBar() {
+		return this.totalQuotesInBar;
+	}
+
+	private void accumulatePriceVolume(Money aPrice, BigDecimal aVolume) {
+		if (this.totalPriceVolume == null &&
+			FixedPointMoney.isRepresentable(aPrice) &&
+			FixedPointMoney.isWholeQuantity(aVolume)) {
+
+			try {
+				this.totalPriceVolumeUnits =
+						FixedPointMoney.addedTo(
+								this.totalPriceVolumeUnits,
+								FixedPointMoney.multipliedBy(
+										FixedPointMoney.unitsOf(aPrice),
+										aVolume.longValueExact()));
+				return;
+
+			} catch (ArithmeticException e) {
+				// overflowed; continue with Money
+			}
+		}
+
+		this.totalPriceVolume =
+				this.totalPriceVolume().addedTo(aPrice.multipliedBy(aVolume));
+	}
+
+	private void accumulatePriceVolume(long aPriceUnits, long aWholeVolume) {
+		if (this.totalPriceVolume == null) {
+			try {
+				this.totalPriceVolumeUnits =
+						FixedPointMoney.addedTo(
+								this.totalPriceVolumeUnits,
+								FixedPointMoney.multipliedBy(aPriceUnits, aWholeVolume));
+				return;
+
+			} catch (ArithmeticException e) {
+				// overflowed; continue with Money
+			}
+		}
+
+		this.totalPriceVolume =
+				this.totalPriceVolume().addedTo(
+						FixedPointMoney.toMoney(aPriceUnits)
+							.multipliedBy(BigDecimal.valueOf(aWholeVolume)));
+	}
+
+	private FeedQuote feedQuoteOf(
+			String aCompanyName,
+			int aSymbolId,
+			long aHighUnits,
+			long aLowUnits,
+			long anOpenUnits,
+			long aCloseUnits,
+			long aPriceUnits,
+			long aWholeQuantity,
+			long aWholeVolume) {
+
+		return new FeedQuote(
+				aCompanyName,
+				FixedPointMoney.toMoney(aHighUnits),
+				FixedPointMoney.toMoney(aLowUnits),
+				FixedPointMoney.toMoney(anOpenUnits),
+				FixedPointMoney.toMoney(aCloseUnits),
+				FixedPointMoney.toMoney(aPriceUnits),
+				BigDecimal.valueOf(aWholeQuantity),
+				SymbolRegistry.instance().symbolOf(aSymbolId),
+				BigDecimal.valueOf(aWholeVolume));
+	}
+
+	private void inflate() {
+		if (!this.fixedPoint) {
+			return;
+		}
+
+		this.close = FixedPointMoney.toMoney(this.closeUnits);
+		this.high = FixedPointMoney.toMoney(this.highUnits);
+		this.low = FixedPointMoney.toMoney(this.lowUnits);
+		this.open = FixedPointMoney.toMoney(this.openUnits);
+		this.price = FixedPointMoney.toMoney(this.priceUnits);
+		this.totalQuantity = BigDecimal.valueOf(this.totalWholeQuantity);
+		this.totalVolume = BigDecimal.valueOf(this.totalWholeVolume);
+
+		this.fixedPoint = false;
+	}
+
+	private Money totalPriceVolume() {
+		if (this.totalPriceVolume == null) {
+			return FixedPointMoney.toMoney(this.totalPriceVolumeUnits);
+		}
+
+		return this.totalPriceVolume;
+	}
+}
@@ -14,11 +14,44 @@
 
 package co.vaughnvernon.tradercommon.quotebar;
 
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweightSubscriber;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuotePublisher;
 import co.vaughnvernon.tradercommon.quotefeed.FeedQuotePublisherFactory;
 import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteSubscriber;
+import co.vaughnvernon.tradercommon.quotefeed.FlyweightRingBufferMessenger;
 
 public class QuoteBarDispatcherFactory {
 
+	public static final String DISPATCHER_TYPE_PROPERTY =
+			"tradercommon.quotebar.dispatcher";
+
+	public enum DispatcherType {
+		Collating {
+			@Override
+			protected QuoteBarDispatcher newDispatcher() {
+				return new FeedQuoteCollatingQuoteBarDispatcher(
+						new QuoteBarAggregator(),
+						TIMEOUT_THRESHOLD,
+						MAXIMUM_QUOTE_COUNT);
+			}
+		},
+
+		Sharded {
+			@Override
+			protected QuoteBarDispatcher newDispatcher() {
+				return new ShardedFeedQuoteCollatingQuoteBarDispatcher(
+						new QuoteBarAggregator(),
+						TIMEOUT_THRESHOLD,
+						MAXIMUM_QUOTE_COUNT);
+			}
+		};
+
+		protected abstract QuoteBarDispatcher newDispatcher();
+	}
+
+	private static final int MAXIMUM_QUOTE_COUNT = 100;
+	private static final long TIMEOUT_THRESHOLD = 2000L;
+
 	private static QuoteBarDispatcher dispatcher;
 	private static QuoteBarDispatcherFactory instance;
 
@@ -27,16 +60,24 @@ public class QuoteBarDispatcherFactory {
 
 			instance = new QuoteBarDispatcherFactory();
 
-			dispatcher =
-					new FeedQuoteCollatingQuoteBarDispatcher(
-							new QuoteBarAggregator(),
-							2000L,
-							100);
+			DispatcherType dispatcherType =
+					DispatcherType.valueOf(
+							System.getProperty(
+									DISPATCHER_TYPE_PROPERTY,
+									DispatcherType.Sharded.name()));
+
+			dispatcher = dispatcherType.newDispatcher();
+
+			FeedQuotePublisher publisher =
+					FeedQuotePublisherFactory.instance().publisher();
 
-			FeedQuotePublisherFactory
-				.instance()
-				.publisher()
-				.subscribe((FeedQuoteSubscriber) dispatcher);
+			if (publisher instanceof FlyweightRingBufferMessenger) {
+				// avoids materializing a FeedQuote per tick
+				((FlyweightRingBufferMessenger) publisher)
+					.subscribeFlyweight((FeedQuoteFlyweightSubscriber) dispatcher);
+			} else {
+				publisher.subscribe((FeedQuoteSubscriber) dispatcher);
+			}
 		}
 
 		return instance;
@@ -0,0 +1,485 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotebar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweight;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteFlyweightSubscriber;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteSubscriber;
+
+/**
+ * I collate FeedQuote instances into QuoteBar instances the same
+ * way as FeedQuoteCollatingQuoteBarDispatcher, but I spread symbols
+ * by their SymbolRegistry id across a number of single-threaded
+ * shards. A shard keeps its open bars in an array indexed by symbol
+ * id, checks thresholds only for the symbol that just ticked, expires
+ * timed-out bars with a timer wheel, and hands finished bars to its
+ * own bounded dispatch lane so that bars of the same symbol are
+ * dispatched in order.
+ *
+ * A shard queues its quotes in a fixed pool of reused slots. A
+ * FeedQuoteFlyweight is copied into a slot as FixedPointMoney units
+ * and folded into its bar in units, so flyweight quotes are collated
+ * without allocating a FeedQuote per tick.
+ */
+public class ShardedFeedQuoteCollatingQuoteBarDispatcher
+		implements FeedQuoteFlyweightSubscriber, FeedQuoteSubscriber, QuoteBarDispatcher {
+
+	private static final int DISPATCH_QUEUE_CAPACITY = 1024;
+	private static final int SHARD_QUEUE_CAPACITY = 8192;
+	private static final int TIMER_WHEEL_SIZE = 64;
+	private static final int TIMER_WHEEL_TICKS_PER_TIMEOUT = 32;
+
+	private volatile boolean closed;
+	private int maximumQuoteCount;
+	private QuoteBarAggregator quoteBarAggregator;
+	private List<QuoteBarInterest> quoteBarInterests;
+	private Shard[] shards;
+	private long timeoutThreshold;
+
+	public ShardedFeedQuoteCollatingQuoteBarDispatcher(
+			QuoteBarAggregator aQuoteBarAggregator,
+			long aTimeoutThreshold,
+			int aMaximumQuoteCount) {
+
+		this(aQuoteBarAggregator,
+			 aTimeoutThreshold,
+			 aMaximumQuoteCount,
+			 Runtime.getRuntime().availableProcessors());
+	}
+
+	public ShardedFeedQuoteCollatingQuoteBarDispatcher(
+			QuoteBarAggregator aQuoteBarAggregator,
+			long aTimeoutThreshold,
+			int aMaximumQuoteCount,
+			int aShardCount) {
+
+		super();
+
+		if (aShardCount <= 0) {
+			throw new IllegalArgumentException("Shard count must be greater than zero.");
+		}
+
+		this.maximumQuoteCount = aMaximumQuoteCount;
+		this.quoteBarAggregator = aQuoteBarAggregator;
+		this.quoteBarInterests = new CopyOnWriteArrayList<QuoteBarInterest>();
+		this.timeoutThreshold = aTimeoutThreshold;
+
+		this.shards = new Shard[aShardCount];
+
+		for (int idx = 0; idx < aShardCount; ++idx) {
+			this.shards[idx] = new Shard(idx);
+			this.shards[idx].start();
+		}
+	}
+
+	public void close() {
+		this.closed = true;
+
+		for (Shard shard : this.shards) {
+			shard.interrupt();
+			shard.dispatchLane().shutdown();
+		}
+	}
+
+	public int shardCount() {
+		return this.shards.length;
+	}
+
+	@Override
+	public void receive(FeedQuote aFeedQuote) {
+		this.shardOf(aFeedQuote.symbolId()).enqueue(aFeedQuote);
+	}
+
+	@Override
+	public void receive(FeedQuoteFlyweight aFeedQuote) {
+		this.shardOf(aFeedQuote.symbolId()).enqueue(aFeedQuote);
+	}
+
+	@Override
+	public void dispatch(QuoteBar aQuoteBar) {
+		for (QuoteBarInterest interest : this.quoteBarInterests) {
+			interest.inform(aQuoteBar);
+		}
+	}
+
+	@Override
+	public void registerQuoteBarInterest(QuoteBarInterest aQuoteBarInterest) {
+		this.quoteBarInterests.add(aQuoteBarInterest);
+	}
+
+	private Shard shardOf(int aSymbolId) {
+		return this.shards[aSymbolId % this.shards.length];
+	}
+
+	private class Shard extends Thread {
+		private CollatedFeedQuotes[] collatedFeedQuotes;
+		private ThreadPoolExecutor dispatchLane;
+		private List<CollatedFeedQuotes> expired;
+		private BlockingQueue<QuoteSlot> feedQuotes;
+		private BlockingQueue<QuoteSlot> freeSlots;
+		private TimerWheel timerWheel;
+
+		Shard(int aShardNumber) {
+			super("QuoteBarShard-" + aShardNumber);
+
+			this.collatedFeedQuotes = new CollatedFeedQuotes[0];
+			this.dispatchLane = this.newDispatchLane(aShardNumber);
+			this.expired = new ArrayList<CollatedFeedQuotes>();
+			this.feedQuotes = new ArrayBlockingQueue<QuoteSlot>(SHARD_QUEUE_CAPACITY);
+			this.freeSlots = new ArrayBlockingQueue<QuoteSlot>(SHARD_QUEUE_CAPACITY);
+
+			// as many slots as queue capacity, so offer() of a taken slot never fails
+			for (int idx = 0; idx < SHARD_QUEUE_CAPACITY; ++idx) {
+				this.freeSlots.add(new QuoteSlot());
+			}
+
+			this.timerWheel = new TimerWheel(
+					Math.max(1L, timeoutThreshold / TIMER_WHEEL_TICKS_PER_TIMEOUT),
+					System.currentTimeMillis());
+
+			this.setDaemon(true);
+		}
+
+		ThreadPoolExecutor dispatchLane() {
+			return this.dispatchLane;
+		}
+
+		void enqueue(FeedQuote aFeedQuote) {
+			QuoteSlot slot = this.takeFreeSlot();
+
+			if (slot != null) {
+				slot.set(aFeedQuote);
+
+				this.feedQuotes.offer(slot);
+			}
+		}
+
+		void enqueue(FeedQuoteFlyweight aFeedQuote) {
+			QuoteSlot slot = this.takeFreeSlot();
+
+			if (slot != null) {
+				slot.set(aFeedQuote);
+
+				this.feedQuotes.offer(slot);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (!closed) {
+				long now = System.currentTimeMillis();
+
+				this.timerWheel.expire(now, this.expired);
+
+				for (CollatedFeedQuotes collated : this.expired) {
+					this.aggregateAndDispatch(collated);
+				}
+
+				this.expired.clear();
+
+				try {
+					QuoteSlot slot =
+							this.feedQuotes.poll(
+									this.timerWheel.millisUntilNextTick(now),
+									TimeUnit.MILLISECONDS);
+
+					if (slot != null) {
+						try {
+							this.collate(slot);
+						} finally {
+							slot.clear();
+							this.freeSlots.offer(slot);
+						}
+					}
+
+				} catch (InterruptedException e) {
+					// closed or spurious; loop condition decides
+				}
+			}
+		}
+
+		private void aggregateAndDispatch(final CollatedFeedQuotes aCollated) {
+			this.collatedFeedQuotes[aCollated.symbolId()] = null;
+
+			aCollated.close();
+
+			try {
+				this.dispatchLane.execute(new Runnable() {
+					@Override
+					public void run() {
+						dispatch(aCollated.quoteBarBuilder().build());
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// closed
+			}
+		}
+
+		private void collate(QuoteSlot aSlot) {
+			int symbolId = aSlot.symbolId();
+
+			if (symbolId >= this.collatedFeedQuotes.length) {
+				this.collatedFeedQuotes =
+						Arrays.copyOf(
+								this.collatedFeedQuotes,
+								Math.max(symbolId + 1, this.collatedFeedQuotes.length * 2));
+			}
+
+			CollatedFeedQuotes collated = this.collatedFeedQuotes[symbolId];
+
+			if (collated == null) {
+				collated =
+						new CollatedFeedQuotes(
+								symbolId,
+								quoteBarAggregator.newQuoteBarBuilder(),
+								System.currentTimeMillis() + timeoutThreshold);
+
+				this.collatedFeedQuotes[symbolId] = collated;
+
+				this.timerWheel.schedule(collated);
+			}
+
+			aSlot.addTo(collated.quoteBarBuilder());
+
+			if (collated.quoteBarBuilder().totalQuotesInBar() >= maximumQuoteCount) {
+				this.aggregateAndDispatch(collated);
+			}
+		}
+
+		private ThreadPoolExecutor newDispatchLane(final int aShardNumber) {
+			return new ThreadPoolExecutor(
+					1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(DISPATCH_QUEUE_CAPACITY),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable aRunnable) {
+							Thread thread = new Thread(aRunnable, "QuoteBarDispatch-" + aShardNumber);
+							thread.setDaemon(true);
+							return thread;
+						}
+					},
+					new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(Runnable aRunnable, ThreadPoolExecutor anExecutor) {
+							if (anExecutor.isShutdown()) {
+								throw new RejectedExecutionException("Dispatch lane is shut down.");
+							}
+							try {
+								// block the shard rather than reorder or drop bars
+								anExecutor.getQueue().put(aRunnable);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					});
+		}
+
+		private QuoteSlot takeFreeSlot() {
+			try {
+				return this.freeSlots.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+
+	private static class CollatedFeedQuotes {
+		private boolean closed;
+		private long deadline;
+		private long deadlineTick;
+		private QuoteBarBuilder quoteBarBuilder;
+		private int symbolId;
+
+		CollatedFeedQuotes(int aSymbolId, QuoteBarBuilder aQuoteBarBuilder, long aDeadline) {
+			super();
+
+			this.deadline = aDeadline;
+			this.quoteBarBuilder = aQuoteBarBuilder;
+			this.symbolId = aSymbolId;
+		}
+
+		void close() {
+			this.closed = true;
+		}
+
+		boolean isClosed() {
+			return this.closed;
+		}
+
+		long deadline() {
+			return this.deadline;
+		}
+
+		long deadlineTick() {
+			return this.deadlineTick;
+		}
+
+		void setDeadlineTick(long aDeadlineTick) {
+			this.deadlineTick = aDeadlineTick;
+		}
+
+		QuoteBarBuilder quoteBarBuilder() {
+			return this.quoteBarBuilder;
+		}
+
+		int symbolId() {
+			return this.symbolId;
+		}
+	}
+
+	/**
+	 * I am a reusable shard queue entry. I hold either a FeedQuote
+	 * as received, or a copy of a FeedQuoteFlyweight in units.
+	 */
+	private static class QuoteSlot {
+		private long closeUnits;
+		private String companyName;
+		private FeedQuote feedQuote;
+		private long highUnits;
+		private long lowUnits;
+		private long openUnits;
+		private long priceUnits;
+		private int symbolId;
+		private long wholeQuantity;
+		private long wholeVolume;
+
+		QuoteSlot() {
+			super();
+		}
+
+		void addTo(QuoteBarBuilder aQuoteBarBuilder) {
+			if (this.feedQuote != null) {
+				aQuoteBarBuilder.add(this.feedQuote);
+			} else {
+				aQuoteBarBuilder.add(
+						this.companyName,
+						this.symbolId,
+						this.highUnits,
+						this.lowUnits,
+						this.openUnits,
+						this.closeUnits,
+						this.priceUnits,
+						this.wholeQuantity,
+						this.wholeVolume);
+			}
+		}
+
+		void clear() {
+			this.companyName = null;
+			this.feedQuote = null;
+		}
+
+		void set(FeedQuote aFeedQuote) {
+			this.feedQuote = aFeedQuote;
+			this.symbolId = aFeedQuote.symbolId();
+		}
+
+		void set(FeedQuoteFlyweight aFeedQuote) {
+			this.closeUnits = aFeedQuote.closeUnits();
+			this.companyName = aFeedQuote.companyName();
+			this.feedQuote = null;
+			this.highUnits = aFeedQuote.highUnits();
+			this.lowUnits = aFeedQuote.lowUnits();
+			this.openUnits = aFeedQuote.openUnits();
+			this.priceUnits = aFeedQuote.priceUnits();
+			this.symbolId = aFeedQuote.symbolId();
+			this.wholeQuantity = aFeedQuote.wholeQuantity();
+			this.wholeVolume = aFeedQuote.wholeVolume();
+		}
+
+		int symbolId() {
+			return this.symbolId;
+		}
+	}
+
+	/**
+	 * I am a hashed timer wheel owned by a single shard thread.
+	 * Bars closed early by quote count are cancelled lazily, by
+	 * being skipped when their bucket comes around.
+	 */
+	private static class TimerWheel {
+		private List<List<CollatedFeedQuotes>> buckets;
+		private long currentTick;
+		private int mask;
+		private long tickMillis;
+
+		TimerWheel(long aTickMillis, long aStartTime) {
+			super();
+
+			this.buckets = new ArrayList<List<CollatedFeedQuotes>>(TIMER_WHEEL_SIZE);
+
+			for (int idx = 0; idx < TIMER_WHEEL_SIZE; ++idx) {
+				this.buckets.add(new ArrayList<CollatedFeedQuotes>());
+			}
+
+			this.currentTick = aStartTime / aTickMillis;
+			this.mask = TIMER_WHEEL_SIZE - 1;
+			this.tickMillis = aTickMillis;
+		}
+
+		void expire(long aNow, List<CollatedFeedQuotes> anExpired) {
+			long nowTick = aNow / this.tickMillis;
+
+			while (this.currentTick < nowTick) {
+				++this.currentTick;
+
+				Iterator<CollatedFeedQuotes> iterator =
+						this.buckets.get((int) (this.currentTick & this.mask)).iterator();
+
+				while (iterator.hasNext()) {
+					CollatedFeedQuotes collated = iterator.next();
+
+					if (collated.isClosed()) {
+						iterator.remove();
+					} else if (collated.deadlineTick() <= this.currentTick) {
+						iterator.remove();
+						anExpired.add(collated);
+					}
+				}
+			}
+		}
+
+		long millisUntilNextTick(long aNow) {
+			return Math.max(1L, (this.currentTick + 1) * this.tickMillis - aNow);
+		}
+
+		void schedule(CollatedFeedQuotes aCollated) {
+			long deadlineTick = (aCollated.deadline() + this.tickMillis - 1) / this.tickMillis;
+
+			if (deadlineTick <= this.currentTick) {
+				deadlineTick = this.currentTick + 1;
+			}
+
+			aCollated.setDeadlineTick(deadlineTick);
+
+			this.buckets.get((int) (deadlineTick & this.mask)).add(aCollated);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * I am a lock-free, multi-producer ring buffer of FeedQuote
+ * instances that fans out to my subscribers. Each subscriber
+ * has its own cursor over my shared ring and its own consumer
+ * thread, so a slow subscriber delays only itself. Producers
+ * are gated by the slowest cursor, and the lag of each cursor
+ * behind the claimed sequence may be queried at any time.
+ *
+ * Subscribers should be registered before publishing begins;
+ * one registered later starts at the then current sequence.
+ */
+public class FanOutRingBufferMessenger implements FeedQuotePublisher {
+
+	private AtomicLong claimSequence;
+	private volatile boolean closed;
+	private volatile SubscriberCursor[] cursors;
+	private FeedQuote[] entries;
+	private long gatingSequenceCache;
+	private int mask;
+	private AtomicLongArray publishedSequences;
+	private FeedQuoteWaitStrategy waitStrategy;
+
+	public FanOutRingBufferMessenger() {
+		this(SequencedRingBufferMessenger.DEFAULT_CAPACITY, FeedQuoteWaitStrategy.Yield);
+	}
+
+	public FanOutRingBufferMessenger(
+			int aCapacity,
+			FeedQuoteWaitStrategy aWaitStrategy) {
+
+		super();
+
+		if (aCapacity < 2 || Integer.bitCount(aCapacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two.");
+		}
+
+		if (aWaitStrategy == null) {
+			throw new IllegalArgumentException("Wait strategy must be provided.");
+		}
+
+		this.claimSequence = new AtomicLong(0L);
+		this.cursors = new SubscriberCursor[0];
+		this.entries = new FeedQuote[aCapacity];
+		this.mask = aCapacity - 1;
+		this.publishedSequences = new AtomicLongArray(aCapacity);
+		this.waitStrategy = aWaitStrategy;
+	}
+
+	public int capacity() {
+		return this.entries.length;
+	}
+
+	public void close() {
+		this.closed = true;
+
+		this.signalCursors();
+	}
+
+	public long lagOf(FeedQuoteSubscriber aSubscriber) {
+		long claimed = this.claimSequence.get();
+
+		for (SubscriberCursor cursor : this.cursors) {
+			if (cursor.subscriber() == aSubscriber) {
+				return claimed - cursor.sequence();
+			}
+		}
+
+		throw new IllegalArgumentException("Not a subscriber: " + aSubscriber);
+	}
+
+	public Map<FeedQuoteSubscriber,Long> subscriberLags() {
+		long claimed = this.claimSequence.get();
+
+		Map<FeedQuoteSubscriber,Long> lags =
+				new LinkedHashMap<FeedQuoteSubscriber,Long>();
+
+		for (SubscriberCursor cursor : this.cursors) {
+			lags.put(cursor.subscriber(), claimed - cursor.sequence());
+		}
+
+		return lags;
+	}
+
+	@Override
+	public void publish(FeedQuote aFeedQuote) {
+		long sequence = this.claimNextSequence();
+
+		int index = (int) (sequence & this.mask);
+
+		this.entries[index] = aFeedQuote;
+
+		this.publishedSequences.lazySet(index, sequence);
+
+		this.signalCursors();
+	}
+
+	@Override
+	public synchronized void subscribe(FeedQuoteSubscriber aSubscriber) {
+		SubscriberCursor cursor =
+				new SubscriberCursor(aSubscriber, this.claimSequence.get());
+
+		SubscriberCursor[] cursors =
+				Arrays.copyOf(this.cursors, this.cursors.length + 1);
+
+		cursors[cursors.length - 1] = cursor;
+
+		this.cursors = cursors;
+
+		cursor.start();
+	}
+
+	private long claimNextSequence() {
+		int idleCount = 0;
+
+		while (true) {
+			long current = this.claimSequence.get();
+			long next = current + 1;
+			long wrapPoint = next - this.entries.length;
+
+			if (wrapPoint > this.gatingSequenceCache) {
+				long gatingSequence = this.minimumCursorSequence(current);
+
+				if (wrapPoint > gatingSequence) {
+					this.waitStrategy.idle(++idleCount);
+
+					continue;
+				}
+
+				this.gatingSequenceCache = gatingSequence;
+			}
+
+			if (this.claimSequence.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	private long minimumCursorSequence(long aDefaultSequence) {
+		long minimum = aDefaultSequence;
+
+		for (SubscriberCursor cursor : this.cursors) {
+			minimum = Math.min(minimum, cursor.sequence());
+		}
+
+		return minimum;
+	}
+
+	private void signalCursors() {
+		for (SubscriberCursor cursor : this.cursors) {
+			this.waitStrategy.signal(cursor);
+		}
+	}
+
+	private class SubscriberCursor extends Thread {
+		private volatile long sequence;
+		private FeedQuoteSubscriber subscriber;
+
+		SubscriberCursor(FeedQuoteSubscriber aSubscriber, long aStartingSequence) {
+			super("FanOutRingBufferMessenger-" + aSubscriber);
+
+			this.sequence = aStartingSequence;
+			this.subscriber = aSubscriber;
+
+			this.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int idleCount = 0;
+
+			while (!closed) {
+				long nextSequence = this.sequence + 1;
+
+				int index = (int) (nextSequence & mask);
+
+				if (publishedSequences.get(index) == nextSequence) {
+					try {
+						this.subscriber.receive(entries[index]);
+					} catch (Exception e) {
+						System.out.println(
+								"Error: SUBSCRIBER: "
+								+ this.subscriber
+								+ " because: "
+								+ e.getMessage());
+					}
+
+					this.sequence = nextSequence;
+
+					idleCount = 0;
+
+				} else {
+					waitStrategy.idle(++idleCount);
+				}
+			}
+		}
+
+		long sequence() {
+			return this.sequence;
+		}
+
+		FeedQuoteSubscriber subscriber() {
+			return this.subscriber;
+		}
+	}
+}
@@ -17,6 +17,7 @@ package co.vaughnvernon.tradercommon.quotefeed;
 import java.math.BigDecimal;
 
 import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
 
 public final class FeedQuote {
 
@@ -28,6 +29,7 @@ public final class FeedQuote {
 	private Money price;
 	private BigDecimal quantity;
 	private String symbol;
+	private transient Integer symbolId;
 	private BigDecimal volume;
 
 	public FeedQuote(String aCompanyName, Money aHigh, Money aLow, Money anOpen, Money aClose,
@@ -78,6 +80,14 @@ public final class FeedQuote {
 		return this.symbol;
 	}
 
+	public int symbolId() {
+		if (this.symbolId == null) {
+			this.symbolId = SymbolRegistry.instance().idOf(this.symbol());
+		}
+
+		return this.symbolId;
+	}
+
 	public BigDecimal volume() {
 		return this.volume;
 	}
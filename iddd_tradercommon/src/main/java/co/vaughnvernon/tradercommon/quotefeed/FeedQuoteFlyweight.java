@@ -0,0 +1,151 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.math.BigDecimal;
+
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
+import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
+
+/**
+ * I am a view over one fixed-layout feed quote record held in the
+ * preallocated slots of a FlyweightRingBufferMessenger. I answer
+ * the same queries as FeedQuote, but my prices are also available
+ * as FixedPointMoney units and my symbol as its SymbolRegistry id,
+ * neither of which allocates. The Money and BigDecimal answers are
+ * created on demand, at the Money scale of four.
+ *
+ * I am valid only while being delivered to a subscriber; a
+ * subscriber that must keep the quote should use toFeedQuote().
+ */
+public final class FeedQuoteFlyweight {
+
+	static final int SYMBOL_ID = 0;
+	static final int HIGH = 1;
+	static final int LOW = 2;
+	static final int OPEN = 3;
+	static final int CLOSE = 4;
+	static final int PRICE = 5;
+	static final int QUANTITY = 6;
+	static final int VOLUME = 7;
+
+	static final int RECORD_LENGTH = 8;
+
+	private FlyweightRingBufferMessenger messenger;
+	private int offset;
+	private long[] records;
+
+	FeedQuoteFlyweight(FlyweightRingBufferMessenger aMessenger, long[] aRecords) {
+		super();
+
+		this.messenger = aMessenger;
+		this.records = aRecords;
+	}
+
+	public Money close() {
+		return FixedPointMoney.toMoney(this.closeUnits());
+	}
+
+	public long closeUnits() {
+		return this.records[this.offset + CLOSE];
+	}
+
+	public String companyName() {
+		return this.messenger.companyNameOf(this.symbolId());
+	}
+
+	public Money high() {
+		return FixedPointMoney.toMoney(this.highUnits());
+	}
+
+	public long highUnits() {
+		return this.records[this.offset + HIGH];
+	}
+
+	public Money low() {
+		return FixedPointMoney.toMoney(this.lowUnits());
+	}
+
+	public long lowUnits() {
+		return this.records[this.offset + LOW];
+	}
+
+	public Money open() {
+		return FixedPointMoney.toMoney(this.openUnits());
+	}
+
+	public long openUnits() {
+		return this.records[this.offset + OPEN];
+	}
+
+	public Money price() {
+		return FixedPointMoney.toMoney(this.priceUnits());
+	}
+
+	public long priceUnits() {
+		return this.records[this.offset + PRICE];
+	}
+
+	public BigDecimal quantity() {
+		return BigDecimal.valueOf(this.wholeQuantity());
+	}
+
+	public String symbol() {
+		return SymbolRegistry.instance().symbolOf(this.symbolId());
+	}
+
+	public int symbolId() {
+		return (int) this.records[this.offset + SYMBOL_ID];
+	}
+
+	public FeedQuote toFeedQuote() {
+		return new FeedQuote(
+				this.companyName(),
+				this.high(),
+				this.low(),
+				this.open(),
+				this.close(),
+				this.price(),
+				this.quantity(),
+				this.symbol(),
+				this.volume());
+	}
+
+	public BigDecimal volume() {
+		return BigDecimal.valueOf(this.wholeVolume());
+	}
+
+	public long wholeQuantity() {
+		return this.records[this.offset + QUANTITY];
+	}
+
+	public long wholeVolume() {
+		return this.records[this.offset + VOLUME];
+	}
+
+	@Override
+	public String toString() {
+		return "FeedQuoteFlyweight [symbol=" + this.symbol()
+				+ ", high=" + this.highUnits() + ", low=" + this.lowUnits()
+				+ ", open=" + this.openUnits() + ", close=" + this.closeUnits()
+				+ ", price=" + this.priceUnits() + ", quantity=" + this.wholeQuantity()
+				+ ", volume=" + this.wholeVolume() + "]";
+	}
+
+	void moveTo(int anOffset) {
+		this.offset = anOffset;
+	}
+}
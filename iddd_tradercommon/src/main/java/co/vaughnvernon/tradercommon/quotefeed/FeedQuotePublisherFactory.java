@@ -16,15 +16,85 @@ package co.vaughnvernon.tradercommon.quotefeed;
 
 public class FeedQuotePublisherFactory {
 
+	public static final String PUBLISHER_TYPE_PROPERTY =
+			"tradercommon.quotefeed.publisher";
+
+	public static final String WAIT_STRATEGY_PROPERTY =
+			"tradercommon.quotefeed.waitStrategy";
+
+	public enum PublisherType {
+		FanOutRingBuffer {
+			@Override
+			protected FeedQuotePublisher newPublisher(FeedQuoteWaitStrategy aWaitStrategy) {
+				return new FanOutRingBufferMessenger(
+						SequencedRingBufferMessenger.DEFAULT_CAPACITY,
+						aWaitStrategy);
+			}
+		},
+
+		FlyweightRingBuffer {
+			@Override
+			protected FeedQuotePublisher newPublisher(FeedQuoteWaitStrategy aWaitStrategy) {
+				return new FlyweightRingBufferMessenger(
+						SequencedRingBufferMessenger.DEFAULT_CAPACITY,
+						aWaitStrategy);
+			}
+		},
+
+		RingBufferMessenger {
+			@Override
+			protected FeedQuotePublisher newPublisher(FeedQuoteWaitStrategy aWaitStrategy) {
+				return new ThreadManagedRingBufferMessenger();
+			}
+		},
+
+		SequencedRingBuffer {
+			@Override
+			protected FeedQuotePublisher newPublisher(FeedQuoteWaitStrategy aWaitStrategy) {
+				return new SequencedRingBufferMessenger(
+						SequencedRingBufferMessenger.DEFAULT_CAPACITY,
+						aWaitStrategy);
+			}
+		};
+
+		protected abstract FeedQuotePublisher newPublisher(FeedQuoteWaitStrategy aWaitStrategy);
+	}
+
 	private static FeedQuotePublisherFactory instance;
 	private static FeedQuotePublisher publisher;
 
 	public static synchronized FeedQuotePublisherFactory instance() {
 		if (instance == null) {
+			PublisherType publisherType =
+					PublisherType.valueOf(
+							System.getProperty(
+									PUBLISHER_TYPE_PROPERTY,
+									PublisherType.RingBufferMessenger.name()));
+
+			FeedQuoteWaitStrategy waitStrategy =
+					FeedQuoteWaitStrategy.valueOf(
+							System.getProperty(
+									WAIT_STRATEGY_PROPERTY,
+									FeedQuoteWaitStrategy.Yield.name()));
+
 			instance = new FeedQuotePublisherFactory();
-			publisher = new ThreadManagedRingBufferMessenger();
+			publisher = publisherType.newPublisher(waitStrategy);
+		}
+
+		return instance;
+	}
+
+	public static synchronized FeedQuotePublisherFactory instance(
+			PublisherType aPublisherType,
+			FeedQuoteWaitStrategy aWaitStrategy) {
+
+		if (instance != null) {
+			throw new IllegalStateException("The feed quote publisher is already selected.");
 		}
 
+		instance = new FeedQuotePublisherFactory();
+		publisher = aPublisherType.newPublisher(aWaitStrategy);
+
 		return instance;
 	}
 
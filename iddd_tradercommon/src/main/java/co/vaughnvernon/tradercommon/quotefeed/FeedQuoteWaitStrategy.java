@@ -0,0 +1,77 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * I am the way a thread waits on a SequencedRingBufferMessenger,
+ * either a producer waiting for a free slot or a consumer waiting
+ * for the next published sequence.
+ */
+public enum FeedQuoteWaitStrategy {
+
+	BusySpin {
+		@Override
+		public void idle(int anIdleCount) {
+			// spin
+		}
+	},
+
+	Yield {
+		@Override
+		public void idle(int anIdleCount) {
+			if (anIdleCount < SPIN_TRIES) {
+				return;
+			}
+
+			Thread.yield();
+		}
+	},
+
+	Park {
+		@Override
+		public void idle(int anIdleCount) {
+			if (anIdleCount < SPIN_TRIES) {
+				return;
+			}
+
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+
+		@Override
+		public void signal(Thread aWaitingThread) {
+			LockSupport.unpark(aWaitingThread);
+		}
+	};
+
+	private static final long PARK_NANOS = 100000L;
+	private static final int SPIN_TRIES = 100;
+
+	/**
+	 * Waits once, where anIdleCount is the number of consecutive
+	 * times the caller has found nothing to do.
+	 * @param anIdleCount the int number of consecutive idle tries
+	 */
+	public abstract void idle(int anIdleCount);
+
+	/**
+	 * Wakes aWaitingThread if my waiting blocks it.
+	 * @param aWaitingThread the Thread that may be waiting
+	 */
+	public void signal(Thread aWaitingThread) {
+		// most strategies never block
+	}
+}
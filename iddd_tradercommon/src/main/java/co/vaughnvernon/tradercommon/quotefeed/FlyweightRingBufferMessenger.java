@@ -0,0 +1,260 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
+
+/**
+ * I am a lock-free, multi-producer ring buffer whose slots are
+ * preallocated fixed-layout feed quote records in a single long
+ * array. Producers write prices as FixedPointMoney units and the
+ * symbol as its SymbolRegistry id directly into a claimed slot, so
+ * publishing allocates nothing. My consumer thread delivers each
+ * slot through a reused FeedQuoteFlyweight view.
+ *
+ * I still accept FeedQuote publishers and subscribers. A published
+ * FeedQuote is copied into a slot, and its prices must fit
+ * FixedPointMoney and its quantity and volume be whole. FeedQuote
+ * subscribers receive a FeedQuote materialized once per slot, so
+ * the in-tree quote bar dispatchers subscribe as flyweight
+ * subscribers instead.
+ */
+public class FlyweightRingBufferMessenger
+		extends Thread
+		implements FeedQuotePublisher {
+
+	private AtomicLong claimSequence;
+	private volatile boolean closed;
+	private volatile String[] companyNames;
+	private volatile long consumedSequence;
+	private List<FeedQuoteSubscriber> feedQuoteSubscribers;
+	private List<FeedQuoteFlyweightSubscriber> flyweightSubscribers;
+	private int mask;
+	private AtomicLongArray publishedSequences;
+	private FeedQuoteFlyweight reader;
+	private long[] records;
+	private FeedQuoteWaitStrategy waitStrategy;
+
+	public FlyweightRingBufferMessenger() {
+		this(SequencedRingBufferMessenger.DEFAULT_CAPACITY, FeedQuoteWaitStrategy.Yield);
+	}
+
+	public FlyweightRingBufferMessenger(
+			int aCapacity,
+			FeedQuoteWaitStrategy aWaitStrategy) {
+
+		super("FlyweightRingBufferMessenger");
+
+		if (aCapacity < 2 || Integer.bitCount(aCapacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two.");
+		}
+
+		if (aWaitStrategy == null) {
+			throw new IllegalArgumentException("Wait strategy must be provided.");
+		}
+
+		this.claimSequence = new AtomicLong(0L);
+		this.companyNames = new String[0];
+		this.consumedSequence = 0L;
+		this.feedQuoteSubscribers = new CopyOnWriteArrayList<FeedQuoteSubscriber>();
+		this.flyweightSubscribers = new CopyOnWriteArrayList<FeedQuoteFlyweightSubscriber>();
+		this.mask = aCapacity - 1;
+		this.publishedSequences = new AtomicLongArray(aCapacity);
+		this.records = new long[aCapacity * FeedQuoteFlyweight.RECORD_LENGTH];
+		this.reader = new FeedQuoteFlyweight(this, this.records);
+		this.waitStrategy = aWaitStrategy;
+
+		this.setDaemon(true);
+		this.start();
+	}
+
+	public int capacity() {
+		return this.mask + 1;
+	}
+
+	public void close() {
+		this.closed = true;
+
+		this.waitStrategy.signal(this);
+	}
+
+	@Override
+	public void publish(FeedQuote aFeedQuote) {
+		this.publish(
+				this.registerSymbol(aFeedQuote.symbol(), aFeedQuote.companyName()),
+				FixedPointMoney.unitsOf(aFeedQuote.high()),
+				FixedPointMoney.unitsOf(aFeedQuote.low()),
+				FixedPointMoney.unitsOf(aFeedQuote.open()),
+				FixedPointMoney.unitsOf(aFeedQuote.close()),
+				FixedPointMoney.unitsOf(aFeedQuote.price()),
+				FixedPointMoney.wholeQuantityOf(aFeedQuote.quantity()),
+				FixedPointMoney.wholeQuantityOf(aFeedQuote.volume()));
+	}
+
+	public void publish(
+			int aSymbolId,
+			long aHighUnits,
+			long aLowUnits,
+			long anOpenUnits,
+			long aCloseUnits,
+			long aPriceUnits,
+			long aQuantity,
+			long aVolume) {
+
+		long sequence = this.claimNextSequence();
+
+		int index = (int) (sequence & this.mask);
+		int offset = index * FeedQuoteFlyweight.RECORD_LENGTH;
+
+		this.records[offset + FeedQuoteFlyweight.SYMBOL_ID] = aSymbolId;
+		this.records[offset + FeedQuoteFlyweight.HIGH] = aHighUnits;
+		this.records[offset + FeedQuoteFlyweight.LOW] = aLowUnits;
+		this.records[offset + FeedQuoteFlyweight.OPEN] = anOpenUnits;
+		this.records[offset + FeedQuoteFlyweight.CLOSE] = aCloseUnits;
+		this.records[offset + FeedQuoteFlyweight.PRICE] = aPriceUnits;
+		this.records[offset + FeedQuoteFlyweight.QUANTITY] = aQuantity;
+		this.records[offset + FeedQuoteFlyweight.VOLUME] = aVolume;
+
+		this.publishedSequences.lazySet(index, sequence);
+
+		this.waitStrategy.signal(this);
+	}
+
+	public int registerSymbol(String aSymbol, String aCompanyName) {
+		int symbolId = SymbolRegistry.instance().idOf(aSymbol);
+
+		String[] companyNames = this.companyNames;
+
+		if (symbolId < companyNames.length && companyNames[symbolId] != null) {
+			return symbolId;
+		}
+
+		return this.registerCompanyName(symbolId, aCompanyName);
+	}
+
+	@Override
+	public void subscribe(FeedQuoteSubscriber aSubscriber) {
+		this.feedQuoteSubscribers.add(aSubscriber);
+	}
+
+	public void subscribeFlyweight(FeedQuoteFlyweightSubscriber aSubscriber) {
+		this.flyweightSubscribers.add(aSubscriber);
+	}
+
+	@Override
+	public void run() {
+		int idleCount = 0;
+
+		while (!this.closed) {
+			long nextSequence = this.consumedSequence + 1;
+
+			int index = (int) (nextSequence & this.mask);
+
+			if (this.publishedSequences.get(index) == nextSequence) {
+				this.reader.moveTo(index * FeedQuoteFlyweight.RECORD_LENGTH);
+
+				this.dispatch(this.reader);
+
+				this.consumedSequence = nextSequence;
+
+				idleCount = 0;
+
+			} else {
+				this.waitStrategy.idle(++idleCount);
+			}
+		}
+	}
+
+	String companyNameOf(int aSymbolId) {
+		return this.companyNames[aSymbolId];
+	}
+
+	private long claimNextSequence() {
+		int idleCount = 0;
+
+		while (true) {
+			long current = this.claimSequence.get();
+			long next = current + 1;
+
+			if (next - this.capacity() > this.consumedSequence) {
+				this.waitStrategy.idle(++idleCount);
+			} else if (this.claimSequence.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	private void dispatch(FeedQuoteFlyweight aFeedQuote) {
+		for (FeedQuoteFlyweightSubscriber subscriber : this.flyweightSubscribers) {
+			try {
+				subscriber.receive(aFeedQuote);
+			} catch (Exception e) {
+				this.reportSubscriberError(subscriber, e);
+			}
+		}
+
+		if (!this.feedQuoteSubscribers.isEmpty()) {
+			FeedQuote feedQuote = aFeedQuote.toFeedQuote();
+
+			for (FeedQuoteSubscriber subscriber : this.feedQuoteSubscribers) {
+				try {
+					subscriber.receive(feedQuote);
+				} catch (Exception e) {
+					this.reportSubscriberError(subscriber, e);
+				}
+			}
+		}
+	}
+
+	private synchronized int registerCompanyName(int aSymbolId, String aCompanyName) {
+		if (aCompanyName == null || aCompanyName.trim().isEmpty()) {
+			throw new IllegalArgumentException("Company name must be provided.");
+		}
+
+		String[] companyNames = this.companyNames;
+
+		if (aSymbolId >= companyNames.length) {
+			companyNames =
+					Arrays.copyOf(
+							companyNames,
+							Math.max(aSymbolId + 1, companyNames.length * 2));
+		} else {
+			companyNames = companyNames.clone();
+		}
+
+		if (companyNames[aSymbolId] == null) {
+			companyNames[aSymbolId] = aCompanyName;
+		}
+
+		this.companyNames = companyNames;
+
+		return aSymbolId;
+	}
+
+	private void reportSubscriberError(Object aSubscriber, Exception anException) {
+		System.out.println(
+				"Error: SUBSCRIBER: "
+				+ aSubscriber
+				+ " because: "
+				+ anException.getMessage());
+	}
+}
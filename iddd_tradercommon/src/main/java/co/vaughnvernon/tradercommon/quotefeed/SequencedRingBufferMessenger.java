@@ -0,0 +1,161 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * I am a lock-free, multi-producer ring buffer of FeedQuote
+ * instances. Producers claim slots by CAS on my claim sequence
+ * and then mark each slot published with its sequence; my single
+ * consumer thread delivers slots to subscribers in sequence order.
+ * No thread ever holds a monitor, and idle waiting is governed by
+ * my FeedQuoteWaitStrategy.
+ */
+public class SequencedRingBufferMessenger
+		extends Thread
+		implements FeedQuotePublisher {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private AtomicLong claimSequence;
+	private volatile boolean closed;
+	private volatile long consumedSequence;
+	private FeedQuote[] entries;
+	private int mask;
+	private AtomicLongArray publishedSequences;
+	private List<FeedQuoteSubscriber> subscribers;
+	private FeedQuoteWaitStrategy waitStrategy;
+
+	public SequencedRingBufferMessenger() {
+		this(DEFAULT_CAPACITY, FeedQuoteWaitStrategy.Yield);
+	}
+
+	public SequencedRingBufferMessenger(
+			int aCapacity,
+			FeedQuoteWaitStrategy aWaitStrategy) {
+
+		super("SequencedRingBufferMessenger");
+
+		this.assertCapacity(aCapacity);
+
+		if (aWaitStrategy == null) {
+			throw new IllegalArgumentException("Wait strategy must be provided.");
+		}
+
+		this.claimSequence = new AtomicLong(0L);
+		this.consumedSequence = 0L;
+		this.entries = new FeedQuote[aCapacity];
+		this.mask = aCapacity - 1;
+		this.publishedSequences = new AtomicLongArray(aCapacity);
+		this.subscribers = new CopyOnWriteArrayList<FeedQuoteSubscriber>();
+		this.waitStrategy = aWaitStrategy;
+
+		this.setDaemon(true);
+		this.start();
+	}
+
+	public int capacity() {
+		return this.entries.length;
+	}
+
+	public void close() {
+		this.closed = true;
+
+		this.waitStrategy.signal(this);
+	}
+
+	@Override
+	public void publish(FeedQuote aFeedQuote) {
+		long sequence = this.claimNextSequence();
+
+		int index = (int) (sequence & this.mask);
+
+		this.entries[index] = aFeedQuote;
+
+		this.publishedSequences.lazySet(index, sequence);
+
+		this.waitStrategy.signal(this);
+	}
+
+	@Override
+	public void subscribe(FeedQuoteSubscriber aSubscriber) {
+		this.subscribers.add(aSubscriber);
+	}
+
+	@Override
+	public void run() {
+		int idleCount = 0;
+
+		while (!this.closed) {
+			long nextSequence = this.consumedSequence + 1;
+
+			int index = (int) (nextSequence & this.mask);
+
+			if (this.publishedSequences.get(index) == nextSequence) {
+				FeedQuote feedQuote = this.entries[index];
+
+				this.entries[index] = null;
+
+				this.dispatch(feedQuote);
+
+				this.consumedSequence = nextSequence;
+
+				idleCount = 0;
+
+			} else {
+				this.waitStrategy.idle(++idleCount);
+			}
+		}
+	}
+
+	private void assertCapacity(int aCapacity) {
+		if (aCapacity < 2 || Integer.bitCount(aCapacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two.");
+		}
+	}
+
+	private long claimNextSequence() {
+		int idleCount = 0;
+
+		while (true) {
+			long current = this.claimSequence.get();
+			long next = current + 1;
+
+			if (next - this.entries.length > this.consumedSequence) {
+				this.waitStrategy.idle(++idleCount);
+			} else if (this.claimSequence.compareAndSet(current, next)) {
+				return next;
+			}
+		}
+	}
+
+	private void dispatch(FeedQuote aFeedQuote) {
+		for (FeedQuoteSubscriber subscriber : this.subscribers) {
+			try {
+				subscriber.receive(aFeedQuote);
+			} catch (Exception e) {
+				System.out.println(
+						"Error: SUBSCRIBER: "
+						+ subscriber
+						+ " because: "
+						+ e.getMessage());
+			}
+		}
+	}
+}
@@ -15,11 +15,17 @@
 package co.vaughnvernon.tradercommon.quotefeed;
 
 import java.math.BigDecimal;
-import java.util.Calendar;
 import java.util.Random;
 
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
 import co.vaughnvernon.tradercommon.monetary.Money;
 
+/**
+ * I simulate the price activity of one equity. My running prices
+ * are held as FixedPointMoney units so that simulating a change
+ * allocates nothing; a Money is materialized only when a changed
+ * price is next quoted.
+ */
 public class SimulatedEquityActivity {
 
 	public enum Direction {
@@ -51,14 +57,19 @@ public class SimulatedEquityActivity {
 	private Random changeRandom;
 	private int changeThreshold;
 	private Money close;
+	private long closeUnits;
 	private String companyName;
 	private Direction direction;
 	private int directionStepsCount;
 	private int directionStepsTotal;
 	private Money high;
+	private long highUnits;
 	private Money low;
+	private long lowUnits;
 	private Money open;
+	private long openUnits;
 	private Money price;
+	private long priceUnits;
 	private Random quantityRandom;
 	private Random stepsRandom;
 	private String ticker;
@@ -78,10 +89,10 @@ public class SimulatedEquityActivity {
 		this.setClose(aPrice);
 		this.setCompanyName(aCompanyName);
 		this.setDirection(aDirection);
-		this.setHigh(aPrice);
-		this.setLow(aPrice);
-		this.setOpen(new Money());
-		this.setPrice(aPrice);
+		this.setHighUnits(FixedPointMoney.unitsOf(aPrice));
+		this.setLowUnits(FixedPointMoney.unitsOf(aPrice));
+		this.setOpenUnits(0L);
+		this.setPriceUnits(FixedPointMoney.unitsOf(aPrice));
 		this.setQuantityRandom(new Random());
 		this.setStepsRandom(new Random());
 		this.setTicker(aTicker);
@@ -110,19 +121,35 @@ public class SimulatedEquityActivity {
 		return feedQuote;
 	}
 
+	public void publishTo(FlyweightRingBufferMessenger aMessenger) {
+		int quantity = this.generateQuantity();
+
+		this.increaseVolumnBy(quantity);
+
+		aMessenger.publish(
+				aMessenger.registerSymbol(this.ticker(), this.companyName()),
+				this.highUnits(),
+				this.lowUnits(),
+				this.openUnits(),
+				this.closeUnits(),
+				this.priceUnits(),
+				quantity,
+				this.volumn());
+	}
+
 	public void simulateChange() {
-		Money changeAmount = this.changeAmount();
+		long changeUnits = this.changeUnits();
 
 		if (this.direction().isUp()) {
-			this.setPrice(this.price().addedTo(changeAmount));
+			this.setPriceUnits(FixedPointMoney.addedTo(this.priceUnits(), changeUnits));
 			this.checkForNewHigh();
 		} else {
-			this.setPrice(this.price().subtract(changeAmount));
+			this.setPriceUnits(FixedPointMoney.subtract(this.priceUnits(), changeUnits));
 			this.checkForNewLow();
 		}
 
-		if (this.open().isZero()) {
-			this.setOpen(this.price());
+		if (this.openUnits() == 0L) {
+			this.setOpenUnits(this.priceUnits());
 		}
 
 		if (this.directionStepsCountIncremented() >= this.directionStepsTotal()) {
@@ -138,6 +165,11 @@ public class SimulatedEquityActivity {
 
 	private void setClose(Money aClose) {
 		this.close = aClose;
+		this.closeUnits = FixedPointMoney.unitsOf(aClose);
+	}
+
+	private long closeUnits() {
+		return this.closeUnits;
 	}
 
 	private String companyName() {
@@ -148,7 +180,7 @@ public class SimulatedEquityActivity {
 		this.companyName = aCompanyName;
 	}
 
-	private Money changeAmount() {
+	private long changeUnits() {
 		int changeAmount =
 				this.changeRandom()
 					.nextInt(this.changeThreshold() + 1);
@@ -157,9 +189,8 @@ public class SimulatedEquityActivity {
 			changeAmount = 1;
 		}
 
-		BigDecimal cents = new BigDecimal(changeAmount);
-
-		return new Money(cents.divide(new BigDecimal("100.0")));
+		// the change amount is in cents
+		return FixedPointMoney.dividedBy(FixedPointMoney.unitsOf(changeAmount), 100L);
 	}
 
 	private Random changeRandom() {
@@ -209,9 +240,8 @@ public class SimulatedEquityActivity {
 	}
 
 	private int generateQuantity() {
-		Calendar cal = Calendar.getInstance();
-
-		int bound = cal.get(Calendar.SECOND);
+		// the second of the minute, without allocating a Calendar
+		int bound = (int) ((System.currentTimeMillis() / 1000L) % 60L);
 
 		if (bound > 30) {
 			bound = bound / 3;
@@ -229,47 +259,83 @@ public class SimulatedEquityActivity {
 	}
 
 	private Money high() {
+		if (this.high == null) {
+			this.high = FixedPointMoney.toMoney(this.highUnits());
+		}
+
 		return this.high;
 	}
 
 	private void checkForNewHigh() {
-		if (this.price().isGreaterThan(this.high())) {
-			this.setHigh(this.price());
+		if (this.priceUnits() > this.highUnits()) {
+			this.setHighUnits(this.priceUnits());
 		}
 	}
 
-	private void setHigh(Money aHigh) {
-		this.high = aHigh;
+	private long highUnits() {
+		return this.highUnits;
+	}
+
+	private void setHighUnits(long aHighUnits) {
+		this.highUnits = aHighUnits;
+		this.high = null;
 	}
 
 	private Money low() {
+		if (this.low == null) {
+			this.low = FixedPointMoney.toMoney(this.lowUnits());
+		}
+
 		return this.low;
 	}
 
 	private void checkForNewLow() {
-		if (this.price().isLessThan(this.low())) {
-			this.setLow(this.price());
+		if (this.priceUnits() < this.lowUnits()) {
+			this.setLowUnits(this.priceUnits());
 		}
 	}
 
-	private void setLow(Money aLow) {
-		this.low = aLow;
+	private long lowUnits() {
+		return this.lowUnits;
+	}
+
+	private void setLowUnits(long aLowUnits) {
+		this.lowUnits = aLowUnits;
+		this.low = null;
 	}
 
 	private Money open() {
+		if (this.open == null) {
+			this.open = FixedPointMoney.toMoney(this.openUnits());
+		}
+
 		return this.open;
 	}
 
-	private void setOpen(Money anOpen) {
-		this.open = anOpen;
+	private long openUnits() {
+		return this.openUnits;
+	}
+
+	private void setOpenUnits(long anOpenUnits) {
+		this.openUnits = anOpenUnits;
+		this.open = null;
 	}
 
 	private Money price() {
+		if (this.price == null) {
+			this.price = FixedPointMoney.toMoney(this.priceUnits());
+		}
+
 		return this.price;
 	}
 
-	private void setPrice(Money aPrice) {
-		this.price = aPrice;
+	private long priceUnits() {
+		return this.priceUnits;
+	}
+
+	private void setPriceUnits(long aPriceUnits) {
+		this.priceUnits = aPriceUnits;
+		this.price = null;
 	}
 
 	private Random quantityRandom() {
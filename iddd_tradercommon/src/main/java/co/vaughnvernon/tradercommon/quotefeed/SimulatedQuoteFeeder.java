@@ -55,9 +55,13 @@ public class SimulatedQuoteFeeder
 			for (SimulatedEquityActivity activity : this.activities) {
 				activity.simulateChange();
 
-				FeedQuote feedQuote = activity.feedQuote();
+				if (this.feedQuotePublisher() instanceof FlyweightRingBufferMessenger) {
+					activity.publishTo((FlyweightRingBufferMessenger) this.feedQuotePublisher());
+				} else {
+					FeedQuote feedQuote = activity.feedQuote();
 
-				this.feedQuotePublisher().publish(feedQuote);
+					this.feedQuotePublisher().publish(feedQuote);
+				}
 			}
 
 			this.sleep();
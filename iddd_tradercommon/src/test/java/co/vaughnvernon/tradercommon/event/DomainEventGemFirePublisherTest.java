@@ -0,0 +1,370 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.infrastructure.persistence.GemFireEventStore;
+import co.vaughnvernon.tradercommon.infrastructure.persistence.InMemoryEventStore;
+import co.vaughnvernon.tradercommon.infrastructure.persistence.TestableDomainEvent;
+import co.vaughnvernon.tradercommon.order.BuyOrderPlaced;
+
+import com.gemstone.gemfire.cache.query.CqEvent;
+
+public class DomainEventGemFirePublisherTest extends TestCase {
+
+	public DomainEventGemFirePublisherTest() {
+		super();
+	}
+
+	public void testAsynchronousPublishAndFlush() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		GemFireEventStore eventStore = new GemFireEventStore();
+
+		long storedEventCount = eventStore.countStoredEvents();
+
+		publisher.enableAsynchronousMode(100, 10);
+
+		try {
+			assertTrue(publisher.isAsynchronous());
+
+			for (int id = 1; id <= 250; ++id) {
+				publisher.publish(new TestableDomainEvent(id));
+			}
+
+			publisher.flush();
+
+			assertEquals(0, publisher.queueDepth());
+			assertTrue(publisher.flushCount() >= 25);
+			assertTrue(publisher.maximumFlushLatency() >= publisher.lastFlushLatency());
+			assertEquals(storedEventCount + 250, eventStore.countStoredEvents());
+
+		} finally {
+			publisher.disableAsynchronousMode();
+		}
+
+		assertFalse(publisher.isAsynchronous());
+
+		publisher.publish(new TestableDomainEvent(251));
+
+		assertEquals(storedEventCount + 251, eventStore.countStoredEvents());
+	}
+
+	public void testAsynchronousRetryDoesNotDuplicateStoredBatch() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		EventStore eventStore = publisher.eventStore;
+
+		final AtomicInteger failedStores = new AtomicInteger();
+
+		GemFireEventStore lostReplyEventStore = new GemFireEventStore() {
+			@Override
+			public void store(List<StoredEvent> aStoredEvents) {
+				super.store(aStoredEvents);
+
+				// the putAll() was applied, but its reply is lost
+				if (failedStores.getAndIncrement() == 0) {
+					throw new IllegalStateException("reply lost");
+				}
+			}
+		};
+
+		long storedEventCount = lostReplyEventStore.countStoredEvents();
+
+		publisher.eventStore = lostReplyEventStore;
+
+		try {
+			publisher.enableAsynchronousMode(100, 10);
+
+			for (int id = 1; id <= 5; ++id) {
+				publisher.publish(new TestableDomainEvent(id));
+			}
+
+			publisher.flush();
+
+			assertTrue(failedStores.get() >= 2);
+			assertEquals(storedEventCount + 5, lostReplyEventStore.countStoredEvents());
+
+		} finally {
+			publisher.disableAsynchronousMode();
+
+			publisher.eventStore = eventStore;
+		}
+	}
+
+	public void testAsynchronousWriteFailureIsReported() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		EventStore eventStore = publisher.eventStore;
+
+		publisher.eventStore = new InMemoryEventStore() {
+			@Override
+			public List<StoredEvent> append(List<? extends DomainEvent> aDomainEvents) {
+				throw new IllegalStateException("grid unavailable");
+			}
+		};
+
+		try {
+			publisher.enableAsynchronousMode(2, 10);
+
+			try {
+				for (int id = 1; id <= 10; ++id) {
+					publisher.publish(new TestableDomainEvent(id));
+				}
+
+				fail("Publish must not block on a failed writer.");
+
+			} catch (IllegalStateException e) {
+				// expected
+			}
+
+			try {
+				publisher.flush();
+
+				fail("Flush must report the failed writer.");
+
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage().contains("grid unavailable"));
+			}
+
+			try {
+				publisher.disableAsynchronousMode();
+
+				fail("Disabling must report the failed writer.");
+
+			} catch (IllegalStateException e) {
+				// expected
+			}
+
+			assertFalse(publisher.isAsynchronous());
+
+		} finally {
+			publisher.disableAsynchronousMode();
+
+			publisher.eventStore = eventStore;
+		}
+	}
+
+	public void testUnitOfWorkCommitAndDiscard() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		GemFireEventStore eventStore = new GemFireEventStore();
+
+		long storedEventCount = eventStore.countStoredEvents();
+
+		publisher.beginUnitOfWork();
+
+		publisher.publish(new TestableDomainEvent(1));
+		publisher.publish(new TestableDomainEvent(2));
+
+		assertEquals(storedEventCount, eventStore.countStoredEvents());
+
+		publisher.discardUnitOfWork();
+
+		assertFalse(publisher.isInUnitOfWork());
+		assertEquals(storedEventCount, eventStore.countStoredEvents());
+
+		publisher.beginUnitOfWork();
+
+		publisher.publish(new TestableDomainEvent(3));
+		publisher.publish(new TestableDomainEvent(4));
+
+		try {
+			publisher.beginUnitOfWork();
+
+			fail("Must not begin a unit of work twice.");
+
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		publisher.commitUnitOfWork();
+
+		assertFalse(publisher.isInUnitOfWork());
+		assertEquals(storedEventCount + 2, eventStore.countStoredEvents());
+	}
+
+	public void testUnitOfWorkStagedInOutbox() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		GemFireEventStore eventStore = new GemFireEventStore();
+
+		long storedEventCount = eventStore.countStoredEvents();
+
+		TestableOutbox outbox = new TestableOutbox();
+
+		publisher.beginUnitOfWork();
+
+		publisher.publish(new TestableDomainEvent(1));
+		publisher.publish(new TestableDomainEvent(2));
+
+		publisher.stageUnitOfWork(outbox);
+
+		// ids are reserved, but the events wait in the outbox for its save
+		List<StoredEvent> staged = outbox.outboxEvents();
+
+		assertEquals(2, staged.size());
+		assertTrue(staged.get(0).eventId() > 0);
+		assertEquals(storedEventCount, eventStore.countStoredEvents());
+
+		publisher.commitUnitOfWork();
+
+		assertFalse(publisher.isInUnitOfWork());
+		assertTrue(outbox.outboxEvents().isEmpty());
+		assertEquals(storedEventCount + 2, eventStore.countStoredEvents());
+
+		// an outbox saved before a failed relay is relayed again without duplicates
+		outbox.setOutboxEvents(staged);
+
+		publisher.relay(outbox);
+
+		assertTrue(outbox.outboxEvents().isEmpty());
+		assertEquals(storedEventCount + 2, eventStore.countStoredEvents());
+	}
+
+	public void testTypeScopedSubscriptions() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		final AtomicInteger buyOrdersPlaced = new AtomicInteger(0);
+		final AtomicInteger testableEvents = new AtomicInteger(0);
+		final AtomicInteger unexpectedEvents = new AtomicInteger(0);
+
+		DomainEventListener buyOrderPlacedListener = new DomainEventListener(BuyOrderPlaced.class) {
+			@Override
+			public void onEvent(CqEvent cqEvent) {
+				StoredEvent storedEvent = (StoredEvent) cqEvent.getNewValue();
+
+				if (storedEvent.toDomainEvent() instanceof BuyOrderPlaced) {
+					buyOrdersPlaced.incrementAndGet();
+				} else {
+					unexpectedEvents.incrementAndGet();
+				}
+			}
+		};
+
+		DomainEventListener testableEventListener = new DomainEventListener(TestableDomainEvent.class) {
+			@Override
+			public void onEvent(CqEvent cqEvent) {
+				StoredEvent storedEvent = (StoredEvent) cqEvent.getNewValue();
+
+				if (storedEvent.toDomainEvent() instanceof TestableDomainEvent) {
+					testableEvents.incrementAndGet();
+				} else {
+					unexpectedEvents.incrementAndGet();
+				}
+			}
+		};
+
+		publisher.subscribe(new DomainEventListener[] { buyOrderPlacedListener, testableEventListener });
+
+		try {
+			publisher.publish(new TestableDomainEvent(1));
+			publisher.publish(new BuyOrderPlaced());
+			publisher.publish(new TestableDomainEvent(2));
+			publisher.publish(new TestableDomainEvent(3));
+
+			for (int wait = 0; wait < 50 && (buyOrdersPlaced.get() < 1 || testableEvents.get() < 3); ++wait) {
+				Thread.sleep(100L);
+			}
+
+			assertEquals(1, buyOrdersPlaced.get());
+			assertEquals(3, testableEvents.get());
+			assertEquals(0, unexpectedEvents.get());
+
+		} finally {
+			publisher.unsubscribe(buyOrderPlacedListener);
+			publisher.unsubscribe(testableEventListener);
+		}
+
+		publisher.publish(new TestableDomainEvent(4));
+
+		Thread.sleep(200L);
+
+		assertEquals(3, testableEvents.get());
+	}
+
+	public void testAllEventListenersUseTheirNamedQuery() throws Exception {
+		DomainEventGemFirePublisher publisher = DomainEventGemFirePublisher.instance();
+
+		final AtomicInteger testableEvents = new AtomicInteger(0);
+		final AtomicInteger allEvents = new AtomicInteger(0);
+
+		DomainEventListener testableEventListener = new DomainEventListener(TestableDomainEvent.class) {
+			@Override
+			public void onEvent(CqEvent cqEvent) {
+				testableEvents.incrementAndGet();
+			}
+		};
+
+		DomainEventListener allEventsListener1 = new DomainEventListener("allEventsTestCQ") {
+			@Override
+			public void onEvent(CqEvent cqEvent) {
+				allEvents.incrementAndGet();
+			}
+		};
+
+		DomainEventListener allEventsListener2 = new DomainEventListener("allEventsTestCQ") {
+			@Override
+			public void onEvent(CqEvent cqEvent) {
+				allEvents.incrementAndGet();
+			}
+		};
+
+		// the type's query exists before any all-events query does
+		publisher.subscribe(new DomainEventListener[] { testableEventListener });
+		publisher.subscribe(new DomainEventListener[] { allEventsListener1 });
+		publisher.subscribe(new DomainEventListener[] { allEventsListener2 });
+
+		try {
+			publisher.publish(new BuyOrderPlaced());
+			publisher.publish(new TestableDomainEvent(1));
+
+			for (int wait = 0; wait < 50 && (allEvents.get() < 4 || testableEvents.get() < 1); ++wait) {
+				Thread.sleep(100L);
+			}
+
+			assertEquals(4, allEvents.get());
+			assertEquals(1, testableEvents.get());
+
+		} finally {
+			publisher.unsubscribe(testableEventListener);
+			publisher.clientCache.getQueryService().getCq("allEventsTestCQ").close();
+		}
+	}
+
+	private static class TestableOutbox implements DomainEventOutbox {
+		private List<StoredEvent> outboxEvents;
+
+		TestableOutbox() {
+			super();
+
+			this.outboxEvents = new ArrayList<StoredEvent>();
+		}
+
+		@Override
+		public List<StoredEvent> outboxEvents() {
+			return this.outboxEvents;
+		}
+
+		@Override
+		public void setOutboxEvents(List<StoredEvent> aStoredEvents) {
+			this.outboxEvents = aStoredEvents;
+		}
+	}
+}
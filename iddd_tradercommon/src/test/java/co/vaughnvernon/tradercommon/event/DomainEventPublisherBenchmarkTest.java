@@ -0,0 +1,130 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.infrastructure.persistence.TestableDomainEvent;
+import co.vaughnvernon.tradercommon.order.BuyOrderPlaced;
+
+/**
+ * I measure DomainEventPublisher dispatch with 1, 10 and 100
+ * subscribers to the published event type, alongside as many
+ * subscribed to another type. Results are printed; the handled
+ * count and the absence of per-publish allocation are asserted.
+ */
+public class DomainEventPublisherBenchmarkTest extends TestCase {
+
+	private static final int EVENTS = 1000000;
+
+	private long handled;
+
+	public DomainEventPublisherBenchmarkTest() {
+		super();
+	}
+
+	public void testDispatch() throws Exception {
+		this.measure(1);
+		this.measure(10);
+		this.measure(100);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		DomainEventPublisher.instance().reset();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DomainEventPublisher.instance().reset();
+
+		super.tearDown();
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadMXBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0L;
+	}
+
+	private void measure(int aSubscriberCount) {
+		DomainEventPublisher publisher = DomainEventPublisher.instance();
+
+		publisher.reset();
+
+		for (int idx = 0; idx < aSubscriberCount; ++idx) {
+			publisher.subscribe(new DomainEventSubscriber<BuyOrderPlaced>() {
+				@Override
+				public void handleEvent(BuyOrderPlaced aDomainEvent) {
+					++handled;
+				}
+
+				@Override
+				public Class<BuyOrderPlaced> subscribedToEventType() {
+					return BuyOrderPlaced.class;
+				}
+			});
+
+			publisher.subscribe(new DomainEventSubscriber<TestableDomainEvent>() {
+				@Override
+				public void handleEvent(TestableDomainEvent aDomainEvent) {
+					fail("Must not receive BuyOrderPlaced.");
+				}
+
+				@Override
+				public Class<TestableDomainEvent> subscribedToEventType() {
+					return TestableDomainEvent.class;
+				}
+			});
+		}
+
+		BuyOrderPlaced event = new BuyOrderPlaced();
+
+		for (int idx = 0; idx < EVENTS; ++idx) {
+			publisher.publish(event);
+		}
+
+		this.handled = 0L;
+
+		long allocatedBefore = this.allocatedBytes();
+
+		long start = System.nanoTime();
+
+		for (int idx = 0; idx < EVENTS; ++idx) {
+			publisher.publish(event);
+		}
+
+		long nanos = System.nanoTime() - start;
+
+		long allocated = this.allocatedBytes() - allocatedBefore;
+
+		System.out.println(
+				"DomainEventPublisherBenchmark: subscribers=" + aSubscriberCount
+				+ " ops/s=" + (EVENTS * 1000000000L / Math.max(1L, nanos))
+				+ " ns/op=" + ((double) nanos / EVENTS)
+				+ " bytes/op=" + ((double) allocated / EVENTS));
+
+		assertEquals((long) EVENTS * aSubscriberCount, this.handled);
+		assertTrue(allocated < EVENTS);
+	}
+}
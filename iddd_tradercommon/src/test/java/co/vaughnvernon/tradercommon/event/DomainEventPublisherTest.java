@@ -0,0 +1,125 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.infrastructure.persistence.TestableDomainEvent;
+import co.vaughnvernon.tradercommon.order.BuyOrderPlaced;
+
+public class DomainEventPublisherTest extends TestCase {
+
+	private List<String> handled;
+
+	public DomainEventPublisherTest() {
+		super();
+	}
+
+	public void testPublishToSubscribersOfEventType() throws Exception {
+		DomainEventPublisher.instance().subscribe(new RecordingSubscriber<DomainEvent>("all1", DomainEvent.class));
+		DomainEventPublisher.instance().subscribe(new RecordingSubscriber<BuyOrderPlaced>("placed", BuyOrderPlaced.class));
+		DomainEventPublisher.instance().subscribe(new RecordingSubscriber<TestableDomainEvent>("testable", TestableDomainEvent.class));
+		DomainEventPublisher.instance().subscribe(new RecordingSubscriber<DomainEvent>("all2", DomainEvent.class));
+
+		DomainEventPublisher.instance().publish(new BuyOrderPlaced());
+
+		assertEquals("[all1, placed, all2]", this.handled.toString());
+
+		this.handled.clear();
+
+		DomainEventPublisher.instance().publish(new TestableDomainEvent(1));
+
+		assertEquals("[all1, testable, all2]", this.handled.toString());
+
+		this.handled.clear();
+
+		DomainEventPublisher.instance().publish(new DomainEvent() {
+			@Override
+			public int eventVersion() {
+				return 1;
+			}
+
+			@Override
+			public java.util.Date occurredOn() {
+				return new java.util.Date();
+			}
+		});
+
+		assertEquals("[all1, all2]", this.handled.toString());
+	}
+
+	public void testUnsubscribeAndReset() throws Exception {
+		RecordingSubscriber<BuyOrderPlaced> first =
+				new RecordingSubscriber<BuyOrderPlaced>("first", BuyOrderPlaced.class);
+
+		DomainEventPublisher.instance().subscribe(first);
+		DomainEventPublisher.instance().subscribe(new RecordingSubscriber<BuyOrderPlaced>("second", BuyOrderPlaced.class));
+
+		DomainEventPublisher.instance().unsubscribe(first);
+
+		DomainEventPublisher.instance().publish(new BuyOrderPlaced());
+
+		assertEquals("[second]", this.handled.toString());
+
+		this.handled.clear();
+
+		DomainEventPublisher.instance().reset();
+
+		DomainEventPublisher.instance().publish(new BuyOrderPlaced());
+
+		assertTrue(this.handled.isEmpty());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		DomainEventPublisher.instance().reset();
+
+		this.handled = new ArrayList<String>();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DomainEventPublisher.instance().reset();
+
+		super.tearDown();
+	}
+
+	private class RecordingSubscriber<T> implements DomainEventSubscriber<T> {
+
+		private String name;
+		private Class<T> type;
+
+		RecordingSubscriber(String aName, Class<T> aType) {
+			super();
+
+			this.name = aName;
+			this.type = aType;
+		}
+
+		@Override
+		public void handleEvent(T aDomainEvent) {
+			handled.add(this.name);
+		}
+
+		@Override
+		public Class<T> subscribedToEventType() {
+			return this.type;
+		}
+	}
+}
@@ -0,0 +1,171 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * I compare SlothServer's former fan-out, which asked every attached
+ * ClientRegistration whether it subscribes to the published exchange,
+ * against the ExchangeSubscriptions lookup, with 1,000 clients spread
+ * across 50 exchanges. ns/op is printed; only the subscribers found
+ * are asserted.
+ */
+public class ExchangeSubscriptionsBenchmarkTest extends TestCase {
+
+	private static final int CLIENTS = 1000;
+	private static final int EXCHANGES = 50;
+	private static final int PUBLISHES = 200000;
+	private static final int WARMUP_PUBLISHES = 50000;
+
+	private Map<InetSocketAddress,ClientRegistration> clientRegistrations;
+	private int[] exchangeIds;
+	private ExchangeSubscriptions exchangeSubscriptions;
+
+	public ExchangeSubscriptionsBenchmarkTest() {
+		super();
+	}
+
+	public void testIndexMatchesScan() throws Exception {
+		for (int exchangeId : this.exchangeIds) {
+			Set<ClientRegistration> indexed = new HashSet<ClientRegistration>();
+
+			for (ClientRegistration subscriber : this.exchangeSubscriptions.subscribersOf(exchangeId)) {
+				indexed.add(subscriber);
+			}
+
+			assertEquals(CLIENTS / EXCHANGES, indexed.size());
+			assertEquals(new HashSet<ClientRegistration>(this.scan(exchangeId)), indexed);
+		}
+
+		assertEquals(EXCHANGES, this.exchangeSubscriptions.exchangeCount());
+	}
+
+	public void testUnsubscribe() throws Exception {
+		int exchangeId = this.exchangeIds[0];
+
+		ClientRegistration[] subscribers = this.exchangeSubscriptions.subscribersOf(exchangeId);
+
+		this.exchangeSubscriptions.subscribe(exchangeId, subscribers[0]);
+
+		assertEquals(subscribers.length, this.exchangeSubscriptions.subscribersOf(exchangeId).length);
+
+		for (ClientRegistration subscriber : subscribers) {
+			this.exchangeSubscriptions.unsubscribe(exchangeId, subscriber);
+		}
+
+		assertEquals(0, this.exchangeSubscriptions.subscribersOf(exchangeId).length);
+		assertEquals(EXCHANGES - 1, this.exchangeSubscriptions.exchangeCount());
+
+		this.exchangeSubscriptions.unsubscribe(exchangeId, subscribers[0]);
+	}
+
+	public void testIndexVersusScan() throws Exception {
+		this.measure("scan", false, WARMUP_PUBLISHES);
+		this.measure("index", true, WARMUP_PUBLISHES);
+
+		long scanned = this.measure("scan", false, PUBLISHES);
+		long indexed = this.measure("index", true, PUBLISHES);
+
+		assertEquals(scanned, indexed);
+		assertEquals((long) PUBLISHES * (CLIENTS / EXCHANGES), indexed);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.clientRegistrations = new LinkedHashMap<InetSocketAddress,ClientRegistration>();
+		this.exchangeIds = new int[EXCHANGES];
+		this.exchangeSubscriptions = new ExchangeSubscriptions();
+
+		for (int idx = 0; idx < EXCHANGES; ++idx) {
+			this.exchangeIds[idx] = SlothFrame.idOf("BenchmarkExchange" + idx);
+		}
+
+		InetAddress localhost = InetAddress.getByName("localhost");
+
+		for (int idx = 0; idx < CLIENTS; ++idx) {
+			InetSocketAddress socketAddress = new InetSocketAddress(localhost, 10000 + idx);
+
+			ClientRegistration clientRegistration = new ClientRegistration(socketAddress);
+
+			String exchangeName = "BenchmarkExchange" + (idx % EXCHANGES);
+
+			clientRegistration.addSubscription(exchangeName);
+
+			this.exchangeSubscriptions.subscribe(SlothFrame.idOf(exchangeName), clientRegistration);
+
+			this.clientRegistrations.put(socketAddress, clientRegistration);
+		}
+	}
+
+	private long measure(String aPath, boolean anIndexed, int aCount) {
+		long delivered = 0;
+
+		long start = System.nanoTime();
+
+		for (int idx = 0; idx < aCount; ++idx) {
+			int exchangeId = this.exchangeIds[idx % EXCHANGES];
+
+			if (anIndexed) {
+				for (ClientRegistration subscriber : this.exchangeSubscriptions.subscribersOf(exchangeId)) {
+					if (subscriber.socketAddress() != null) {
+						++delivered;
+					}
+				}
+			} else {
+				for (ClientRegistration clientRegistration : this.clientRegistrations.values()) {
+					if (clientRegistration.isSubscribedTo(exchangeId)) {
+						++delivered;
+					}
+				}
+			}
+		}
+
+		long nanos = System.nanoTime() - start;
+
+		if (aCount == PUBLISHES) {
+			System.out.println(
+					"ExchangeSubscriptionsBenchmark: " + aPath
+					+ ": clients=" + CLIENTS + " exchanges=" + EXCHANGES
+					+ " ns/publish=" + (nanos / aCount)
+					+ " publishes/s=" + (aCount * 1000000000L / Math.max(1, nanos)));
+		}
+
+		return delivered;
+	}
+
+	private List<ClientRegistration> scan(int anExchangeId) {
+		List<ClientRegistration> subscribers = new ArrayList<ClientRegistration>();
+
+		for (ClientRegistration clientRegistration : this.clientRegistrations.values()) {
+			if (clientRegistration.isSubscribedTo(anExchangeId)) {
+				subscribers.add(clientRegistration);
+			}
+		}
+
+		return subscribers;
+	}
+}
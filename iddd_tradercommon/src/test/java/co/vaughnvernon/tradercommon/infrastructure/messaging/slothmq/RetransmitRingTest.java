@@ -0,0 +1,55 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class RetransmitRingTest extends TestCase {
+
+	public RetransmitRingTest() {
+		super();
+	}
+
+	public void testSequencesAndRetention() throws Exception {
+		RetransmitRing ring = new RetransmitRing(4);
+
+		for (int idx = 1; idx <= 6; ++idx) {
+			assertEquals(idx, ring.append(this.frameOf("message " + idx), 3));
+		}
+
+		assertEquals(6L, ring.lastSequence());
+		assertEquals(3L, ring.oldestSequence());
+		assertNull(ring.frameOf(2L));
+		assertNull(ring.frameOf(7L));
+
+		ByteBuffer frame = ring.frameOf(5L);
+
+		assertEquals(5L, SlothFrame.sequence(frame));
+		assertEquals(3, SlothFrame.sourceId(frame));
+		assertEquals("message 5", SlothFrame.message(frame));
+	}
+
+	private ByteBuffer frameOf(String aMessage) {
+		ByteBuffer frame = ByteBuffer.allocate(SlothWorker.BUFFER_LENGTH);
+
+		SlothFrame.encode(frame, "TestExchange", "my.test.type", aMessage);
+
+		frame.flip();
+
+		return frame;
+	}
+}
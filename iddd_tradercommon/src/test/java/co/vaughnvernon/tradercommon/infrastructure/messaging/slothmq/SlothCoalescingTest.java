@@ -0,0 +1,153 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * I publish the same burst of small messages with coalescing off and
+ * then on at both the client and the server, and verify that every
+ * message is delivered once and in order either way. Throughput and
+ * datagrams per message are printed; only delivery and the reduction
+ * in datagrams are asserted.
+ */
+public class SlothCoalescingTest extends TestCase {
+
+	private static final String EXCHANGE_NAME = "CoalescingExchange";
+	private static final int MESSAGES = 5000;
+	private static final long TIMEOUT = 30000L;
+
+	public SlothCoalescingTest() {
+		super();
+	}
+
+	public void testCoalescedVersusSingleFramePublish() throws Exception {
+		long[] single = this.measure(false);
+		long[] coalesced = this.measure(true);
+
+		assertTrue(coalesced[0] * 4 < single[0]);
+		assertTrue(coalesced[1] * 4 < single[1]);
+	}
+
+	private long[] measure(boolean aCoalescing) throws Exception {
+		SlothServer.executeInProcessDetachedServer(aCoalescing);
+
+		Thread.sleep(500L);
+
+		RecordingListener listener = new RecordingListener();
+
+		SlothClient client = SlothClient.instance();
+
+		if (aCoalescing) {
+			client.enableCoalescing();
+		}
+
+		try {
+			ExchangePublisher publisher = new ExchangePublisher(EXCHANGE_NAME);
+
+			long sentDatagrams = client.sentDatagramCount();
+			long receivedDatagrams = client.receivedDatagramCount();
+
+			long start = System.nanoTime();
+
+			for (int idx = 0; idx < MESSAGES; ++idx) {
+				publisher.publish("my.test.type", "order " + idx);
+
+				if (idx % 250 == 249) {
+					Thread.sleep(1L);
+				}
+			}
+
+			List<String> messages = listener.awaitMessages(MESSAGES);
+
+			long elapsed = System.nanoTime() - start;
+
+			assertEquals(MESSAGES, messages.size());
+
+			for (int idx = 0; idx < MESSAGES; ++idx) {
+				assertEquals("order " + idx, messages.get(idx));
+			}
+
+			sentDatagrams = client.sentDatagramCount() - sentDatagrams;
+			receivedDatagrams = client.receivedDatagramCount() - receivedDatagrams;
+
+			System.out.println(
+					"SlothCoalescing: coalescing=" + aCoalescing
+					+ " msgs/s=" + (MESSAGES * 1000000000L / elapsed)
+					+ " datagrams sent=" + sentDatagrams
+					+ " received=" + receivedDatagrams
+					+ " for " + MESSAGES + " messages");
+
+			return new long[] { sentDatagrams, receivedDatagrams };
+
+		} finally {
+			listener.close();
+
+			client.closeAll();
+		}
+	}
+
+	private static class RecordingListener extends ExchangeListener {
+
+		private List<String> messages;
+
+		RecordingListener() {
+			super();
+		}
+
+		synchronized List<String> awaitMessages(int aCount) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+
+			while (this.messages().size() < aCount && System.currentTimeMillis() < deadline) {
+				this.wait(100L);
+			}
+
+			return new ArrayList<String>(this.messages());
+		}
+
+		@Override
+		protected String exchangeName() {
+			return EXCHANGE_NAME;
+		}
+
+		@Override
+		protected synchronized void filteredDispatch(String aType, String aTextMessage) {
+			this.messages().add(aTextMessage);
+
+			this.notifyAll();
+		}
+
+		@Override
+		protected String[] listensTo() {
+			return null;	// all
+		}
+
+		@Override
+		protected String name() {
+			return this.getClass().getName();
+		}
+
+		private List<String> messages() {
+			if (this.messages == null) {
+				this.messages = new ArrayList<String>();
+			}
+
+			return this.messages;
+		}
+	}
+}
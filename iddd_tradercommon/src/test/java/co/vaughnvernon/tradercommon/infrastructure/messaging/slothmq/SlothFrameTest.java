@@ -0,0 +1,124 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class SlothFrameTest extends TestCase {
+
+	public SlothFrameTest() {
+		super();
+	}
+
+	public void testPublishRoundTrip() throws Exception {
+		ByteBuffer frame = ByteBuffer.allocateDirect(SlothWorker.BUFFER_LENGTH);
+
+		SlothFrame.encode(frame, "TestExchange", "my.test.type", "A tiny little message \u00e9.");
+
+		frame.flip();
+
+		assertTrue(SlothFrame.isComplete(frame));
+		assertEquals(SlothFrame.PUBLISH, SlothFrame.command(frame));
+		assertEquals("TestExchange".hashCode(), SlothFrame.exchangeId(frame));
+		assertEquals("my.test.type".hashCode(), SlothFrame.typeId(frame));
+		assertEquals("TestExchange", SlothFrame.exchangeName(frame));
+		assertEquals("my.test.type", SlothFrame.type(frame));
+		assertEquals("A tiny little message \u00e9.", SlothFrame.message(frame));
+		assertEquals(0, frame.position());
+
+		assertTrue(SlothFrame.hasExchangeName(frame, SlothFrame.utf8("TestExchange")));
+		assertFalse(SlothFrame.hasExchangeName(frame, SlothFrame.utf8("TestExchangf")));
+	}
+
+	public void testSubscribeCarriesExchangeName() throws Exception {
+		ByteBuffer frame = ByteBuffer.allocate(SlothWorker.BUFFER_LENGTH);
+
+		SlothFrame.encode(frame, SlothFrame.SUBSCRIBE, "TestExchange");
+
+		frame.flip();
+
+		assertTrue(SlothFrame.isComplete(frame));
+		assertEquals(SlothFrame.SUBSCRIBE, SlothFrame.command(frame));
+		assertEquals("TestExchange", SlothFrame.exchangeName(frame));
+
+		frame.limit(frame.limit() - 1);
+
+		assertFalse(SlothFrame.isComplete(frame));
+	}
+
+	public void testFragmentStampAndRange() throws Exception {
+		ByteBuffer frame = ByteBuffer.allocate(SlothWorker.BUFFER_LENGTH);
+
+		byte[] typeName = SlothFrame.utf8("my.test.type");
+		byte[] message = SlothFrame.utf8("0123456789");
+
+		SlothFrame.encodeFragment(frame, 7, 11, SlothFrame.utf8("TestExchange"), typeName, message, 42, 2, 3, 4);
+
+		frame.flip();
+
+		SlothFrame.stamp(frame, 1234567890123L, 99);
+
+		assertTrue(SlothFrame.isComplete(frame));
+		assertEquals(1234567890123L, SlothFrame.sequence(frame));
+		assertEquals(99, SlothFrame.sourceId(frame));
+		assertEquals(42, SlothFrame.messageId(frame));
+		assertEquals(2, SlothFrame.fragmentIndex(frame));
+		assertEquals(3, SlothFrame.fragmentCount(frame));
+		assertEquals("my.test.type", SlothFrame.type(frame));
+		assertEquals("89", SlothFrame.message(frame));
+
+		frame.clear();
+
+		SlothFrame.encode(frame, SlothFrame.NACK, 7, 10L, 20L);
+
+		frame.flip();
+
+		assertTrue(SlothFrame.isComplete(frame));
+		assertEquals(SlothFrame.NACK, SlothFrame.command(frame));
+		assertEquals(10L, SlothFrame.sequence(frame));
+		assertEquals(20L, SlothFrame.toSequence(frame));
+	}
+
+	public void testRangeFrameWithoutToSequenceIsIncomplete() throws Exception {
+		byte[] commands = {
+				SlothFrame.NACK, SlothFrame.LOST, SlothFrame.HEARTBEAT, SlothFrame.SUBSCRIBED };
+
+		for (byte command : commands) {
+			ByteBuffer frame = ByteBuffer.allocate(SlothWorker.BUFFER_LENGTH);
+
+			// a name-only payload is shorter than the eight-byte last sequence
+			SlothFrame.encode(frame, command, "Ex");
+
+			frame.flip();
+
+			assertFalse(SlothFrame.isComplete(frame));
+		}
+	}
+
+	public void testOversizedMessageRejected() throws Exception {
+		ByteBuffer frame = ByteBuffer.allocate(64);
+
+		try {
+			SlothFrame.encode(frame, "TestExchange", "my.test.type", new String(new char[64]));
+
+			fail("Should have rejected an oversized message.");
+
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,244 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * I run SlothMQ with the client dropping a fraction of the datagrams it
+ * receives, including retransmissions and heartbeats, and verify that
+ * every message is still delivered once and in order. Throughput,
+ * latency and NACKs are printed for each loss rate; only delivery is
+ * asserted.
+ */
+public class SlothReliabilityTest extends TestCase {
+
+	private static final String EXCHANGE_NAME = "ReliabilityExchange";
+	private static final int MESSAGES = 2000;
+	private static final long TIMEOUT = 30000L;
+
+	public SlothReliabilityTest() {
+		super();
+	}
+
+	public void testDeliveryUnderInjectedLoss() throws Exception {
+		for (double lossRate : new double[] { 0.0, 0.01, 0.05, 0.20 }) {
+			this.measureDeliveryWith(lossRate);
+		}
+	}
+
+	public void testFirstFramesLostAreRecovered() throws Exception {
+		RecordingListener listener = new RecordingListener();
+
+		// the SUBSCRIBED answer is either received or asked for again
+		Thread.sleep(100L);
+
+		SlothClient.instance().simulateInboundLoss(1.0);
+
+		try {
+			ExchangePublisher publisher = new ExchangePublisher(EXCHANGE_NAME);
+
+			publisher.publish("my.test.type", "first");
+			publisher.publish("my.test.type", "second");
+
+			Thread.sleep(30L);
+
+			SlothClient.instance().simulateInboundLoss(0.0);
+
+			publisher.publish("my.test.type", "third");
+
+			List<String> messages = listener.awaitMessages(3);
+
+			assertEquals(Arrays.asList("first", "second", "third"), messages);
+
+		} finally {
+			SlothClient.instance().simulateInboundLoss(0.0);
+
+			listener.close();
+		}
+	}
+
+	public void testLargeMessageIsFragmentedAndReassembled() throws Exception {
+		char[] text = new char[100000];
+
+		Arrays.fill(text, '\u00e9');
+
+		for (int idx = 0; idx < text.length; idx += 7) {
+			text[idx] = 'x';
+		}
+
+		String largeMessage = new String(text);
+
+		RecordingListener listener = new RecordingListener();
+
+		SlothClient.instance().simulateInboundLoss(0.10);
+
+		try {
+			ExchangePublisher publisher = new ExchangePublisher(EXCHANGE_NAME);
+
+			publisher.publish("my.large.type", largeMessage);
+			publisher.publish("my.large.type", "small");
+
+			List<String> messages = listener.awaitMessages(2);
+
+			assertEquals(2, messages.size());
+			assertEquals(largeMessage, messages.get(0));
+			assertEquals("small", messages.get(1));
+
+		} finally {
+			SlothClient.instance().simulateInboundLoss(0.0);
+
+			listener.close();
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		SlothServer.executeInProcessDetachedServer();
+
+		Thread.sleep(500L);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		SlothClient.instance().closeAll();
+
+		super.tearDown();
+	}
+
+	private void measureDeliveryWith(double aLossRate) throws Exception {
+		RecordingListener listener = new RecordingListener();
+		ExchangePublisher publisher = new ExchangePublisher(EXCHANGE_NAME);
+
+		long nackCount = SlothClient.instance().nackCount();
+
+		SlothClient.instance().simulateInboundLoss(aLossRate);
+
+		try {
+			long start = System.nanoTime();
+
+			for (int idx = 0; idx < MESSAGES; ++idx) {
+				publisher.publish("my.test.type", idx + ":" + System.nanoTime());
+
+				if (idx % 100 == 99) {
+					Thread.sleep(1L);
+				}
+			}
+
+			List<String> messages = listener.awaitMessages(MESSAGES);
+
+			long elapsed = System.nanoTime() - start;
+
+			assertEquals(MESSAGES, messages.size());
+
+			long totalLatency = 0;
+			long maximumLatency = 0;
+
+			for (int idx = 0; idx < MESSAGES; ++idx) {
+				String message = messages.get(idx);
+
+				int divider = message.indexOf(':');
+
+				assertEquals(idx, Integer.parseInt(message.substring(0, divider)));
+
+				long latency = listener.receivedAt(idx) - Long.parseLong(message.substring(divider + 1));
+
+				totalLatency += latency;
+				maximumLatency = Math.max(maximumLatency, latency);
+			}
+
+			System.out.println(
+					"SlothReliability: loss=" + aLossRate
+					+ " msgs/s=" + (MESSAGES * 1000000000L / elapsed)
+					+ " mean latency us=" + (totalLatency / MESSAGES / 1000)
+					+ " max latency us=" + (maximumLatency / 1000)
+					+ " nacks=" + (SlothClient.instance().nackCount() - nackCount));
+
+		} finally {
+			SlothClient.instance().simulateInboundLoss(0.0);
+
+			listener.close();
+		}
+	}
+
+	private static class RecordingListener extends ExchangeListener {
+
+		private List<String> messages;
+		private List<Long> receivedAt;
+
+		RecordingListener() {
+			super();
+		}
+
+		synchronized List<String> awaitMessages(int aCount) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT;
+
+			while (this.messages().size() < aCount && System.currentTimeMillis() < deadline) {
+				this.wait(100L);
+			}
+
+			return new ArrayList<String>(this.messages());
+		}
+
+		synchronized long receivedAt(int anIndex) {
+			return this.receivedAt.get(anIndex);
+		}
+
+		@Override
+		protected String exchangeName() {
+			return EXCHANGE_NAME;
+		}
+
+		@Override
+		protected synchronized void filteredDispatch(String aType, String aTextMessage) {
+			this.messages().add(aTextMessage);
+			this.receivedAt().add(System.nanoTime());
+
+			this.notifyAll();
+		}
+
+		@Override
+		protected String[] listensTo() {
+			return null;	// all
+		}
+
+		@Override
+		protected String name() {
+			return this.getClass().getName();
+		}
+
+		private List<String> messages() {
+			if (this.messages == null) {
+				this.messages = new ArrayList<String>();
+			}
+
+			return this.messages;
+		}
+
+		private List<Long> receivedAt() {
+			if (this.receivedAt == null) {
+				this.receivedAt = new ArrayList<Long>();
+			}
+
+			return this.receivedAt;
+		}
+	}
+}
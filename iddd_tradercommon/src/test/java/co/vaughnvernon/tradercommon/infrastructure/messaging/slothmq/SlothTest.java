@@ -14,7 +14,9 @@
 
 package co.vaughnvernon.tradercommon.infrastructure.messaging.slothmq;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -41,10 +43,54 @@ public class SlothTest extends TestCase {
 		assertEquals(4, TestExchangeListenerAgain.uniqueMessages().size());
 	}
 
+	public void testPublishDoesNotWaitOnIdleReceive() throws Exception {
+		ExchangePublisher unheardPublisher = new ExchangePublisher("UnheardExchange");
+
+		long maximumNanos = 0;
+
+		for (int idx = 0; idx < 1000; ++idx) {
+			long start = System.nanoTime();
+
+			unheardPublisher.publish("my.test.type", "Nobody listens.");
+
+			maximumNanos = Math.max(maximumNanos, System.nanoTime() - start);
+		}
+
+		System.out.println("SlothTest: maximum publish ns=" + maximumNanos);
+
+		assertTrue(maximumNanos < 50000000L);
+	}
+
+	public void testCollidingNamesAreNotCrossDelivered() throws Exception {
+		// "Aa" and "BB" share a hash code, and so an exchange and type id
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+
+		RecordingListener aaListener = new AaTypeAaListener();
+		RecordingListener bbListener = new BBListener();
+
+		try {
+			new ExchangePublisher("Aa").publish("Aa", "Aa of Aa");
+			new ExchangePublisher("Aa").publish("BB", "BB of Aa");
+			new ExchangePublisher("BB").publish("Aa", "Aa of BB");
+
+			Thread.sleep(1000L);
+
+			assertEquals("[Aa:Aa of Aa]", aaListener.received().toString());
+			assertEquals("[Aa:Aa of BB]", bbListener.received().toString());
+
+		} finally {
+			aaListener.close();
+			bbListener.close();
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		SlothServer.executeInProcessDetachedServer();
 
+		// the server of the previous test may still hold the port
+		Thread.sleep(500L);
+
 		this.testExchangeListener = new TestExchangeListener();
 
 		SlothClient.instance().register(this.testExchangeListener);
@@ -104,6 +150,63 @@ public class SlothTest extends TestCase {
 		}
 	}
 
+	private static class AaTypeAaListener extends RecordingListener {
+
+		AaTypeAaListener() {
+			super();
+		}
+
+		@Override
+		protected String exchangeName() {
+			return "Aa";
+		}
+
+		@Override
+		protected String[] listensTo() {
+			return new String[] { "Aa" };
+		}
+	}
+
+	private static class BBListener extends RecordingListener {
+
+		BBListener() {
+			super();
+		}
+
+		@Override
+		protected String exchangeName() {
+			return "BB";
+		}
+
+		@Override
+		protected String[] listensTo() {
+			return null;	// all
+		}
+	}
+
+	private static abstract class RecordingListener extends ExchangeListener {
+
+		private List<String> received = new ArrayList<String>();
+
+		RecordingListener() {
+			super();
+		}
+
+		synchronized List<String> received() {
+			return new ArrayList<String>(this.received);
+		}
+
+		@Override
+		protected synchronized void filteredDispatch(String aType, String aTextMessage) {
+			this.received.add(aType + ":" + aTextMessage);
+		}
+
+		@Override
+		protected String name() {
+			return this.getClass().getName();
+		}
+	}
+
 	private static class TestExchangeListenerAgain extends ExchangeListener {
 
 		private static int idCount = 0;
@@ -14,81 +14,283 @@
 
 package co.vaughnvernon.tradercommon.infrastructure.persistence;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 import co.vaughnvernon.tradercommon.event.DomainEvent;
-import co.vaughnvernon.tradercommon.event.EventStore;
 import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
 
 public class GemFireEventStoreTest extends TestCase {
 
-	private EventStore eventStore = new GemFireEventStore();
+	private GemFireEventStore eventStore = new GemFireEventStore();
 
 	public GemFireEventStoreTest() {
 		super();
 	}
 
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.eventStore.removeAllStoredEvents();
+	}
+
 	public void testAllStoredEventsBetween() throws Exception {
+		long firstEventId = 0;
+
 		for (int id = 1; id <= 20; ++id) {
 			DomainEvent event = new TestableDomainEvent(id);
 
-			this.eventStore.append(event);
+			StoredEvent storedEvent = this.eventStore.append(event);
+
+			if (id == 1) {
+				firstEventId = storedEvent.eventId();
+			}
 		}
 
-		List<StoredEvent> events = this.eventStore.allStoredEventsBetween(10, 15);
+		List<StoredEvent> events =
+				this.eventStore.allStoredEventsBetween(firstEventId + 9, firstEventId + 14);
 
 		assertEquals(6, events.size());
 
-		int id = 10;
-
 		for (StoredEvent storedEvent : events) {
-			assertEquals(id, storedEvent.eventId());
-
 			TestableDomainEvent event = storedEvent.toDomainEvent();
 
-			assertEquals(id, event.id());
-
-			++id;
+			assertEquals(firstEventId + event.id() - 1, storedEvent.eventId());
+			assertTrue(event.id() >= 10 && event.id() <= 15);
 		}
 	}
 
 	public void testAllStoredEventsSince() throws Exception {
+		long firstEventId = 0;
+
 		for (int id = 1; id <= 20; ++id) {
 			DomainEvent event = new TestableDomainEvent(id);
 
-			this.eventStore.append(event);
+			StoredEvent storedEvent = this.eventStore.append(event);
+
+			if (id == 1) {
+				firstEventId = storedEvent.eventId();
+			}
 		}
 
-		List<StoredEvent> events = this.eventStore.allStoredEventsSince(11);
+		List<StoredEvent> events = this.eventStore.allStoredEventsSince(firstEventId + 10);
 
 		assertEquals(9, events.size());
 
-		int id = 12;
-
 		for (StoredEvent storedEvent : events) {
-			assertEquals(id, storedEvent.eventId());
-
 			TestableDomainEvent event = storedEvent.toDomainEvent();
 
-			assertEquals(id, event.id());
+			assertEquals(firstEventId + event.id() - 1, storedEvent.eventId());
+			assertTrue(event.id() >= 12);
+		}
+	}
 
-			++id;
+	public void testAllStoredEventsAtLongBounds() throws Exception {
+		for (int id = 1; id <= 20; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
 		}
+
+		assertEquals(20, this.eventStore.allStoredEventsBetween(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		assertTrue(this.eventStore.allStoredEventsSince(Long.MAX_VALUE).isEmpty());
 	}
 
 	public void testAppend() throws Exception {
+		long firstEventId = 0;
+
 		for (int id = 1; id <= 20; ++id) {
 			TestableDomainEvent event = new TestableDomainEvent(id);
 
 			StoredEvent storedEvent = this.eventStore.append(event);
 
-			assertEquals(event.id(), storedEvent.eventId());
+			if (id == 1) {
+				firstEventId = storedEvent.eventId();
+			}
+
+			assertEquals(firstEventId + event.id() - 1, storedEvent.eventId());
 		}
 
 		assertEquals(20, this.eventStore.countStoredEvents());
 	}
 
+	public void testAppendList() throws Exception {
+		List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+		for (int id = 1; id <= 250; ++id) {
+			events.add(new TestableDomainEvent(id));
+		}
+
+		List<StoredEvent> storedEvents = this.eventStore.append(events);
+
+		assertEquals(250, storedEvents.size());
+
+		// a list larger than the id block still gets consecutive ids
+		long firstEventId = storedEvents.get(0).eventId();
+
+		for (StoredEvent storedEvent : storedEvents) {
+			TestableDomainEvent event = storedEvent.toDomainEvent();
+
+			assertEquals(firstEventId + event.id() - 1, storedEvent.eventId());
+		}
+
+		assertEquals(250, this.eventStore.countStoredEvents());
+	}
+
+	public void testStoredEventsSinceInPages() throws Exception {
+		GemFireEventStore otherEventStore = new GemFireEventStore(3);
+
+		for (int id = 1; id <= 25; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+
+			otherEventStore.append(new TestableDomainEvent(id));
+		}
+
+		long lastEventId = 0;
+		int count = 0;
+
+		List<StoredEvent> page;
+
+		while (!(page = this.eventStore.storedEventsSince(lastEventId, 10)).isEmpty()) {
+			assertTrue(page.size() <= 10);
+
+			for (StoredEvent storedEvent : page) {
+				assertTrue(storedEvent.eventId() > lastEventId);
+
+				lastEventId = storedEvent.eventId();
+
+				++count;
+			}
+		}
+
+		assertEquals(50, count);
+		assertEquals(50, this.eventStore.allStoredEventsSince(0).size());
+	}
+
+	public void testStoredEventCursorResumesFromCheckpoint() throws Exception {
+		List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+		for (int id = 1; id <= 250; ++id) {
+			events.add(new TestableDomainEvent(id));
+		}
+
+		long firstEventId = this.eventStore.append(events).get(0).eventId();
+
+		StoredEventCursor cursor = this.eventStore.storedEventCursorSince(firstEventId - 1, 40);
+
+		for (int id = 1; id <= 100; ++id) {
+			TestableDomainEvent event = cursor.next().toDomainEvent();
+
+			assertEquals(id, event.id());
+		}
+
+		StoredEventCursor resumed =
+				this.eventStore.storedEventCursorSince(cursor.checkpoint(), 40);
+
+		int id = 100;
+
+		while (resumed.hasNext()) {
+			TestableDomainEvent event = resumed.next().toDomainEvent();
+
+			assertEquals(++id, event.id());
+		}
+
+		assertEquals(250, id);
+	}
+
+	public void testStoredEventCursorHoldsAtGapUntilTimeout() throws Exception {
+		GemFireEventStore blockedEventStore = new GemFireEventStore(10);
+		GemFireEventStore otherEventStore = new GemFireEventStore(10);
+
+		long firstEventId = blockedEventStore.append(new TestableDomainEvent(1)).eventId();
+
+		for (int id = 11; id <= 13; ++id) {
+			otherEventStore.append(new TestableDomainEvent(id));
+		}
+
+		StoredEventCursor cursor =
+				this.eventStore.storedEventCursorSince(firstEventId - 1, 40, 300L);
+
+		assertEquals(1, cursor.next().<TestableDomainEvent>toDomainEvent().id());
+
+		// the rest of the first block is missing, so the other block is held back
+		assertFalse(cursor.hasNext());
+
+		blockedEventStore.append(new TestableDomainEvent(2));
+
+		assertEquals(2, cursor.next().<TestableDomainEvent>toDomainEvent().id());
+		assertFalse(cursor.hasNext());
+		assertEquals(firstEventId + 1, cursor.checkpoint());
+
+		Thread.sleep(400L);
+
+		for (int id = 11; id <= 13; ++id) {
+			assertEquals(id, cursor.next().<TestableDomainEvent>toDomainEvent().id());
+		}
+
+		assertFalse(cursor.hasNext());
+	}
+
+	public void testStoresNeverShareEventIds() throws Exception {
+		final GemFireEventStore[] eventStores = {
+				new GemFireEventStore(7), new GemFireEventStore(11) };
+
+		final Set<Long> eventIds = Collections.synchronizedSet(new HashSet<Long>());
+
+		Thread[] threads = new Thread[4];
+
+		for (int idx = 0; idx < threads.length; ++idx) {
+			final GemFireEventStore eventStore = eventStores[idx % eventStores.length];
+
+			threads[idx] = new Thread() {
+				@Override
+				public void run() {
+					for (int id = 1; id <= 100; ++id) {
+						eventIds.add(eventStore.append(new TestableDomainEvent(id)).eventId());
+					}
+				}
+			};
+
+			threads[idx].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(400, eventIds.size());
+		assertEquals(400, this.eventStore.countStoredEvents());
+	}
+
+	public void testWriteBehind() throws Exception {
+		GemFireEventStore writeBehindEventStore = new GemFireEventStore(100, 10, 50L);
+
+		try {
+			for (int id = 1; id <= 25; ++id) {
+				writeBehindEventStore.append(new TestableDomainEvent(id));
+			}
+
+			// two full batches are written; the remainder waits for the interval
+			for (int wait = 0; wait < 100 && this.eventStore.countStoredEvents() < 25; ++wait) {
+				Thread.sleep(10L);
+			}
+
+			assertEquals(25, this.eventStore.countStoredEvents());
+
+			writeBehindEventStore.append(new TestableDomainEvent(26));
+
+			// reads flush first
+			assertEquals(26, writeBehindEventStore.countStoredEvents());
+
+		} finally {
+			writeBehindEventStore.close();
+		}
+	}
+
 	public void testCountStoredEvents() throws Exception {
 		for (int id = 1; id <= 20; ++id) {
 			DomainEvent event = new TestableDomainEvent(id);
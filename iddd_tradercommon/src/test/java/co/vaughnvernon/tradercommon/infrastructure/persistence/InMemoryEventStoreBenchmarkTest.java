@@ -0,0 +1,89 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.event.DomainEvent;
+import co.vaughnvernon.tradercommon.event.EventStore;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
+
+/**
+ * I measure appending 10 million events to an InMemoryEventStore
+ * and then polling it the way a notification publisher does,
+ * reading a short tail since a last known id, and reading random
+ * ranges. Results are printed; only the returned ranges are
+ * asserted.
+ */
+public class InMemoryEventStoreBenchmarkTest extends TestCase {
+
+	private static final int EVENTS = 10000000;
+	private static final int RANGE_LENGTH = 100;
+	private static final int READS = 200000;
+
+	public InMemoryEventStoreBenchmarkTest() {
+		super();
+	}
+
+	public void testAppendAndRangeReadsAtTenMillionEvents() throws Exception {
+		EventStore eventStore = new InMemoryEventStore();
+
+		// one shared event keeps the heap to the store's own footprint
+		DomainEvent event = new TestableDomainEvent(1);
+
+		long start = System.nanoTime();
+
+		for (int idx = 0; idx < EVENTS; ++idx) {
+			eventStore.append(event);
+		}
+
+		this.report("append", EVENTS, System.nanoTime() - start);
+
+		assertEquals(EVENTS, eventStore.countStoredEvents());
+
+		start = System.nanoTime();
+
+		for (int idx = 0; idx < READS; ++idx) {
+			List<StoredEvent> tail = eventStore.allStoredEventsSince(EVENTS - RANGE_LENGTH);
+
+			assertEquals(EVENTS - RANGE_LENGTH + 1, tail.get(0).eventId());
+		}
+
+		this.report("allStoredEventsSince(tail of " + RANGE_LENGTH + ")", READS, System.nanoTime() - start);
+
+		Random random = new Random(11L);
+
+		start = System.nanoTime();
+
+		for (int idx = 0; idx < READS; ++idx) {
+			long low = 1 + random.nextInt(EVENTS - RANGE_LENGTH);
+
+			List<StoredEvent> range = eventStore.allStoredEventsBetween(low, low + RANGE_LENGTH - 1);
+
+			assertEquals(RANGE_LENGTH, range.size());
+			assertEquals(low, range.get(0).eventId());
+		}
+
+		this.report("allStoredEventsBetween(" + RANGE_LENGTH + ")", READS, System.nanoTime() - start);
+	}
+
+	private void report(String anOperation, int anOperations, long aNanos) {
+		System.out.println(
+				"InMemoryEventStoreBenchmark: " + anOperation
+				+ ": ops/s=" + (anOperations * 1000000000L / Math.max(1L, aNanos)));
+	}
+}
@@ -20,6 +20,7 @@ import junit.framework.TestCase;
 import co.vaughnvernon.tradercommon.event.DomainEvent;
 import co.vaughnvernon.tradercommon.event.EventStore;
 import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
 
 public class InMemoryEventStoreTest extends TestCase {
 
@@ -77,6 +78,128 @@ public class InMemoryEventStoreTest extends TestCase {
 		}
 	}
 
+	public void testRangesAcrossSegments() throws Exception {
+		for (int id = 1; id <= 40000; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		List<StoredEvent> events = this.eventStore.allStoredEventsBetween(16380, 32800);
+
+		assertEquals(32800 - 16380 + 1, events.size());
+
+		long id = 16380;
+
+		for (StoredEvent storedEvent : events) {
+			assertEquals(id++, storedEvent.eventId());
+		}
+
+		assertEquals(5, this.eventStore.allStoredEventsBetween(-10, 5).size());
+		assertEquals(10, this.eventStore.allStoredEventsBetween(39991, 50000).size());
+		assertTrue(this.eventStore.allStoredEventsBetween(20, 10).isEmpty());
+
+		assertEquals(40000, this.eventStore.allStoredEventsSince(0).size());
+		assertEquals(40000, this.eventStore.allStoredEventsSince(-1).get(39999).eventId());
+		assertTrue(this.eventStore.allStoredEventsSince(40000).isEmpty());
+		assertTrue(this.eventStore.allStoredEventsSince(50000).isEmpty());
+	}
+
+	public void testReadersDoNotBlockAppend() throws Exception {
+		final int events = 100000;
+		final int[] failures = new int[1];
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				long lastEventId = 0;
+
+				while (lastEventId < events) {
+					for (StoredEvent storedEvent : eventStore.allStoredEventsSince(lastEventId)) {
+						if (storedEvent == null || storedEvent.eventId() != lastEventId + 1) {
+							++failures[0];
+
+							return;
+						}
+
+						lastEventId = storedEvent.eventId();
+					}
+				}
+			}
+		};
+
+		reader.start();
+
+		for (int id = 1; id <= events; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		reader.join();
+
+		assertEquals(0, failures[0]);
+		assertEquals(events, this.eventStore.countStoredEvents());
+	}
+
+	public void testStoredEventsSinceInPages() throws Exception {
+		for (int id = 1; id <= 25; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		long lastEventId = 0;
+		int pages = 0;
+
+		List<StoredEvent> page;
+
+		while (!(page = this.eventStore.storedEventsSince(lastEventId, 10)).isEmpty()) {
+			assertTrue(page.size() <= 10);
+
+			for (StoredEvent storedEvent : page) {
+				assertEquals(++lastEventId, storedEvent.eventId());
+			}
+
+			++pages;
+		}
+
+		assertEquals(25, lastEventId);
+		assertEquals(3, pages);
+	}
+
+	public void testStoredEventCursorResumesFromCheckpoint() throws Exception {
+		for (int id = 1; id <= 2500; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		StoredEventCursor cursor = this.eventStore.storedEventCursorSince(0, 100);
+
+		for (long eventId = 1; eventId <= 1000; ++eventId) {
+			assertEquals(eventId, cursor.next().eventId());
+		}
+
+		assertEquals(1000, cursor.checkpoint());
+
+		StoredEventCursor resumed =
+				this.eventStore.storedEventCursorSince(cursor.checkpoint(), 300);
+
+		long eventId = 1000;
+
+		while (resumed.hasNext()) {
+			StoredEvent storedEvent = resumed.next();
+
+			assertEquals(++eventId, storedEvent.eventId());
+
+			TestableDomainEvent event = storedEvent.toDomainEvent();
+
+			assertEquals(eventId, event.id());
+		}
+
+		assertEquals(2500, eventId);
+		assertEquals(2500, resumed.checkpoint());
+
+		this.eventStore.append(new TestableDomainEvent(2501));
+
+		assertTrue(resumed.hasNext());
+		assertEquals(2501, resumed.next().eventId());
+		assertFalse(resumed.hasNext());
+	}
+
 	public void testAppend() throws Exception {
 		for (int id = 1; id <= 20; ++id) {
 			TestableDomainEvent event = new TestableDomainEvent(id);
@@ -0,0 +1,104 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.event.DomainEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
+
+/**
+ * I measure appending events to a MappedFileEventStore with its
+ * default group commit, and replaying them from the start with a
+ * StoredEventCursor. Results are printed; only the replayed count is
+ * asserted.
+ */
+public class MappedFileEventStoreBenchmarkTest extends TestCase {
+
+	private static final int EVENTS = 200000;
+	private static final int WARMUP_EVENTS = 100000;
+
+	private File directory;
+
+	public MappedFileEventStoreBenchmarkTest() {
+		super();
+	}
+
+	public void testAppendAndReplay() throws Exception {
+		MappedFileEventStore eventStore = new MappedFileEventStore(this.directory);
+
+		DomainEvent event = new TestableDomainEvent(1);
+
+		try {
+			for (int idx = 0; idx < WARMUP_EVENTS; ++idx) {
+				eventStore.append(event);
+			}
+
+			long start = System.nanoTime();
+
+			for (int idx = 0; idx < EVENTS; ++idx) {
+				eventStore.append(event);
+			}
+
+			this.report("append", System.nanoTime() - start);
+
+			start = System.nanoTime();
+
+			StoredEventCursor cursor = eventStore.storedEventCursorSince(WARMUP_EVENTS, 1000);
+
+			int replayed = 0;
+
+			while (cursor.hasNext()) {
+				cursor.next();
+
+				++replayed;
+			}
+
+			this.report("replay", System.nanoTime() - start);
+
+			assertEquals(EVENTS, replayed);
+
+		} finally {
+			eventStore.close();
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.directory = File.createTempFile("events", "");
+		this.directory.delete();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+
+		this.directory.delete();
+
+		super.tearDown();
+	}
+
+	private void report(String anOperation, long aNanos) {
+		System.out.println(
+				"MappedFileEventStoreBenchmark: " + anOperation
+				+ ": ops/s=" + (EVENTS * 1000000000L / Math.max(1L, aNanos))
+				+ " ns/op=" + (aNanos / EVENTS));
+	}
+}
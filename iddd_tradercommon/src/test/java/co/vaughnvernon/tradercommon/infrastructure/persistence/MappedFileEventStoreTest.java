@@ -0,0 +1,380 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.event.DomainEvent;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.event.StoredEventCursor;
+
+public class MappedFileEventStoreTest extends TestCase {
+
+	private File directory;
+	private MappedFileEventStore eventStore;
+
+	public MappedFileEventStoreTest() {
+		super();
+	}
+
+	public void testAllStoredEventsBetween() throws Exception {
+		for (int id = 1; id <= 20; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		List<StoredEvent> events = this.eventStore.allStoredEventsBetween(10, 15);
+
+		assertEquals(6, events.size());
+
+		int id = 10;
+
+		for (StoredEvent storedEvent : events) {
+			assertEquals(id, storedEvent.eventId());
+
+			TestableDomainEvent event = storedEvent.toDomainEvent();
+
+			assertEquals(id, event.id());
+
+			++id;
+		}
+	}
+
+	public void testAllStoredEventsSince() throws Exception {
+		for (int id = 1; id <= 20; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		List<StoredEvent> events = this.eventStore.allStoredEventsSince(11);
+
+		assertEquals(9, events.size());
+		assertEquals(12, events.get(0).eventId());
+		assertEquals(20, events.get(8).eventId());
+
+		assertTrue(this.eventStore.allStoredEventsSince(20).isEmpty());
+	}
+
+	public void testAppendAcrossSegmentsAndReopen() throws Exception {
+		this.recreate(4096, 1);
+
+		List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+		for (int id = 1; id <= 1000; ++id) {
+			events.add(new TestableDomainEvent(id));
+		}
+
+		this.eventStore.append(events);
+
+		assertTrue(this.directory.list().length > 1);
+
+		this.reopen(4096);
+
+		assertEquals(1000, this.eventStore.countStoredEvents());
+
+		StoredEventCursor cursor = this.eventStore.storedEventCursorSince(0, 64);
+
+		int id = 0;
+
+		while (cursor.hasNext()) {
+			StoredEvent storedEvent = cursor.next();
+
+			TestableDomainEvent event = storedEvent.toDomainEvent();
+
+			assertEquals(++id, storedEvent.eventId());
+			assertEquals(id, event.id());
+		}
+
+		assertEquals(1000, id);
+
+		assertEquals(1001, this.eventStore.append(new TestableDomainEvent(1001)).eventId());
+	}
+
+	public void testOversizedEventFailsWholeList() throws Exception {
+		this.recreate(4096, 1);
+
+		char[] text = new char[5 * 1024];
+		Arrays.fill(text, 'x');
+
+		List<DomainEvent> events = new ArrayList<DomainEvent>();
+		events.add(new TestableDomainEvent(1));
+		events.add(new OversizedDomainEvent(new String(text)));
+
+		try {
+			this.eventStore.append(events);
+
+			fail("Should have refused the oversized event.");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		assertEquals(0, this.eventStore.countStoredEvents());
+
+		assertEquals(1, this.eventStore.append(new TestableDomainEvent(2)).eventId());
+
+		TestableDomainEvent event = this.eventStore.allStoredEventsSince(0).get(0).toDomainEvent();
+
+		assertEquals(2, event.id());
+
+		this.reopen(4096);
+
+		assertEquals(1, this.eventStore.countStoredEvents());
+	}
+
+	public void testFailedAppendIsRolledBack() throws Exception {
+		this.recreate(4096, 1);
+
+		for (int id = 1; id <= 10; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		// a directory in the way of every next segment fails the list part way
+		List<File> blockers = new ArrayList<File>();
+
+		for (long eventId = 11; eventId <= 110; ++eventId) {
+			File blocker = new File(this.directory, String.format("events-%020d.log", eventId));
+			blocker.mkdir();
+			blockers.add(blocker);
+		}
+
+		List<DomainEvent> events = new ArrayList<DomainEvent>();
+
+		for (int id = 1001; id <= 1100; ++id) {
+			events.add(new TestableDomainEvent(id));
+		}
+
+		try {
+			this.eventStore.append(events);
+
+			fail("Should have failed to create a segment.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		assertEquals(10, this.eventStore.countStoredEvents());
+
+		for (File blocker : blockers) {
+			blocker.delete();
+		}
+
+		assertEquals(11, this.eventStore.append(new TestableDomainEvent(11)).eventId());
+
+		this.reopen(4096);
+
+		assertEquals(11, this.eventStore.countStoredEvents());
+
+		List<StoredEvent> storedEvents = this.eventStore.allStoredEventsSince(0);
+
+		for (int idx = 0; idx < storedEvents.size(); ++idx) {
+			TestableDomainEvent event = storedEvents.get(idx).toDomainEvent();
+
+			assertEquals(idx + 1, event.id());
+		}
+	}
+
+	public void testRecoversFromTornTail() throws Exception {
+		for (int id = 1; id <= 10; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		this.eventStore.close();
+
+		File segment = new File(this.directory, this.directory.list()[0]);
+
+		long end = this.endOfRecords(segment);
+
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+
+		// corrupt the last record's payload, then leave a partial record after it
+		file.seek(end - 3);
+		file.write(new byte[] { 1, 2, 3 });
+		file.seek(end);
+		file.writeInt(200);
+		file.writeInt(7);
+		file.close();
+
+		this.eventStore = new MappedFileEventStore(this.directory, 1024 * 1024, 1, 0L);
+
+		assertEquals(9, this.eventStore.countStoredEvents());
+
+		assertEquals(10, this.eventStore.append(new TestableDomainEvent(10)).eventId());
+		assertEquals(11, this.eventStore.append(new TestableDomainEvent(11)).eventId());
+
+		this.reopen(1024 * 1024);
+
+		assertEquals(11, this.eventStore.countStoredEvents());
+
+		TestableDomainEvent event = this.eventStore.allStoredEventsSince(10).get(0).toDomainEvent();
+
+		assertEquals(11, event.id());
+	}
+
+	public void testGroupCommit() throws Exception {
+		this.eventStore.close();
+
+		this.eventStore = new MappedFileEventStore(this.directory, 1024 * 1024, 5, 0L);
+
+		for (int id = 1; id <= 4; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		assertEquals(0, this.eventStore.committedCount());
+
+		this.eventStore.append(new TestableDomainEvent(5));
+
+		assertEquals(5, this.eventStore.committedCount());
+
+		this.eventStore.close();
+
+		this.eventStore = new MappedFileEventStore(this.directory, 1024 * 1024, 1000, 5L);
+
+		this.eventStore.append(new TestableDomainEvent(6));
+
+		for (int wait = 0; wait < 100 && this.eventStore.committedCount() < 6; ++wait) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(6, this.eventStore.committedCount());
+	}
+
+	public void testReadersDoNotBlockAppend() throws Exception {
+		final int events = 20000;
+		final int[] failures = new int[1];
+
+		this.recreate(64 * 1024, 1000);
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				long lastEventId = 0;
+
+				while (lastEventId < events) {
+					for (StoredEvent storedEvent : eventStore.storedEventsSince(lastEventId, 100)) {
+						if (storedEvent.eventId() != lastEventId + 1) {
+							++failures[0];
+
+							return;
+						}
+
+						lastEventId = storedEvent.eventId();
+					}
+				}
+			}
+		};
+
+		reader.start();
+
+		for (int id = 1; id <= events; ++id) {
+			this.eventStore.append(new TestableDomainEvent(id));
+		}
+
+		reader.join();
+
+		assertEquals(0, failures[0]);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.directory = File.createTempFile("events", "");
+		this.directory.delete();
+
+		this.eventStore = new MappedFileEventStore(this.directory, 1024 * 1024, 1, 0L);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.eventStore.close();
+
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+
+		this.directory.delete();
+
+		super.tearDown();
+	}
+
+	private static class OversizedDomainEvent implements DomainEvent {
+
+		private Date occurredOn;
+		private String text;
+
+		OversizedDomainEvent(String aText) {
+			super();
+
+			this.occurredOn = new Date();
+			this.text = aText;
+		}
+
+		@Override
+		public int eventVersion() {
+			return 1;
+		}
+
+		@Override
+		public Date occurredOn() {
+			return this.occurredOn;
+		}
+
+		@Override
+		public String toString() {
+			return "OversizedDomainEvent [length=" + this.text.length() + "]";
+		}
+	}
+
+	private long endOfRecords(File aSegment) throws Exception {
+		RandomAccessFile file = new RandomAccessFile(aSegment, "r");
+
+		try {
+			long position = 0;
+
+			while (true) {
+				file.seek(position);
+
+				int length = file.readInt();
+
+				if (length == 0) {
+					return position;
+				}
+
+				position += 8 + length;
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	private void recreate(int aSegmentSize, int aCommitEveryAppends) {
+		this.eventStore.close();
+
+		for (File file : this.directory.listFiles()) {
+			file.delete();
+		}
+
+		this.eventStore = new MappedFileEventStore(this.directory, aSegmentSize, aCommitEveryAppends, 0L);
+	}
+
+	private void reopen(int aSegmentSize) {
+		this.eventStore.close();
+
+		this.eventStore = new MappedFileEventStore(this.directory, aSegmentSize, 1, 0L);
+	}
+}
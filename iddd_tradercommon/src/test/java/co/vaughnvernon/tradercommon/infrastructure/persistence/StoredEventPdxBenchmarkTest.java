@@ -0,0 +1,293 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.infrastructure.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.event.StoredEvent;
+import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.order.AccountId;
+import co.vaughnvernon.tradercommon.order.BuyOrderPlaced;
+import co.vaughnvernon.tradercommon.order.OrderId;
+import co.vaughnvernon.tradercommon.quote.Quote;
+import co.vaughnvernon.tradercommon.quote.TickerSymbol;
+
+import com.gemstone.gemfire.DataSerializer;
+import com.gemstone.gemfire.cache.CacheClosedException;
+import com.gemstone.gemfire.cache.client.ClientCache;
+import com.gemstone.gemfire.cache.client.ClientCacheFactory;
+
+/**
+ * I compare the PdxSerializable codecs of StoredEvent and its
+ * BuyOrderPlaced against the ReflectionBasedAutoSerializer that
+ * clientCache.xml registers, which I exercise with reflective twins
+ * having the same fields. Payload sizes and ns/op are printed; only
+ * the round trip is asserted.
+ */
+public class StoredEventPdxBenchmarkTest extends TestCase {
+
+	private static final int EVENTS = 100000;
+	private static final int WARMUP_EVENTS = 20000;
+
+	public StoredEventPdxBenchmarkTest() {
+		super();
+	}
+
+	public void testCodecRoundTrip() throws Exception {
+		StoredEvent storedEvent = this.storedEvent();
+
+		StoredEvent copy = this.deserialize(this.serialize(storedEvent));
+
+		assertEquals(storedEvent.eventId(), copy.eventId());
+
+		BuyOrderPlaced event = storedEvent.toDomainEvent();
+		BuyOrderPlaced eventCopy = copy.toDomainEvent();
+
+		assertEquals(event.accountId(), eventCopy.accountId());
+		assertEquals(event.cost(), eventCopy.cost());
+		assertEquals(event.occurredOn(), eventCopy.occurredOn());
+		assertEquals(event.orderFee(), eventCopy.orderFee());
+		assertEquals(event.orderId(), eventCopy.orderId());
+		assertEquals(event.placedOnDate(), eventCopy.placedOnDate());
+		assertEquals(event.quantityOfSharesOrdered(), eventCopy.quantityOfSharesOrdered());
+		assertEquals(event.quote(), eventCopy.quote());
+	}
+
+	public void testCodecVersusReflectiveSerialization() throws Exception {
+		StoredEvent storedEvent = this.storedEvent();
+		ReflectiveStoredEvent reflectiveStoredEvent = new ReflectiveStoredEvent(storedEvent);
+
+		this.measure("codec", storedEvent, WARMUP_EVENTS);
+		this.measure("reflective", reflectiveStoredEvent, WARMUP_EVENTS);
+
+		int codecSize = this.measure("codec", storedEvent, EVENTS);
+		int reflectiveSize = this.measure("reflective", reflectiveStoredEvent, EVENTS);
+
+		System.out.println(
+				"StoredEventPdxBenchmark: bytes codec=" + codecSize
+				+ " reflective=" + reflectiveSize);
+
+		assertTrue(codecSize > 0);
+		assertTrue(reflectiveSize > 0);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		ClientCache clientCache = null;
+
+		try {
+			clientCache = ClientCacheFactory.getAnyInstance();
+		} catch (CacheClosedException e) {
+			clientCache = null;
+		}
+		if (clientCache == null || clientCache.isClosed()) {
+			ClientCacheFactory ccf = new ClientCacheFactory();
+			ccf.set("cache-xml-file", "../iddd_nanotrader/target/classes/gemfire/clientCache.xml");
+			ccf.create();
+		}
+	}
+
+	private <T> T deserialize(byte[] aPayload) throws Exception {
+		return DataSerializer.readObject(
+				new DataInputStream(new ByteArrayInputStream(aPayload)));
+	}
+
+	private int measure(String aPath, Object anObject, int aCount) throws Exception {
+		byte[] payload = null;
+
+		long start = System.nanoTime();
+
+		for (int idx = 0; idx < aCount; ++idx) {
+			payload = this.serialize(anObject);
+		}
+
+		long serializeNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+
+		for (int idx = 0; idx < aCount; ++idx) {
+			assertNotNull(this.deserialize(payload));
+		}
+
+		long deserializeNanos = System.nanoTime() - start;
+
+		if (aCount == EVENTS) {
+			System.out.println(
+					"StoredEventPdxBenchmark: " + aPath
+					+ ": serialize ns/op=" + (serializeNanos / aCount)
+					+ " deserialize ns/op=" + (deserializeNanos / aCount));
+		}
+
+		return payload.length;
+	}
+
+	private byte[] serialize(Object anObject) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+		DataSerializer.writeObject(anObject, new DataOutputStream(bytes));
+
+		return bytes.toByteArray();
+	}
+
+	private StoredEvent storedEvent() {
+		BuyOrderPlaced event =
+				new BuyOrderPlaced(
+						AccountId.unique(),
+						OrderId.unique(),
+						new Quote(new TickerSymbol("VMW"), new Money("78.3500"), 100),
+						100,
+						new Date(),
+						new Money("7835.0000"),
+						new Money("9.9900"));
+
+		StoredEvent storedEvent = new StoredEvent(event);
+
+		storedEvent.setEventId(1234567L);
+
+		return storedEvent;
+	}
+
+	public static class ReflectiveMoney {
+		private BigDecimal amount;
+		private int scale;
+
+		public ReflectiveMoney() {
+			super();
+		}
+
+		ReflectiveMoney(Money aMoney) {
+			this();
+
+			this.amount = aMoney.amount();
+			this.scale = aMoney.amount().scale();
+		}
+	}
+
+	public static class ReflectiveAccountId {
+		private String id;
+
+		public ReflectiveAccountId() {
+			super();
+		}
+
+		ReflectiveAccountId(AccountId anAccountId) {
+			this();
+
+			this.id = anAccountId.id();
+		}
+	}
+
+	public static class ReflectiveOrderId {
+		private String id;
+		private String colocationId;
+
+		public ReflectiveOrderId() {
+			super();
+		}
+
+		ReflectiveOrderId(OrderId anOrderId) {
+			this();
+
+			this.id = anOrderId.id();
+			this.colocationId = anOrderId.colocationId();
+		}
+	}
+
+	public static class ReflectiveTickerSymbol {
+		private String symbol;
+
+		public ReflectiveTickerSymbol() {
+			super();
+		}
+
+		ReflectiveTickerSymbol(TickerSymbol aTickerSymbol) {
+			this();
+
+			this.symbol = aTickerSymbol.symbol();
+		}
+	}
+
+	public static class ReflectiveQuote {
+		private ReflectiveMoney price;
+		private int quantity;
+		private ReflectiveTickerSymbol tickerSymbol;
+
+		public ReflectiveQuote() {
+			super();
+		}
+
+		ReflectiveQuote(Quote aQuote) {
+			this();
+
+			this.price = new ReflectiveMoney(aQuote.price());
+			this.quantity = aQuote.quantity();
+			this.tickerSymbol = new ReflectiveTickerSymbol(aQuote.tickerSymbol());
+		}
+	}
+
+	public static class ReflectiveBuyOrderPlaced {
+		private ReflectiveAccountId accountId;
+		private ReflectiveMoney cost;
+		private ReflectiveMoney orderFee;
+		private Date occurredOn;
+		private ReflectiveOrderId orderId;
+		private Date placedOnDate;
+		private int quantityOfSharesOrdered;
+		private ReflectiveQuote quote;
+
+		public ReflectiveBuyOrderPlaced() {
+			super();
+		}
+
+		ReflectiveBuyOrderPlaced(BuyOrderPlaced anEvent) {
+			this();
+
+			this.accountId = new ReflectiveAccountId(anEvent.accountId());
+			this.cost = new ReflectiveMoney(anEvent.cost());
+			this.orderFee = new ReflectiveMoney(anEvent.orderFee());
+			this.occurredOn = anEvent.occurredOn();
+			this.orderId = new ReflectiveOrderId(anEvent.orderId());
+			this.placedOnDate = anEvent.placedOnDate();
+			this.quantityOfSharesOrdered = anEvent.quantityOfSharesOrdered();
+			this.quote = new ReflectiveQuote(anEvent.quote());
+		}
+	}
+
+	public static class ReflectiveStoredEvent {
+		private ReflectiveBuyOrderPlaced event;
+		private long eventId;
+
+		public ReflectiveStoredEvent() {
+			super();
+		}
+
+		ReflectiveStoredEvent(StoredEvent aStoredEvent) {
+			this();
+
+			BuyOrderPlaced event = aStoredEvent.toDomainEvent();
+
+			this.event = new ReflectiveBuyOrderPlaced(event);
+			this.eventId = aStoredEvent.eventId();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.monetary;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+/**
+ * I compare the allocation and throughput of a VWAP-style
+ * accumulation, sum(price * volume) / sum(volume), when done
+ * with Money and with FixedPointMoney. Results are printed;
+ * only the agreement of the two results is asserted.
+ */
+public class FixedPointMoneyBenchmarkTest extends TestCase {
+
+	private static final int ITERATIONS = 2000000;
+	private static final int WARMUP_ITERATIONS = 200000;
+
+	private long[] priceUnits;
+	private Money[] prices;
+	private long[] volumes;
+	private BigDecimal[] volumeDecimals;
+
+	public FixedPointMoneyBenchmarkTest() {
+		super();
+	}
+
+	public void testMoneyVersusFixedPointMoney() throws Exception {
+		this.accumulateWithMoney(WARMUP_ITERATIONS);
+		this.accumulateWithFixedPointMoney(WARMUP_ITERATIONS);
+
+		long allocatedBefore = this.allocatedBytes();
+		long start = System.nanoTime();
+
+		Money moneyVwap = this.accumulateWithMoney(ITERATIONS);
+
+		long moneyNanos = System.nanoTime() - start;
+		long moneyAllocated = this.allocatedBytes() - allocatedBefore;
+
+		allocatedBefore = this.allocatedBytes();
+		start = System.nanoTime();
+
+		long fixedPointVwap = this.accumulateWithFixedPointMoney(ITERATIONS);
+
+		long fixedPointNanos = System.nanoTime() - start;
+		long fixedPointAllocated = this.allocatedBytes() - allocatedBefore;
+
+		this.report("Money", moneyNanos, moneyAllocated);
+		this.report("FixedPointMoney", fixedPointNanos, fixedPointAllocated);
+
+		assertEquals(moneyVwap, FixedPointMoney.toMoney(fixedPointVwap));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.priceUnits = new long[1024];
+		this.prices = new Money[1024];
+		this.volumes = new long[1024];
+		this.volumeDecimals = new BigDecimal[1024];
+
+		for (int idx = 0; idx < 1024; ++idx) {
+			this.priceUnits[idx] = 300000L + idx * 13L;
+			this.prices[idx] = FixedPointMoney.toMoney(this.priceUnits[idx]);
+			this.volumes[idx] = 100L + idx;
+			this.volumeDecimals[idx] = BigDecimal.valueOf(this.volumes[idx]);
+		}
+	}
+
+	private long accumulateWithFixedPointMoney(int anIterations) {
+		long cumulativePriceVolume = 0L;
+		long cumulativeVolume = 0L;
+
+		for (int idx = 0; idx < anIterations; ++idx) {
+			int slot = idx & 1023;
+
+			cumulativePriceVolume =
+					FixedPointMoney.addedTo(
+							cumulativePriceVolume,
+							FixedPointMoney.multipliedBy(this.priceUnits[slot], this.volumes[slot]));
+
+			cumulativeVolume += this.volumes[slot];
+		}
+
+		return FixedPointMoney.dividedBy(cumulativePriceVolume, cumulativeVolume);
+	}
+
+	private Money accumulateWithMoney(int anIterations) {
+		Money cumulativePriceVolume = new Money();
+		BigDecimal cumulativeVolume = BigDecimal.ZERO;
+
+		for (int idx = 0; idx < anIterations; ++idx) {
+			int slot = idx & 1023;
+
+			cumulativePriceVolume =
+					cumulativePriceVolume.addedTo(
+							this.prices[slot].multipliedBy(this.volumeDecimals[slot]));
+
+			cumulativeVolume = cumulativeVolume.add(this.volumeDecimals[slot]);
+		}
+
+		return cumulativePriceVolume.dividedBy(cumulativeVolume);
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadMXBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0L;
+	}
+
+	private void report(String aName, long aNanos, long anAllocatedBytes) {
+		System.out.println(
+				"FixedPointMoneyBenchmark: " + aName
+				+ ": ops/s=" + (ITERATIONS * 1000000000L / Math.max(1L, aNanos))
+				+ " bytes/op=" + (anAllocatedBytes / ITERATIONS));
+	}
+}
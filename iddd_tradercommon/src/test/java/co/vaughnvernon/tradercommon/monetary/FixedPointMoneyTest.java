@@ -0,0 +1,139 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.monetary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FixedPointMoneyTest extends TestCase {
+
+	public FixedPointMoneyTest() {
+		super();
+	}
+
+	public void testLosslessConversion() throws Exception {
+		Money money = new Money("123.45");
+
+		long units = FixedPointMoney.unitsOf(money);
+
+		assertEquals(1234500L, units);
+		assertEquals(new Money("123.4500"), FixedPointMoney.toMoney(units));
+		assertEquals(0, money.amount().compareTo(FixedPointMoney.toMoney(units).amount()));
+
+		assertEquals(-5L, FixedPointMoney.unitsOf(new Money("-0.0005")));
+		assertEquals(12L, FixedPointMoney.unitsOf(new Money("0.00120000")));
+	}
+
+	public void testNotRepresentable() throws Exception {
+		Money money = new Money("1.00005");
+
+		assertFalse(FixedPointMoney.isRepresentable(money));
+
+		try {
+			FixedPointMoney.unitsOf(money);
+
+			fail("Must not lose precision.");
+
+		} catch (ArithmeticException e) {
+			// success
+		}
+
+		assertEquals(10001L, FixedPointMoney.unitsOfRounded(money));
+		assertEquals(-10001L, FixedPointMoney.unitsOfRounded(new Money("-1.00005")));
+
+		assertFalse(FixedPointMoney.isRepresentable(new Money("1000000000000000")));
+		assertTrue(FixedPointMoney.isRepresentable(new Money("99999999999999.9999")));
+
+		assertTrue(FixedPointMoney.isWholeQuantity(new BigDecimal("100.00")));
+		assertFalse(FixedPointMoney.isWholeQuantity(new BigDecimal("100.5")));
+	}
+
+	public void testOverflowChecked() throws Exception {
+		try {
+			FixedPointMoney.addedTo(Long.MAX_VALUE, 1L);
+
+			fail("Must overflow.");
+
+		} catch (ArithmeticException e) {
+			// success
+		}
+
+		try {
+			FixedPointMoney.multipliedBy(Long.MAX_VALUE / 2, 3L);
+
+			fail("Must overflow.");
+
+		} catch (ArithmeticException e) {
+			// success
+		}
+
+		try {
+			FixedPointMoney.dividedBy(1L, 0L);
+
+			fail("Must not divide by zero.");
+
+		} catch (ArithmeticException e) {
+			// success
+		}
+	}
+
+	public void testArithmeticMatchesMoney() throws Exception {
+		Random random = new Random(4L);
+
+		for (int idx = 0; idx < 100000; ++idx) {
+			long units = random.nextInt(2000000000) - 1000000000L;
+			long otherUnits = random.nextInt(2000000000) - 1000000000L;
+			long quantity = random.nextInt(100000) - 50000L;
+
+			Money money = FixedPointMoney.toMoney(units);
+			Money otherMoney = FixedPointMoney.toMoney(otherUnits);
+
+			this.assertSameAmount(
+					money.addedTo(otherMoney),
+					FixedPointMoney.addedTo(units, otherUnits));
+
+			this.assertSameAmount(
+					money.subtract(otherMoney),
+					FixedPointMoney.subtract(units, otherUnits));
+
+			this.assertSameAmount(
+					money.multipliedBy(new BigDecimal(quantity)),
+					FixedPointMoney.multipliedBy(units, quantity));
+
+			if (quantity != 0) {
+				assertEquals(
+						money.dividedBy(new BigDecimal(quantity)),
+						FixedPointMoney.toMoney(FixedPointMoney.dividedBy(units, quantity)));
+			}
+
+			if (otherUnits != 0) {
+				assertEquals(
+						money.dividedBy(otherMoney),
+						FixedPointMoney.toMoney(FixedPointMoney.dividedByAmount(units, otherUnits)));
+			}
+
+			assertEquals(
+					money.multipliedBy(otherMoney).amount().setScale(4, RoundingMode.HALF_UP),
+					FixedPointMoney.toMoney(FixedPointMoney.multipliedByAmount(units, otherUnits)).amount());
+		}
+	}
+
+	private void assertSameAmount(Money anExpected, long anActualUnits) {
+		assertEquals(0, anExpected.amount().compareTo(FixedPointMoney.toMoney(anActualUnits).amount()));
+	}
+}
@@ -18,6 +18,8 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import co.vaughnvernon.tradercommon.infrastructure.persistence.InMemoryStreamingQuoteRepository;
@@ -66,6 +68,82 @@ public class StreamingQuoteApplicationServiceTest extends TestCase {
 		assertFalse(googUpdatedQuoteBar.price().equals(googQuoteBar.price()));
 	}
 
+	public void testConcurrentUpdatesAndLatestPriceReads() throws Exception {
+		final int symbols = 4;
+		final int updates = 2000;
+
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicInteger regressions = new AtomicInteger(0);
+
+		Thread[] writers = new Thread[symbols];
+
+		for (int idx = 0; idx < symbols; ++idx) {
+			final String symbol = "SQTEST" + idx;
+
+			writers[idx] = new Thread() {
+				@Override
+				public void run() {
+					for (int price = 1; price <= updates; ++price) {
+						streamingQuoteApplicationService()
+							.updateStreamingQuoteWith(quoteBarOf(symbol, price));
+					}
+				}
+			};
+		}
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				int[] lastPrices = new int[symbols];
+
+				while (!done.get()) {
+					for (int idx = 0; idx < symbols; ++idx) {
+						Money price =
+								streamingQuoteApplicationService()
+									.latestPriceFor(new TickerSymbol("SQTEST" + idx));
+
+						if (price == null) {
+							if (lastPrices[idx] > 0) {
+								regressions.incrementAndGet();
+							}
+						} else {
+							int latest = price.amount().intValue();
+
+							if (latest < lastPrices[idx]) {
+								regressions.incrementAndGet();
+							}
+
+							lastPrices[idx] = latest;
+						}
+					}
+				}
+			}
+		};
+
+		reader.start();
+
+		for (Thread writer : writers) {
+			writer.start();
+		}
+
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		done.set(true);
+
+		reader.join();
+
+		assertEquals(0, regressions.get());
+
+		for (int idx = 0; idx < symbols; ++idx) {
+			assertEquals(
+					new Money(updates),
+					this.streamingQuoteApplicationService()
+						.latestPriceFor(new TickerSymbol("SQTEST" + idx)));
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		this.streamingQuoteApplicationService =
@@ -75,6 +153,17 @@ public class StreamingQuoteApplicationServiceTest extends TestCase {
 		super.setUp();
 	}
 
+	private QuoteBar quoteBarOf(String aSymbol, int aPrice) {
+		Money price = new Money(aPrice);
+
+		Collection<PriceVolume> priceVolumes = new ArrayList<PriceVolume>();
+
+		priceVolumes.add(new PriceVolume(price, BigDecimal.ONE));
+
+		return new QuoteBar(aSymbol + " Corporation", aSymbol, price, price, price,
+				price, price, BigDecimal.ONE, priceVolumes, BigDecimal.ONE, 1);
+	}
+
 	private QuoteBar googQuoteBarFixture() {
 
 		Collection<PriceVolume> priceVolumes =
@@ -0,0 +1,73 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quote;
+
+import junit.framework.TestCase;
+
+public class SymbolTableTest extends TestCase {
+
+	public SymbolTableTest() {
+		super();
+	}
+
+	public void testDenseIdsAndSharedTickerSymbols() throws Exception {
+		SymbolRegistry registry = SymbolRegistry.instance();
+
+		int first = registry.idOf("SYMTEST1");
+		int second = registry.idOf("SYMTEST2");
+
+		assertEquals(first, registry.idOf("SYMTEST1"));
+		assertEquals(first + 1, second);
+		assertEquals("SYMTEST2", registry.symbolOf(second));
+		assertEquals(-1, registry.existingIdOf("SYMTEST-UNKNOWN"));
+
+		assertSame(registry.tickerSymbolOf(first), registry.tickerSymbolOf("SYMTEST1"));
+		assertEquals(new TickerSymbol("SYMTEST1"), registry.tickerSymbolOf(first));
+	}
+
+	public void testPutGetRemove() throws Exception {
+		SymbolTable<String> table = new SymbolTable<String>();
+
+		assertNull(table.get("SYMTEST3"));
+		assertEquals(-1, SymbolRegistry.instance().existingIdOf("SYMTEST3"));
+
+		assertNull(table.put("SYMTEST3", "three"));
+		assertEquals("three", table.get("SYMTEST3"));
+		assertEquals("three", table.get(SymbolRegistry.instance().idOf("SYMTEST3")));
+
+		assertEquals("three", table.putIfAbsent(SymbolRegistry.instance().idOf("SYMTEST3"), "other"));
+		assertEquals(1, table.values().size());
+
+		assertEquals("three", table.remove("SYMTEST3"));
+		assertNull(table.get("SYMTEST3"));
+		assertTrue(table.values().isEmpty());
+	}
+
+	public void testGrowsBeyondInitialCapacity() throws Exception {
+		SymbolTable<Integer> table = new SymbolTable<Integer>();
+
+		for (int idx = 0; idx < 500; ++idx) {
+			table.put("SYMGROW" + idx, idx);
+		}
+
+		for (int idx = 0; idx < 500; ++idx) {
+			assertEquals(Integer.valueOf(idx), table.get("SYMGROW" + idx));
+		}
+
+		table.clear();
+
+		assertTrue(table.values().isEmpty());
+	}
+}
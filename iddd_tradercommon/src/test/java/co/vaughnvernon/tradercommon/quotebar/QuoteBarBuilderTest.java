@@ -0,0 +1,176 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotebar;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.gson.Gson;
+
+import co.vaughnvernon.tradercommon.monetary.FixedPointMoney;
+import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.quote.SymbolRegistry;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
+
+public class QuoteBarBuilderTest extends TestCase {
+
+	public QuoteBarBuilderTest() {
+		super();
+	}
+
+	public void testBuildIdenticalToAggregate() throws Exception {
+		Random random = new Random(20130301L);
+
+		QuoteBarAggregator aggregator = new QuoteBarAggregator();
+
+		for (int bar = 0; bar < 200; ++bar) {
+			List<FeedQuote> feedQuotes = new ArrayList<FeedQuote>();
+
+			QuoteBarBuilder builder = aggregator.newQuoteBarBuilder();
+
+			int quotesInBar = 1 + random.nextInt(100);
+
+			for (int idx = 0; idx < quotesInBar; ++idx) {
+				FeedQuote feedQuote = this.randomFeedQuote(random);
+
+				feedQuotes.add(feedQuote);
+
+				builder.add(feedQuote);
+			}
+
+			QuoteBar expected = aggregator.aggregateFrom(feedQuotes);
+			QuoteBar actual = builder.build();
+
+			assertEquals(expected, actual);
+			assertEquals(expected.priceVolume(), actual.priceVolume());
+			assertEquals(expected.totalQuantity(), actual.totalQuantity());
+			assertEquals(expected.totalQuotesInBar(), actual.totalQuotesInBar());
+			assertEquals(expected.toString(), actual.toString());
+		}
+	}
+
+	public void testBuildFromUnitsIdenticalToFeedQuotes() throws Exception {
+		Random random = new Random(20130302L);
+
+		for (int bar = 0; bar < 200; ++bar) {
+			QuoteBarBuilder feedQuoteBuilder = new QuoteBarBuilder();
+			QuoteBarBuilder unitsBuilder = new QuoteBarBuilder();
+			QuoteBarBuilder mixedBuilder = new QuoteBarBuilder();
+
+			int quotesInBar = 1 + random.nextInt(100);
+
+			for (int idx = 0; idx < quotesInBar; ++idx) {
+				FeedQuote feedQuote = this.randomFeedQuote(random);
+
+				feedQuoteBuilder.add(feedQuote);
+
+				this.addUnitsOf(feedQuote, unitsBuilder);
+
+				if (idx % 2 == 0) {
+					this.addUnitsOf(feedQuote, mixedBuilder);
+				} else {
+					mixedBuilder.add(feedQuote);
+				}
+			}
+
+			QuoteBar expected = feedQuoteBuilder.build();
+
+			QuoteBar actual = unitsBuilder.build();
+
+			assertEquals(expected, actual);
+			assertEquals(expected.priceVolume(), actual.priceVolume());
+			assertEquals(expected.totalQuantity(), actual.totalQuantity());
+			assertEquals(expected.totalQuotesInBar(), actual.totalQuotesInBar());
+			assertEquals("Oracle Corporation", actual.companyName());
+
+			QuoteBar mixed = mixedBuilder.build();
+
+			assertEquals(expected, mixed);
+			assertEquals(expected.priceVolume(), mixed.priceVolume());
+			assertEquals(expected.totalQuotesInBar(), mixed.totalQuotesInBar());
+		}
+	}
+
+	public void testSymbolIdResolvedAfterDeserialization() throws Exception {
+		SymbolRegistry.instance().idOf("QBZERO");
+
+		int symbolId = SymbolRegistry.instance().idOf("QBSYM");
+
+		Money price = new Money("12.34");
+
+		QuoteBar quoteBar =
+				new QuoteBarBuilder()
+					.add(new FeedQuote(
+							"QB Symbol Inc.", price, price, price, price, price,
+							BigDecimal.ONE, "QBSYM", BigDecimal.TEN))
+					.build();
+
+		Gson gson = new Gson();
+
+		QuoteBar deserialized = gson.fromJson(gson.toJson(quoteBar), QuoteBar.class);
+
+		assertEquals(symbolId, quoteBar.symbolId());
+		assertEquals(symbolId, deserialized.symbolId());
+	}
+
+	public void testBuildWithoutFeedQuotes() throws Exception {
+		QuoteBarBuilder builder = new QuoteBarBuilder();
+
+		assertTrue(builder.isEmpty());
+
+		try {
+			builder.build();
+
+			fail("At least one feed quote must be added.");
+
+		} catch (IllegalStateException e) {
+			// success
+		}
+	}
+
+	private void addUnitsOf(FeedQuote aFeedQuote, QuoteBarBuilder aBuilder) {
+		aBuilder.add(
+				aFeedQuote.companyName(),
+				SymbolRegistry.instance().idOf(aFeedQuote.symbol()),
+				FixedPointMoney.unitsOf(aFeedQuote.high()),
+				FixedPointMoney.unitsOf(aFeedQuote.low()),
+				FixedPointMoney.unitsOf(aFeedQuote.open()),
+				FixedPointMoney.unitsOf(aFeedQuote.close()),
+				FixedPointMoney.unitsOf(aFeedQuote.price()),
+				FixedPointMoney.wholeQuantityOf(aFeedQuote.quantity()),
+				FixedPointMoney.wholeQuantityOf(aFeedQuote.volume()));
+	}
+
+	private FeedQuote randomFeedQuote(Random aRandom) {
+		Money open = this.randomPrice(aRandom);
+		Money close = this.randomPrice(aRandom);
+		Money high = this.randomPrice(aRandom);
+		Money low = this.randomPrice(aRandom);
+		Money price = this.randomPrice(aRandom);
+
+		return new FeedQuote(
+				"Oracle Corporation", high, low, open, close, price,
+				new BigDecimal(1 + aRandom.nextInt(1000)), "ORCL",
+				new BigDecimal(1 + aRandom.nextInt(100000)));
+	}
+
+	private Money randomPrice(Random aRandom) {
+		return new Money(BigDecimal.valueOf(100000 + aRandom.nextInt(900000), 4));
+	}
+}
@@ -0,0 +1,188 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotebar;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.monetary.Money;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuote;
+import co.vaughnvernon.tradercommon.quotefeed.FeedQuoteWaitStrategy;
+import co.vaughnvernon.tradercommon.quotefeed.FlyweightRingBufferMessenger;
+
+public class ShardedFeedQuoteCollatingQuoteBarDispatcherTest extends TestCase {
+
+	private ShardedFeedQuoteCollatingQuoteBarDispatcher dispatcher;
+	private List<QuoteBar> quoteBars;
+
+	public ShardedFeedQuoteCollatingQuoteBarDispatcherTest() {
+		super();
+	}
+
+	public void testShardCountMustBePositive() throws Exception {
+		try {
+			new ShardedFeedQuoteCollatingQuoteBarDispatcher(new QuoteBarAggregator(), 1000L, 10, 0);
+
+			fail("Shard count must be greater than zero.");
+
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	public void testDispatchOnMaximumQuoteCount() throws Exception {
+		this.newDispatcher(60000L, 10);
+
+		for (int idx = 1; idx <= 25; ++idx) {
+			this.dispatcher.receive(this.feedQuoteOf("AAPL", "500.00", idx));
+			this.dispatcher.receive(this.feedQuoteOf("MSFT", "30.00", idx));
+		}
+
+		this.awaitQuoteBars(4);
+
+		assertEquals(4, this.quoteBars.size());
+
+		int lastAaplVolume = 0;
+
+		for (QuoteBar quoteBar : this.quoteBars) {
+			assertEquals(10, quoteBar.totalQuotesInBar());
+
+			if (quoteBar.symbol().equals("AAPL")) {
+				assertTrue(quoteBar.volume().intValue() > lastAaplVolume);
+
+				lastAaplVolume = quoteBar.volume().intValue();
+			}
+		}
+	}
+
+	public void testDispatchFlyweightQuotes() throws Exception {
+		this.newDispatcher(60000L, 10);
+
+		FlyweightRingBufferMessenger messenger =
+				new FlyweightRingBufferMessenger(1024, FeedQuoteWaitStrategy.Yield);
+
+		try {
+			messenger.subscribeFlyweight(this.dispatcher);
+
+			int symbolId = messenger.registerSymbol("VMW", "VMware, Inc.");
+
+			for (int idx = 1; idx <= 20; ++idx) {
+				messenger.publish(symbolId, 790000L, 780000L, 783500L, 783500L, 785000L, 10L, idx);
+			}
+
+			this.awaitQuoteBars(2);
+
+		} finally {
+			messenger.close();
+		}
+
+		assertEquals(2, this.quoteBars.size());
+
+		QuoteBar quoteBar = this.quoteBars.get(0);
+
+		assertEquals("VMW", quoteBar.symbol());
+		assertEquals("VMware, Inc.", quoteBar.companyName());
+		assertEquals(new Money("79.0000"), quoteBar.high());
+		assertEquals(new Money("78.5000"), quoteBar.price());
+		assertEquals(new BigDecimal(100), quoteBar.totalQuantity());
+		assertEquals(new BigDecimal(55), quoteBar.volume());
+		assertEquals(10, quoteBar.totalQuotesInBar());
+	}
+
+	public void testDispatchOnTimeoutWithoutFurtherQuotes() throws Exception {
+		this.newDispatcher(200L, 100);
+
+		for (int idx = 1; idx <= 5; ++idx) {
+			this.dispatcher.receive(this.feedQuoteOf("ORCL", "35.08", idx));
+		}
+
+		Thread.sleep(50L);
+
+		assertTrue(this.quoteBars.isEmpty());
+
+		this.awaitQuoteBars(1);
+
+		assertEquals(1, this.quoteBars.size());
+		assertEquals("ORCL", this.quoteBars.get(0).symbol());
+		assertEquals(5, this.quoteBars.get(0).totalQuotesInBar());
+	}
+
+	public void testSymbolsInDifferentShardsAreIndependent() throws Exception {
+		this.newDispatcher(60000L, 3);
+
+		this.dispatcher.receive(this.feedQuoteOf("IBM", "200.00", 1));
+		this.dispatcher.receive(this.feedQuoteOf("IBM", "200.00", 2));
+
+		for (int idx = 1; idx <= 3; ++idx) {
+			this.dispatcher.receive(this.feedQuoteOf("GOOG", "800.00", idx));
+		}
+
+		this.awaitQuoteBars(1);
+
+		Thread.sleep(100L);
+
+		assertEquals(1, this.quoteBars.size());
+		assertEquals("GOOG", this.quoteBars.get(0).symbol());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.quoteBars = Collections.synchronizedList(new ArrayList<QuoteBar>());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (this.dispatcher != null) {
+			this.dispatcher.close();
+		}
+
+		super.tearDown();
+	}
+
+	private void awaitQuoteBars(int aCount) throws Exception {
+		for (int wait = 0; wait < 500 && this.quoteBars.size() < aCount; ++wait) {
+			Thread.sleep(10L);
+		}
+	}
+
+	private FeedQuote feedQuoteOf(String aSymbol, String aPrice, int aVolume) {
+		Money price = new Money(aPrice);
+
+		return new FeedQuote(
+				aSymbol + " Inc.", price, price, price, price, price,
+				BigDecimal.ONE, aSymbol, new BigDecimal(aVolume));
+	}
+
+	private void newDispatcher(long aTimeoutThreshold, int aMaximumQuoteCount) {
+		this.dispatcher =
+				new ShardedFeedQuoteCollatingQuoteBarDispatcher(
+						new QuoteBarAggregator(),
+						aTimeoutThreshold,
+						aMaximumQuoteCount,
+						4);
+
+		this.dispatcher.registerQuoteBarInterest(new QuoteBarInterest() {
+			@Override
+			public void inform(QuoteBar aQuoteBar) {
+				quoteBars.add(aQuoteBar);
+			}
+		});
+	}
+}
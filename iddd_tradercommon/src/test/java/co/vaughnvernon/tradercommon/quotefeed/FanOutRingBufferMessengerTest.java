@@ -0,0 +1,174 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.monetary.Money;
+
+public class FanOutRingBufferMessengerTest extends TestCase {
+
+	private static final int CAPACITY = 16;
+
+	private FeedQuote feedQuote;
+	private FanOutRingBufferMessenger messenger;
+
+	public FanOutRingBufferMessengerTest() {
+		super();
+	}
+
+	public void testEverySubscriberReceivesEveryQuote() throws Exception {
+		final AtomicInteger received1 = new AtomicInteger(0);
+		final AtomicInteger received2 = new AtomicInteger(0);
+
+		this.messenger.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				received1.incrementAndGet();
+			}
+		});
+
+		this.messenger.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				received2.incrementAndGet();
+			}
+		});
+
+		for (int idx = 0; idx < 10000; ++idx) {
+			this.messenger.publish(this.feedQuote);
+		}
+
+		for (int wait = 0; wait < 500 && (received1.get() < 10000 || received2.get() < 10000); ++wait) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(10000, received1.get());
+		assertEquals(10000, received2.get());
+	}
+
+	public void testSlowSubscriberDoesNotBlockOthers() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger fastReceived = new AtomicInteger(0);
+
+		FeedQuoteSubscriber slowSubscriber = new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				try {
+					release.await(10L, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		};
+
+		FeedQuoteSubscriber fastSubscriber = new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				fastReceived.incrementAndGet();
+			}
+		};
+
+		this.messenger.subscribe(slowSubscriber);
+		this.messenger.subscribe(fastSubscriber);
+
+		int published = CAPACITY / 2;
+
+		for (int idx = 0; idx < published; ++idx) {
+			this.messenger.publish(this.feedQuote);
+		}
+
+		for (int wait = 0; wait < 500 && fastReceived.get() < published; ++wait) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(published, fastReceived.get());
+		assertEquals(0L, this.messenger.lagOf(fastSubscriber));
+		assertEquals(published, this.messenger.lagOf(slowSubscriber));
+		assertEquals(Long.valueOf(published), this.messenger.subscriberLags().get(slowSubscriber));
+
+		release.countDown();
+
+		for (int wait = 0; wait < 500 && this.messenger.lagOf(slowSubscriber) > 0; ++wait) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(0L, this.messenger.lagOf(slowSubscriber));
+	}
+
+	public void testSlowestCursorGatesProducer() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+
+		this.messenger.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				try {
+					release.await(10L, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+			}
+		});
+
+		final AtomicInteger published = new AtomicInteger(0);
+
+		Thread producer = new Thread() {
+			@Override
+			public void run() {
+				for (int idx = 0; idx < CAPACITY * 2; ++idx) {
+					messenger.publish(feedQuote);
+					published.incrementAndGet();
+				}
+			}
+		};
+
+		producer.start();
+
+		Thread.sleep(500L);
+
+		assertEquals(CAPACITY, published.get());
+
+		release.countDown();
+
+		producer.join(10000L);
+
+		assertEquals(CAPACITY * 2, published.get());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		Money price = new Money("35.08");
+
+		this.feedQuote =
+				new FeedQuote(
+						"Oracle Corporation", price, price, price, price, price,
+						BigDecimal.ONE, "ORCL", BigDecimal.ONE);
+
+		this.messenger = new FanOutRingBufferMessenger(CAPACITY, FeedQuoteWaitStrategy.Park);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.messenger.close();
+
+		super.tearDown();
+	}
+}
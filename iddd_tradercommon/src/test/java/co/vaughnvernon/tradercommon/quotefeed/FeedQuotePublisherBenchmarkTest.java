@@ -0,0 +1,131 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.monetary.Money;
+
+/**
+ * Compares the publish-to-receive latency and burst throughput of
+ * ThreadManagedRingBufferMessenger and SequencedRingBufferMessenger.
+ * The results are printed; only delivery is asserted.
+ */
+public class FeedQuotePublisherBenchmarkTest extends TestCase {
+
+	private static final int BURST_QUOTES = 1000000;
+	private static final int PING_PONG_QUOTES = 500;
+	private static final int WARM_UP_QUOTES = 50;
+
+	private FeedQuote feedQuote;
+
+	public FeedQuotePublisherBenchmarkTest() {
+		super();
+	}
+
+	public void testPingPongLatency() throws Exception {
+		this.pingPong("ThreadManagedRingBufferMessenger", new ThreadManagedRingBufferMessenger());
+
+		for (FeedQuoteWaitStrategy waitStrategy : FeedQuoteWaitStrategy.values()) {
+			SequencedRingBufferMessenger messenger =
+					new SequencedRingBufferMessenger(1024, waitStrategy);
+
+			this.pingPong("SequencedRingBufferMessenger/" + waitStrategy, messenger);
+
+			messenger.close();
+		}
+	}
+
+	public void testSequencedBurstThroughput() throws Exception {
+		for (FeedQuoteWaitStrategy waitStrategy : FeedQuoteWaitStrategy.values()) {
+			SequencedRingBufferMessenger messenger =
+					new SequencedRingBufferMessenger(1024, waitStrategy);
+
+			final AtomicLong received = new AtomicLong(0L);
+
+			messenger.subscribe(new FeedQuoteSubscriber() {
+				@Override
+				public void receive(FeedQuote aFeedQuote) {
+					received.incrementAndGet();
+				}
+			});
+
+			long start = System.nanoTime();
+
+			for (int idx = 0; idx < BURST_QUOTES; ++idx) {
+				messenger.publish(this.feedQuote);
+			}
+
+			while (received.get() < BURST_QUOTES) {
+				Thread.yield();
+			}
+
+			long elapsed = System.nanoTime() - start;
+
+			messenger.close();
+
+			System.out.println(
+					"BURST: SequencedRingBufferMessenger/" + waitStrategy + ": "
+					+ (BURST_QUOTES * 1000000000L / elapsed) + " quotes/s");
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		Money price = new Money("27.30");
+
+		this.feedQuote =
+				new FeedQuote(
+						"Microsoft Corporation", price, price, price, price, price,
+						BigDecimal.TEN, "MSFT", BigDecimal.TEN);
+	}
+
+	private void pingPong(String aName, FeedQuotePublisher aPublisher) throws Exception {
+		final AtomicLong received = new AtomicLong(0L);
+
+		aPublisher.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				received.incrementAndGet();
+			}
+		});
+
+		long totalNanos = 0L;
+
+		for (int idx = 1; idx <= WARM_UP_QUOTES + PING_PONG_QUOTES; ++idx) {
+			long start = System.nanoTime();
+
+			aPublisher.publish(this.feedQuote);
+
+			while (received.get() < idx) {
+				Thread.yield();
+			}
+
+			if (idx > WARM_UP_QUOTES) {
+				totalNanos += System.nanoTime() - start;
+			}
+		}
+
+		assertEquals(WARM_UP_QUOTES + PING_PONG_QUOTES, received.get());
+
+		System.out.println(
+				"PING-PONG: " + aName + ": "
+				+ (totalNanos / PING_PONG_QUOTES / 1000L) + " us/quote");
+	}
+}
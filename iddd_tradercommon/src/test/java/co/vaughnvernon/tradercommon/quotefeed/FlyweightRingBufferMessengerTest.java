@@ -0,0 +1,145 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.monetary.Money;
+
+public class FlyweightRingBufferMessengerTest extends TestCase {
+
+	private FlyweightRingBufferMessenger messenger;
+
+	public FlyweightRingBufferMessengerTest() {
+		super();
+	}
+
+	public void testFeedQuoteRoundTrip() throws Exception {
+		final List<FeedQuote> received =
+				Collections.synchronizedList(new ArrayList<FeedQuote>());
+
+		this.messenger.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				received.add(aFeedQuote);
+			}
+		});
+
+		FeedQuote feedQuote =
+				new FeedQuote(
+						"Oracle Corporation",
+						new Money("35.20"), new Money("34.90"),
+						new Money("35.00"), new Money("35.08"),
+						new Money("35.1234"),
+						new BigDecimal(120), "ORCL", new BigDecimal(98000));
+
+		this.messenger.publish(feedQuote);
+
+		for (int wait = 0; wait < 500 && received.isEmpty(); ++wait) {
+			Thread.sleep(10L);
+		}
+
+		assertEquals(1, received.size());
+
+		FeedQuote copy = received.get(0);
+
+		assertEquals("Oracle Corporation", copy.companyName());
+		assertEquals("ORCL", copy.symbol());
+		assertEquals(new Money("35.2000"), copy.high());
+		assertEquals(new Money("34.9000"), copy.low());
+		assertEquals(new Money("35.0000"), copy.open());
+		assertEquals(new Money("35.0800"), copy.close());
+		assertEquals(new Money("35.1234"), copy.price());
+		assertEquals(new BigDecimal(120), copy.quantity());
+		assertEquals(new BigDecimal(98000), copy.volume());
+	}
+
+	public void testFlyweightDeliveryWithoutAllocation() throws Exception {
+		final int quotes = 200000;
+
+		final AtomicLong priceTotal = new AtomicLong(0L);
+		final AtomicLong received = new AtomicLong(0L);
+
+		int symbolId = this.messenger.registerSymbol("VMW", "VMware, Inc.");
+
+		this.messenger.subscribeFlyweight(new FeedQuoteFlyweightSubscriber() {
+			@Override
+			public void receive(FeedQuoteFlyweight aFeedQuote) {
+				priceTotal.addAndGet(aFeedQuote.priceUnits());
+				received.incrementAndGet();
+			}
+		});
+
+		for (int idx = 0; idx < quotes; ++idx) {
+			this.messenger.publish(symbolId, 790000L, 780000L, 783500L, 783500L, 785000L, 10L, idx);
+		}
+
+		long allocatedBefore = this.allocatedBytes();
+
+		for (int idx = 0; idx < quotes; ++idx) {
+			this.messenger.publish(symbolId, 790000L, 780000L, 783500L, 783500L, 785000L, 10L, idx);
+		}
+
+		long allocated = this.allocatedBytes() - allocatedBefore;
+
+		for (int wait = 0; wait < 500 && received.get() < quotes * 2; ++wait) {
+			Thread.sleep(10L);
+		}
+
+		System.out.println("FlyweightRingBufferMessenger: producer bytes/quote=" + ((double) allocated / quotes));
+
+		assertEquals(quotes * 2, received.get());
+		assertEquals(785000L * quotes * 2, priceTotal.get());
+		assertTrue(allocated < quotes);
+	}
+
+	public void testSymbolRegisteredOnce() throws Exception {
+		int symbolId = this.messenger.registerSymbol("EMC", "EMC Corporation");
+
+		assertEquals(symbolId, this.messenger.registerSymbol("EMC", "Ignored"));
+		assertEquals("EMC Corporation", this.messenger.companyNameOf(symbolId));
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		this.messenger = new FlyweightRingBufferMessenger(1024, FeedQuoteWaitStrategy.Yield);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		this.messenger.close();
+
+		super.tearDown();
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+		if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threadMXBean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return 0L;
+	}
+}
@@ -0,0 +1,130 @@
+//   Copyright 2012,2013 Vaughn Vernon
+//
+//   Licensed under the Apache License, Version 2.0 (the "License");
+//   you may not use this file except in compliance with the License.
+//   You may obtain a copy of the License at
+//
+//       http://www.apache.org/licenses/LICENSE-2.0
+//
+//   Unless required by applicable law or agreed to in writing, software
+//   distributed under the License is distributed on an "AS IS" BASIS,
+//   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//   See the License for the specific language governing permissions and
+//   limitations under the License.
+
+package co.vaughnvernon.tradercommon.quotefeed;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import co.vaughnvernon.tradercommon.monetary.Money;
+
+public class SequencedRingBufferMessengerTest extends TestCase {
+
+	private static final int PRODUCERS = 4;
+	private static final int QUOTES_PER_PRODUCER = 5000;
+
+	public SequencedRingBufferMessengerTest() {
+		super();
+	}
+
+	public void testCapacityMustBePowerOfTwo() throws Exception {
+		try {
+			new SequencedRingBufferMessenger(1000, FeedQuoteWaitStrategy.Yield);
+
+			fail("Capacity must be a power of two.");
+
+		} catch (IllegalArgumentException e) {
+			// success
+		}
+	}
+
+	public void testMultipleProducersBusySpin() throws Exception {
+		this.assertAllDeliveredInProducerOrder(FeedQuoteWaitStrategy.BusySpin);
+	}
+
+	public void testMultipleProducersPark() throws Exception {
+		this.assertAllDeliveredInProducerOrder(FeedQuoteWaitStrategy.Park);
+	}
+
+	public void testMultipleProducersYield() throws Exception {
+		this.assertAllDeliveredInProducerOrder(FeedQuoteWaitStrategy.Yield);
+	}
+
+	private void assertAllDeliveredInProducerOrder(
+			FeedQuoteWaitStrategy aWaitStrategy)
+	throws Exception {
+
+		SequencedRingBufferMessenger messenger =
+				new SequencedRingBufferMessenger(64, aWaitStrategy);
+
+		final AtomicInteger received = new AtomicInteger(0);
+		final Map<String,Integer> lastVolumes = new HashMap<String,Integer>();
+		final AtomicInteger outOfOrder = new AtomicInteger(0);
+
+		messenger.subscribe(new FeedQuoteSubscriber() {
+			@Override
+			public void receive(FeedQuote aFeedQuote) {
+				Integer last = lastVolumes.get(aFeedQuote.symbol());
+				int volume = aFeedQuote.volume().intValue();
+
+				if (last != null && last.intValue() >= volume) {
+					outOfOrder.incrementAndGet();
+				}
+
+				lastVolumes.put(aFeedQuote.symbol(), volume);
+
+				received.incrementAndGet();
+			}
+		});
+
+		Thread[] producers = new Thread[PRODUCERS];
+
+		for (int idx = 0; idx < PRODUCERS; ++idx) {
+			producers[idx] = new ProducerThread(messenger, "SYM" + idx);
+			producers[idx].start();
+		}
+
+		for (Thread producer : producers) {
+			producer.join();
+		}
+
+		int expected = PRODUCERS * QUOTES_PER_PRODUCER;
+
+		for (int wait = 0; wait < 500 && received.get() < expected; ++wait) {
+			Thread.sleep(10L);
+		}
+
+		messenger.close();
+
+		assertEquals(expected, received.get());
+		assertEquals(0, outOfOrder.get());
+	}
+
+	private static class ProducerThread extends Thread {
+		private SequencedRingBufferMessenger messenger;
+		private String symbol;
+
+		ProducerThread(SequencedRingBufferMessenger aMessenger, String aSymbol) {
+			super();
+
+			this.messenger = aMessenger;
+			this.symbol = aSymbol;
+		}
+
+		@Override
+		public void run() {
+			Money price = new Money("10.00");
+
+			for (int idx = 1; idx <= QUOTES_PER_PRODUCER; ++idx) {
+				this.messenger.publish(
+						new FeedQuote(
+								"Test, Inc.", price, price, price, price, price,
+								BigDecimal.ONE, this.symbol, new BigDecimal(idx)));
+			}
+		}
+	}
+}